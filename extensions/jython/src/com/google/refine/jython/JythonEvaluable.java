@@ -38,8 +38,11 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.python.core.Py;
+import org.python.core.PyCode;
 import org.python.core.PyException;
 import org.python.core.PyFloat;
 import org.python.core.PyFunction;
@@ -63,7 +66,11 @@ public class JythonEvaluable implements Evaluable {
             
             @Override
             public Evaluable parse(String s) throws ParsingException {
-                return new JythonEvaluable(s);
+                try {
+                    return new JythonEvaluable(s);
+                } catch (PyException e) {
+                    throw new ParsingException(e.toString());
+                }
             }
         };
     }
@@ -72,6 +79,15 @@ public class JythonEvaluable implements Evaluable {
     
     private static PythonInterpreter _engine; 
     
+    // The compiled code defining this expression's function
+    private final PyCode _code;
+    
+    // Instances of the function, each defined in its own interpreter so that its
+    // global state is never shared between threads. An evaluation takes one out
+    // of the pool and puts it back when done, so the pool only grows to the
+    // number of threads evaluating the expression at the same time.
+    private final Queue<PyFunction> _functions = new ConcurrentLinkedQueue<PyFunction>();
+    
     // FIXME(SM): this initialization logic depends on the fact that the JVM's 
     // current working directory is the root of the OpenRefine distributions
     // or the development checkouts. While this works in practice, it would
@@ -109,14 +125,30 @@ public class JythonEvaluable implements Evaluable {
             sb.append(line);
         }
 
-        _engine.exec(sb.toString());
+        synchronized (_engine) {
+            _code = _engine.compile(sb.toString());
+        }
+        
+        // Define one instance right away, so that errors surface when parsing
+        _functions.add(createFunction());
+    }
+    
+    protected PyFunction createFunction() {
+        PythonInterpreter interpreter = new PythonInterpreter();
+        interpreter.exec(_code);
+        return (PyFunction) interpreter.get(s_functionName);
     }
     
     @Override
     public Object evaluate(Properties bindings) {
+        PyFunction function = _functions.poll();
         try {
-            // call the temporary PyFunction directly
-            Object result = ((PyFunction)_engine.get(s_functionName)).__call__(
+            if (function == null) {
+                function = createFunction();
+            }
+            
+            // call the function directly
+            Object result = function.__call__(
                 new PyObject[] {
                     Py.java2py( bindings.get("value") ),
                     new JythonHasFieldsWrapper((HasFields) bindings.get("cell"), bindings),
@@ -129,6 +161,10 @@ public class JythonEvaluable implements Evaluable {
             return unwrap(result);
         } catch (PyException e) {
             return new EvalError(e.toString());
+        } finally {
+            if (function != null) {
+                _functions.offer(function);
+            }
         }
     }
     
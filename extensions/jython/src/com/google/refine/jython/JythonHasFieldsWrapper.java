@@ -33,6 +33,8 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.jython;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import org.python.core.Py;
@@ -47,6 +49,10 @@ public class JythonHasFieldsWrapper extends PyObject {
 
     private Properties _bindings;
 
+    // Fields already converted for Python, since expressions often look at the
+    // same field several times
+    private Map<String, PyObject> _fields;
+
     public JythonHasFieldsWrapper(HasFields obj, Properties bindings) {
         _obj = obj;
         _bindings = bindings;
@@ -55,7 +61,19 @@ public class JythonHasFieldsWrapper extends PyObject {
     @Override
     public PyObject __finditem__(PyObject key) {
         String k = (String) key.__tojava__(String.class);
-        Object v = _obj.getField(k, _bindings);
+        if (_fields != null && _fields.containsKey(k)) {
+            return _fields.get(k);
+        }
+
+        PyObject result = wrap(_obj.getField(k, _bindings));
+        if (_fields == null) {
+            _fields = new HashMap<String, PyObject>();
+        }
+        _fields.put(k, result);
+        return result;
+    }
+
+    protected PyObject wrap(Object v) {
         if (v != null) {
             if (v instanceof PyObject) {
                 return (PyObject) v;
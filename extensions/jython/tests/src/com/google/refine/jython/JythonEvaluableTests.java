@@ -0,0 +1,136 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.jython;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.expr.EvalError;
+import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.expr.MetaParser;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+
+public class JythonEvaluableTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+        MetaParser.registerLanguageParser("jython", "Jython", JythonEvaluable.createParser(), "return value");
+    }
+
+    Project project;
+
+    @BeforeMethod
+    public void SetUp() throws Exception {
+        project = new Project();
+        int index = project.columnModel.allocateNewCellIndex();
+        project.columnModel.addColumn(index, new Column(index, "A"), true);
+        for (int i = 0; i < 500; i++) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell("v" + i, null));
+            project.rows.add(row);
+        }
+        project.update();
+    }
+
+    @Test
+    public void evaluatesRows() throws Exception {
+        Evaluable eval = MetaParser.parse("jython:return value + '-' + str(rowIndex) + '-' + cells['A']['value']");
+        Assert.assertEquals(evaluate(eval, 3), "v3-3-v3");
+        Assert.assertTrue(evaluate(MetaParser.parse("jython:return 1 / 0"), 0) instanceof EvalError);
+    }
+
+    @Test
+    public void sharedEvaluableGivesEachThreadItsOwnResults() throws Exception {
+        // a global keeps the function's state between calls, which must not leak between threads
+        final String expression = "jython:global last\n"
+            + "last = value\n"
+            + "x = [cells['A']['value'] for i in range(20)]\n"
+            + "return last + '-' + str(rowIndex) + '-' + x[-1]";
+        final Evaluable eval = MetaParser.parse(expression);
+        Assert.assertSame(MetaParser.parse(expression), eval);
+
+        final int threadCount = 4;
+        final Object[][] results = new Object[threadCount][project.rows.size()];
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final Object[] threadResults = results[t];
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int r = 0; r < threadResults.length; r++) {
+                        threadResults[r] = evaluate(eval, r);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int t = 0; t < threadCount; t++) {
+            for (int r = 0; r < project.rows.size(); r++) {
+                Assert.assertEquals(results[t][r], "v" + r + "-" + r + "-v" + r);
+            }
+        }
+    }
+
+    protected Object evaluate(Evaluable eval, int rowIndex) {
+        Properties bindings = ExpressionUtils.createBindings(project);
+        Row row = project.rows.get(rowIndex);
+        ExpressionUtils.bind(bindings, row, rowIndex, "A", row.getCell(0));
+        return eval.evaluate(bindings);
+    }
+}
@@ -40,6 +40,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -65,9 +66,16 @@ public abstract class ProjectManager {
     // If a project has been idle this long, flush it from memory
     static protected final int PROJECT_FLUSH_DELAY = 1000 * 60 * 15; // 15 minutes
     
+    // Projects accessed more recently than this are never flushed to make room for others
+    static protected final int PROJECT_EVICTION_MIN_IDLE = 1000 * 60; // 1 minute
+
     // Don't spend more than this much time saving projects if doing a quick save
     static protected final int QUICK_SAVE_MAX_TIME = 1000 * 30; // 30 secs
 
+    // Share of the maximum heap that loaded projects may take up, unless the
+    // "project.cache.maxMemoryMB" preference says otherwise
+    static protected final double DEFAULT_PROJECT_CACHE_FRACTION = 0.5;
+
 
     protected Map<Long, ProjectMetadata> _projectsMetadata;
     protected PreferenceStore            _preferenceStore;
@@ -88,16 +96,28 @@ public abstract class ProjectManager {
      *  While each project's metadata is loaded completely at start-up, each project's raw data
      *  is loaded only when the project is accessed by the user. This is because project
      *  metadata is tiny compared to raw project data. This hash map from project ID to project
-     *  is more like a last accessed-last out cache.
+     *  is more like a last accessed-last out cache: it is kept in order of access, least
+     *  recently used first, and trimmed to a memory budget whenever a project is loaded.
      */
     transient protected Map<Long, Project> _projects;
 
+    /**
+     *  When each loaded project was last handed out by getProject(), so that projects
+     *  still in use are not flushed from memory.
+     */
+    transient protected Map<Long, Long> _lastAccessed;
+
+    transient protected long _cacheHits = 0;
+    transient protected long _cacheMisses = 0;
+    transient protected long _cacheEvictions = 0;
+
     static public ProjectManager singleton;
 
     protected ProjectManager(){
         _projectsMetadata = new HashMap<Long, ProjectMetadata>();
         _preferenceStore = new PreferenceStore();
-        _projects = new HashMap<Long, Project>();
+        _projects = new LinkedHashMap<Long, Project>();
+        _lastAccessed = new HashMap<Long, Long>();
 
         preparePreferenceStore(_preferenceStore);
     }
@@ -389,17 +409,137 @@ public abstract class ProjectManager {
      *     the project with the matching id, or null if it can't be found
      */
     public Project getProject(long id) {
+        Project project;
         synchronized (this) {
-            if (_projects.containsKey(id)) {
-                return _projects.get(id);
-            } else {
-                Project project = loadProject(id);
-                if (project != null) {
-                    _projects.put(id, project);                    
-                }
+            project = _projects.remove(id);
+            if (project != null) {
+                _projects.put(id, project); // move to the most recently used end
+                _lastAccessed.put(id, System.currentTimeMillis());
+                _cacheHits++;
                 return project;
             }
+
+            _cacheMisses++;
+            project = loadProject(id);
+            if (project == null) {
+                return null;
+            }
+            _projects.put(id, project);
+            _lastAccessed.put(id, System.currentTimeMillis());
         }
+        evictProjects(id);
+        return project;
+    }
+
+    /**
+     * Flush the least recently used projects from memory until the estimated size
+     * of the remaining ones fits within the project cache budget. Projects are
+     * picked under the lock, but saved and disposed outside of it; a project is
+     * kept if it gets accessed in the meantime. Projects with pending processes,
+     * projects accessed in the last PROJECT_EVICTION_MIN_IDLE milliseconds, and the
+     * project with the given id are kept too.
+     * @param keepId
+     */
+    protected void evictProjects(long keepId) {
+        List<Project> victims = new ArrayList<Project>();
+        long startTimeOfEviction = System.currentTimeMillis();
+
+        synchronized (this) {
+            long budget = getProjectCacheBudget();
+            long total = 0;
+            Map<Long, Long> sizes = new HashMap<Long, Long>();
+            for (Entry<Long, Project> entry : _projects.entrySet()) {
+                long size = entry.getValue().estimateMemoryUsage();
+                sizes.put(entry.getKey(), size);
+                total += size;
+            }
+
+            for (Entry<Long, Project> entry : _projects.entrySet()) {
+                if (total <= budget) {
+                    break;
+                }
+                long id = entry.getKey();
+                Project project = entry.getValue();
+                if (id == keepId || !isIdle(id, project, startTimeOfEviction - PROJECT_EVICTION_MIN_IDLE)) {
+                    continue;
+                }
+                victims.add(project);
+                total -= sizes.get(id);
+            }
+        }
+
+        for (Project project : victims) {
+            ProjectMetadata metadata = getProjectMetadata(project.id);
+            if (metadata != null && metadata.getModified().getTime() >= project.getLastSave().getTime()) {
+                try {
+                    saveProject(project);
+                } catch (Exception e) {
+                    logger.warn("Failed to save project " + project.id + ", keeping it in memory", e);
+                    continue;
+                }
+            }
+
+            synchronized (this) {
+                if (_projects.get(project.id) != project || !isIdle(project.id, project, startTimeOfEviction)) {
+                    continue; // picked up again while it was being saved
+                }
+                _projects.remove(project.id);
+                _lastAccessed.remove(project.id);
+                _cacheEvictions++;
+            }
+            project.dispose();
+            logger.info("Flushed project " + project.id + " from memory (" +
+                _cacheHits + " hits, " + _cacheMisses + " misses, " + _cacheEvictions + " evictions)");
+        }
+    }
+
+    /**
+     * Tells whether a loaded project has no pending processes and has not been
+     * accessed since the given time. Must be called while holding the lock.
+     */
+    protected boolean isIdle(long id, Project project, long since) {
+        if (project.getProcessManager().hasPending()) {
+            return false;
+        }
+        Long lastAccessed = _lastAccessed.get(id);
+        return lastAccessed == null || lastAccessed < since;
+    }
+
+    /**
+     * Gets how many bytes of heap loaded projects may take up before the least
+     * recently used ones get flushed from memory.
+     */
+    protected long getProjectCacheBudget() {
+        Object v = _preferenceStore.get("project.cache.maxMemoryMB");
+        if (v != null) {
+            try {
+                return Long.parseLong(v.toString()) * 1024 * 1024;
+            } catch (NumberFormatException e) {
+                // ignore
+            }
+        }
+        return (long) (Runtime.getRuntime().maxMemory() * DEFAULT_PROJECT_CACHE_FRACTION);
+    }
+
+    /**
+     * Gets the number of project lookups that found the project already in memory
+     */
+    public long getCacheHits() {
+        return _cacheHits;
+    }
+
+    /**
+     * Gets the number of project lookups that had to load the project from the data store
+     */
+    public long getCacheMisses() {
+        return _cacheMisses;
+    }
+
+    /**
+     * Gets the number of projects flushed from memory to stay within the cache budget
+     */
+    public long getCacheEvictions() {
+        return _cacheEvictions;
     }
 
     /**
@@ -447,6 +587,7 @@ public abstract class ProjectManager {
         if (_projects.containsKey(projectID)) {
             _projects.remove(projectID).dispose();
         }
+        _lastAccessed.remove(projectID);
         if (_projectsMetadata.containsKey(projectID)) {
             _projectsMetadata.remove(projectID);
         }
@@ -33,8 +33,11 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.browsing;
 
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.json.JSONArray;
@@ -46,12 +49,19 @@ import com.google.refine.Jsonizable;
 import com.google.refine.browsing.facets.Facet;
 import com.google.refine.browsing.facets.ListFacet;
 import com.google.refine.browsing.facets.RangeFacet;
+import com.google.refine.browsing.facets.RowScanningFacet;
 import com.google.refine.browsing.facets.ScatterplotFacet;
 import com.google.refine.browsing.facets.TextSearchFacet;
 import com.google.refine.browsing.facets.TimeRangeFacet;
+import com.google.refine.browsing.filters.BitmapRowFilter;
+import com.google.refine.browsing.util.BitmapFilteredRows;
 import com.google.refine.browsing.util.ConjunctiveFilteredRecords;
 import com.google.refine.browsing.util.ConjunctiveFilteredRows;
 import com.google.refine.browsing.util.FilteredRecordsAsFilteredRows;
+import com.google.refine.browsing.util.RowFilterBitmapCache;
+import com.google.refine.expr.MetaParser;
+import com.google.refine.expr.ParsingException;
+import com.google.refine.grel.ast.ExpressionDependencies;
 import com.google.refine.model.Project;
 import com.google.refine.model.Row;
 
@@ -69,8 +79,15 @@ public class Engine implements Jsonizable {
     public final static String MODE_ROW_BASED = "row-based";
     public final static String MODE_RECORD_BASED = "record-based";
 
+    // Keys of facet configurations that hold expressions
+    static final protected String[] EXPRESSION_KEYS = {
+        "expression", ScatterplotFacet.X_EXPRESSION, ScatterplotFacet.Y_EXPRESSION
+    };
+
     protected Project _project;
     protected List<Facet> _facets = new LinkedList<Facet>();
+    protected Map<Facet, String> _facetConfigs = new HashMap<Facet, String>();
+
     protected Mode _mode = Mode.RowBased;
 
     static public String modeToString(Mode mode) {
@@ -121,19 +138,73 @@ public class Engine implements Jsonizable {
             return new FilteredRecordsAsFilteredRows(getFilteredRecords(except));
         } else if (_mode == Mode.RowBased) {
             ConjunctiveFilteredRows cfr = new ConjunctiveFilteredRows();
+            BitSet bitmap = null;
+            boolean sharedBitmap = false;
+            boolean uncachedFilters = false;
             for (Facet facet : _facets) {
                 if (facet != except) {
                     RowFilter rowFilter = facet.getRowFilter(_project);
                     if (rowFilter != null) {
-                        cfr.add(rowFilter);
+                        BitSet facetBitmap = getRowFilterBitmap(facet, rowFilter);
+                        if (facetBitmap == null) {
+                            cfr.add(rowFilter);
+                            uncachedFilters = true;
+                        } else if (bitmap == null) {
+                            bitmap = facetBitmap;
+                            sharedBitmap = true;
+                        } else {
+                            if (sharedBitmap) {
+                                bitmap = (BitSet) bitmap.clone();
+                                sharedBitmap = false;
+                            }
+                            bitmap.and(facetBitmap);
+                        }
                     }
                 }
             }
-            return cfr;
+            if (bitmap == null) {
+                return cfr;
+            } else if (!uncachedFilters) {
+                return new BitmapFilteredRows(bitmap);
+            } else {
+                cfr.add(new BitmapRowFilter(bitmap));
+                return cfr;
+            }
         }
         throw new InternalError("Unknown mode.");
     }
 
+    /**
+     * Gets a string identifying which rows the engine's facets select, given the
+     * project's data, so that results computed over these rows can be reused.
+     * Returns null if some facet's configuration isn't known, or has expressions
+     * that aren't pure.
+     */
+    public String getFilterKey() {
+        StringBuffer sb = new StringBuffer(modeToString(_mode));
+        for (Facet facet : _facets) {
+            String config = _facetConfigs.get(facet);
+            if (config == null) {
+                return null;
+            }
+            sb.append('\n').append(config);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the rows matched by a facet's row filter the last time the facet was
+     * configured the same way, or computes them. Returns null for facets whose
+     * configuration isn't known.
+     */
+    protected BitSet getRowFilterBitmap(Facet facet, RowFilter rowFilter) {
+        String config = _facetConfigs.get(facet);
+        if (config == null) {
+            return null;
+        }
+        return RowFilterBitmapCache.getCache(_project).getBitmap(_project, config, rowFilter);
+    }
+
     public FilteredRecords getAllRecords() {
         return new FilteredRecords() {
             @Override
@@ -201,6 +272,9 @@ public class Engine implements Jsonizable {
                 if (facet != null) {
                     facet.initializeFromJSON(_project, fo);
                     _facets.add(facet);
+                    if (hasPureExpressions(fo)) {
+                        _facetConfigs.put(facet, type + ":" + fo.toString());
+                    }
                 }
             }
         }
@@ -215,9 +289,51 @@ public class Engine implements Jsonizable {
         }
     }
 
+    /**
+     * Whether the expressions of a facet's configuration only call pure functions.
+     * Facets with other expressions, like now() or facetCount(), may select other
+     * rows without the project changing, so their configuration is not kept and
+     * the rows they select are never reused.
+     */
+    static protected boolean hasPureExpressions(JSONObject fo) {
+        for (String key : EXPRESSION_KEYS) {
+            String expression = fo.optString(key, null);
+            if (expression != null) {
+                try {
+                    if (!ExpressionDependencies.isPure(MetaParser.parse(expression))) {
+                        return false;
+                    }
+                } catch (ParsingException e) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     public void computeFacets() throws JSONException {
         if (_mode == Mode.RowBased) {
+            // Compute the choices of all facets that allow it in a single scan
+            FacetScanPlanner planner = new FacetScanPlanner();
+            List<Facet> otherFacets = new LinkedList<Facet>();
             for (Facet facet : _facets) {
+                RowFilter rowFilter = facet.getRowFilter(_project);
+                if (rowFilter != null) {
+                    BitSet bitmap = getRowFilterBitmap(facet, rowFilter);
+                    if (bitmap != null) {
+                        rowFilter = new BitmapRowFilter(bitmap);
+                    }
+                }
+                if (facet instanceof RowScanningFacet) {
+                    planner.add((RowScanningFacet) facet, rowFilter);
+                } else {
+                    planner.add(null, rowFilter);
+                    otherFacets.add(facet);
+                }
+            }
+            planner.computeChoices(_project);
+
+            for (Facet facet : otherFacets) {
                 FilteredRows filteredRows = getFilteredRows(facet);
 
                 facet.computeChoices(_project, filteredRows);
@@ -0,0 +1,180 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.browsing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.refine.browsing.facets.RowScanningFacet;
+import com.google.refine.browsing.util.ConjunctiveFilteredRows;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+
+/**
+ * Computes the choices of several facets in a single scan over a project's rows.
+ * <p>
+ * Each facet's choices are computed over the rows matching all the other facets.
+ * So every row is run through each facet's row filter at most once and is then
+ * visited for all facets if no filter rejects it, for the one facet whose own
+ * filter is the only one to reject it, or for no facet at all if two or more
+ * filters reject it.
+ */
+public class FacetScanPlanner {
+    final protected List<RowScanningFacet> _facets = new ArrayList<RowScanningFacet>();
+    final protected List<RowFilter> _rowFilters = new ArrayList<RowFilter>();
+    
+    /**
+     * @param facet facet to compute choices for, or null for a facet that only filters
+     * @param rowFilter the facet's row filter, or null if it doesn't filter
+     */
+    public void add(RowScanningFacet facet, RowFilter rowFilter) {
+        _facets.add(facet);
+        _rowFilters.add(rowFilter);
+    }
+    
+    public void computeChoices(Project project) {
+        int n = _facets.size();
+        RowFilter[] rowFilters = _rowFilters.toArray(new RowFilter[n]);
+        RowVisitor[] visitors = new RowVisitor[n];
+        boolean mergeable = true;
+        boolean anyVisitor = false;
+        for (int i = 0; i < n; i++) {
+            RowScanningFacet facet = _facets.get(i);
+            if (facet != null) {
+                visitors[i] = facet.createChoicesRowVisitor(project);
+                if (visitors[i] != null) {
+                    anyVisitor = true;
+                    mergeable = mergeable && visitors[i] instanceof MergeableRowVisitor;
+                }
+            }
+        }
+        if (!anyVisitor) {
+            return;
+        }
+        
+        RowVisitor fusedVisitor = mergeable ?
+            new MergeableFusedRowVisitor(rowFilters, visitors) :
+            new FusedRowVisitor(rowFilters, visitors);
+        new ConjunctiveFilteredRows().accept(project, fusedVisitor);
+        
+        for (int i = 0; i < n; i++) {
+            if (visitors[i] != null) {
+                _facets.get(i).retrieveChoices(project, visitors[i]);
+            }
+        }
+    }
+    
+    static protected class FusedRowVisitor implements RowVisitor {
+        final protected RowFilter[] _rowFilters;
+        final protected RowVisitor[] _visitors;
+        
+        protected FusedRowVisitor(RowFilter[] rowFilters, RowVisitor[] visitors) {
+            _rowFilters = rowFilters;
+            _visitors = visitors;
+        }
+        
+        @Override
+        public void start(Project project) {
+            for (RowVisitor visitor : _visitors) {
+                if (visitor != null) {
+                    visitor.start(project);
+                }
+            }
+        }
+        
+        @Override
+        public boolean visit(Project project, int rowIndex, Row row) {
+            int rejectedBy = -1;
+            for (int i = 0; i < _rowFilters.length; i++) {
+                RowFilter rowFilter = _rowFilters[i];
+                if (rowFilter != null && !rowFilter.filterRow(project, rowIndex, row)) {
+                    if (rejectedBy >= 0) {
+                        return false;
+                    }
+                    rejectedBy = i;
+                }
+            }
+            
+            if (rejectedBy >= 0) {
+                if (_visitors[rejectedBy] != null) {
+                    _visitors[rejectedBy].visit(project, rowIndex, row);
+                }
+            } else {
+                for (RowVisitor visitor : _visitors) {
+                    if (visitor != null) {
+                        visitor.visit(project, rowIndex, row);
+                    }
+                }
+            }
+            return false;
+        }
+        
+        @Override
+        public void end(Project project) {
+            for (RowVisitor visitor : _visitors) {
+                if (visitor != null) {
+                    visitor.end(project);
+                }
+            }
+        }
+    }
+    
+    static protected class MergeableFusedRowVisitor extends FusedRowVisitor implements MergeableRowVisitor {
+        protected MergeableFusedRowVisitor(RowFilter[] rowFilters, RowVisitor[] visitors) {
+            super(rowFilters, visitors);
+        }
+        
+        @Override
+        public MergeableRowVisitor createPartial() {
+            RowVisitor[] partials = new RowVisitor[_visitors.length];
+            for (int i = 0; i < _visitors.length; i++) {
+                if (_visitors[i] != null) {
+                    partials[i] = ((MergeableRowVisitor) _visitors[i]).createPartial();
+                }
+            }
+            return new MergeableFusedRowVisitor(_rowFilters, partials);
+        }
+        
+        @Override
+        public void merge(MergeableRowVisitor partial) {
+            RowVisitor[] partials = ((MergeableFusedRowVisitor) partial)._visitors;
+            for (int i = 0; i < _visitors.length; i++) {
+                if (_visitors[i] != null) {
+                    ((MergeableRowVisitor) _visitors[i]).merge((MergeableRowVisitor) partials[i]);
+                }
+            }
+        }
+    }
+}
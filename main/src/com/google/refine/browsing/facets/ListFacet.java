@@ -48,18 +48,20 @@ import com.google.refine.browsing.FilteredRecords;
 import com.google.refine.browsing.FilteredRows;
 import com.google.refine.browsing.RecordFilter;
 import com.google.refine.browsing.RowFilter;
+import com.google.refine.browsing.RowVisitor;
 import com.google.refine.browsing.filters.AllRowsRecordFilter;
 import com.google.refine.browsing.filters.AnyRowRecordFilter;
 import com.google.refine.browsing.filters.ExpressionEqualRowFilter;
 import com.google.refine.browsing.util.ExpressionNominalValueGrouper;
 import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.ExpressionResultCache;
 import com.google.refine.expr.MetaParser;
 import com.google.refine.expr.ParsingException;
 import com.google.refine.model.Column;
 import com.google.refine.model.Project;
 import com.google.refine.util.JSONUtilities;
 
-public class ListFacet implements Facet {
+public class ListFacet implements RowScanningFacet {
     /*
      * Configuration
      */
@@ -171,6 +173,9 @@ public class ListFacet implements Facet {
         
         try {
             _eval = MetaParser.parse(_expression);
+            if (_errorMessage == null) {
+                _eval = ExpressionResultCache.wrap(project, _cellIndex, _expression, _eval);
+            }
         } catch (ParsingException e) {
             _errorMessage = e.getMessage();
         }
@@ -228,14 +233,25 @@ public class ListFacet implements Facet {
 
     @Override
     public void computeChoices(Project project, FilteredRows filteredRows) {
-        if (_eval != null && _errorMessage == null) {
-            ExpressionNominalValueGrouper grouper = 
-                new ExpressionNominalValueGrouper(_eval, _columnName, _cellIndex);
+        RowVisitor visitor = createChoicesRowVisitor(project);
+        if (visitor != null) {
+            filteredRows.accept(project, visitor);
             
-            filteredRows.accept(project, grouper);
-            
-            postProcessGrouper(grouper);
+            retrieveChoices(project, visitor);
+        }
+    }
+    
+    @Override
+    public RowVisitor createChoicesRowVisitor(Project project) {
+        if (_eval != null && _errorMessage == null) {
+            return new ExpressionNominalValueGrouper(_eval, _columnName, _cellIndex);
         }
+        return null;
+    }
+    
+    @Override
+    public void retrieveChoices(Project project, RowVisitor visitor) {
+        postProcessGrouper((ExpressionNominalValueGrouper) visitor);
     }
     
     @Override
@@ -43,6 +43,7 @@ import com.google.refine.browsing.FilteredRecords;
 import com.google.refine.browsing.FilteredRows;
 import com.google.refine.browsing.RecordFilter;
 import com.google.refine.browsing.RowFilter;
+import com.google.refine.browsing.RowVisitor;
 import com.google.refine.browsing.filters.AnyRowRecordFilter;
 import com.google.refine.browsing.filters.ExpressionNumberComparisonRowFilter;
 import com.google.refine.browsing.util.ExpressionBasedRowEvaluable;
@@ -52,13 +53,14 @@ import com.google.refine.browsing.util.NumericBinRecordIndex;
 import com.google.refine.browsing.util.NumericBinRowIndex;
 import com.google.refine.browsing.util.RowEvaluable;
 import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.ExpressionResultCache;
 import com.google.refine.expr.MetaParser;
 import com.google.refine.expr.ParsingException;
 import com.google.refine.model.Column;
 import com.google.refine.model.Project;
 import com.google.refine.util.JSONUtilities;
 
-public class RangeFacet implements Facet {
+public class RangeFacet implements RowScanningFacet {
     /*
      * Configuration, from the client side
      */
@@ -177,6 +179,9 @@ public class RangeFacet implements Facet {
         
         try {
             _eval = MetaParser.parse(_expression);
+            if (_errorMessage == null) {
+                _eval = ExpressionResultCache.wrap(project, _cellIndex, _expression, _eval);
+            }
         } catch (ParsingException e) {
             _errorMessage = e.getMessage();
         }
@@ -221,6 +226,15 @@ public class RangeFacet implements Facet {
 
     @Override
     public void computeChoices(Project project, FilteredRows filteredRows) {
+        RowVisitor visitor = createChoicesRowVisitor(project);
+        if (visitor != null) {
+            filteredRows.accept(project, visitor);
+            retrieveChoices(project, visitor);
+        }
+    }
+    
+    @Override
+    public RowVisitor createChoicesRowVisitor(Project project) {
         if (_eval != null && _errorMessage == null) {
             RowEvaluable rowEvaluable = getRowEvaluable(project);
             
@@ -234,12 +248,14 @@ public class RangeFacet implements Facet {
             
             retrieveDataFromBaseBinIndex(index);
             
-            ExpressionNumericValueBinner binner = 
-                new ExpressionNumericValueBinner(rowEvaluable, index);
-            
-            filteredRows.accept(project, binner);
-            retrieveDataFromBinner(binner);
+            return new ExpressionNumericValueBinner(rowEvaluable, index);
         }
+        return null;
+    }
+    
+    @Override
+    public void retrieveChoices(Project project, RowVisitor visitor) {
+        retrieveDataFromBinner((ExpressionNumericValueBinner) visitor);
     }
     
     @Override
@@ -50,6 +50,7 @@ import com.google.refine.expr.Evaluable;
 import com.google.refine.grel.ast.VariableExpr;
 import com.google.refine.model.Column;
 import com.google.refine.model.Project;
+import com.google.refine.util.PatternCache;
 
 public class TextSearchFacet implements Facet {
     /*
@@ -100,7 +101,7 @@ public class TextSearchFacet implements Facet {
         if (_query != null) {
             if ("regex".equals(_mode)) {
                 try {
-                    _pattern = Pattern.compile(
+                    _pattern = PatternCache.getPattern(
                             _query, 
                             _caseSensitive ? 0 : Pattern.CASE_INSENSITIVE);
                 } catch (java.util.regex.PatternSyntaxException e) {
@@ -122,7 +123,7 @@ public class TextSearchFacet implements Facet {
         
         Evaluable eval = new VariableExpr("value");
         
-        if ("regex".equals(_mode)) {
+        if ("regex".equals(_mode) && !(_caseSensitive && PatternCache.isLiteral(_query))) {
             return new ExpressionStringComparisonRowFilter(eval, _columnName, _cellIndex) {
                 @Override
                 protected boolean checkValue(String s) {
@@ -42,12 +42,14 @@ import org.json.JSONWriter;
 import com.google.refine.browsing.FilteredRecords;
 import com.google.refine.browsing.FilteredRows;
 import com.google.refine.browsing.RowFilter;
+import com.google.refine.browsing.RowVisitor;
 import com.google.refine.browsing.filters.ExpressionTimeComparisonRowFilter;
 import com.google.refine.browsing.util.ExpressionTimeValueBinner;
 import com.google.refine.browsing.util.RowEvaluable;
 import com.google.refine.browsing.util.TimeBinIndex;
 import com.google.refine.browsing.util.TimeBinRecordIndex;
 import com.google.refine.browsing.util.TimeBinRowIndex;
+import com.google.refine.expr.ExpressionResultCache;
 import com.google.refine.expr.MetaParser;
 import com.google.refine.expr.ParsingException;
 import com.google.refine.model.Column;
@@ -129,6 +131,9 @@ public class TimeRangeFacet extends RangeFacet {
         
         try {
             _eval = MetaParser.parse(_expression);
+            if (_errorMessage == null) {
+                _eval = ExpressionResultCache.wrap(project, _cellIndex, _expression, _eval);
+            }
         } catch (ParsingException e) {
             _errorMessage = e.getMessage();
         }
@@ -167,6 +172,15 @@ public class TimeRangeFacet extends RangeFacet {
 
     @Override
     public void computeChoices(Project project, FilteredRows filteredRows) {
+        RowVisitor visitor = createChoicesRowVisitor(project);
+        if (visitor != null) {
+            filteredRows.accept(project, visitor);
+            retrieveChoices(project, visitor);
+        }
+    }
+    
+    @Override
+    public RowVisitor createChoicesRowVisitor(Project project) {
         if (_eval != null && _errorMessage == null) {
             RowEvaluable rowEvaluable = getRowEvaluable(project);
             
@@ -179,12 +193,15 @@ public class TimeRangeFacet extends RangeFacet {
             }
             
             retrieveDataFromBaseBinIndex(index);
-                        
-            ExpressionTimeValueBinner binner = new ExpressionTimeValueBinner(rowEvaluable, index);
             
-            filteredRows.accept(project, binner);
-            retrieveDataFromBinner(binner);
+            return new ExpressionTimeValueBinner(rowEvaluable, index);
         }
+        return null;
+    }
+    
+    @Override
+    public void retrieveChoices(Project project, RowVisitor visitor) {
+        retrieveDataFromBinner((ExpressionTimeValueBinner) visitor);
     }
     
     @Override
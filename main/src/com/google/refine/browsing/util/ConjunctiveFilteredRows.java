@@ -36,7 +36,6 @@ package com.google.refine.browsing.util;
 import java.util.LinkedList;
 import java.util.List;
 
-import com.google.refine.browsing.FilteredRows;
 import com.google.refine.browsing.RowFilter;
 import com.google.refine.browsing.RowVisitor;
 import com.google.refine.model.Project;
@@ -46,7 +45,7 @@ import com.google.refine.model.Row;
  * Encapsulate logic for visiting rows that match all give row filters. Also visit
  * context rows and dependent rows if configured so.
  */
-public class ConjunctiveFilteredRows implements FilteredRows {
+public class ConjunctiveFilteredRows extends PartitionedFilteredRows {
     final protected List<RowFilter> _rowFilters = new LinkedList<RowFilter>();
     
     public void add(RowFilter rowFilter) {
@@ -54,22 +53,16 @@ public class ConjunctiveFilteredRows implements FilteredRows {
     }
     
     @Override
-    public void accept(Project project, RowVisitor visitor) {
-        try {
-            visitor.start(project);
-
-            int c = project.rows.size();
-            for (int rowIndex = 0; rowIndex < c; rowIndex++) {
-                Row row = project.rows.get(rowIndex);
-                if (matchRow(project, rowIndex, row)) {
-                    if (visitRow(project, visitor, rowIndex, row)) {
-                        break;
-                    }
+    protected boolean visitRange(Project project, RowVisitor visitor, int fromRowIndex, int toRowIndex) {
+        for (int rowIndex = fromRowIndex; rowIndex < toRowIndex; rowIndex++) {
+            Row row = project.rows.get(rowIndex);
+            if (matchRow(project, rowIndex, row)) {
+                if (visitRow(project, visitor, rowIndex, row)) {
+                    return true;
                 }
             }
-        } finally {
-            visitor.end(project);
         }
+        return false;
     }
     
     protected boolean visitRow(Project project, RowVisitor visitor, int rowIndex, Row row) {
@@ -36,6 +36,7 @@ package com.google.refine.browsing.util;
 import java.util.Properties;
 
 import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.EvaluationBatch;
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.model.Cell;
 import com.google.refine.model.Project;
@@ -64,4 +65,16 @@ public class ExpressionBasedRowEvaluable implements RowEvaluable {
         
         return _eval.evaluate(bindings);
     }
+    
+    /**
+     * Create a batch for evaluating the expression on many rows at once,
+     * with {@link #evalBatch(EvaluationBatch, Properties)}.
+     */
+    public EvaluationBatch createBatch() {
+        return new EvaluationBatch(_columnName, _cellIndex);
+    }
+    
+    public void evalBatch(EvaluationBatch batch, Properties bindings) {
+        batch.evaluate(_eval, bindings);
+    }
 }
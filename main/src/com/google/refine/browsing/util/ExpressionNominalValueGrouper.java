@@ -41,8 +41,8 @@ import java.util.Map;
 import java.util.Properties;
 
 import com.google.refine.browsing.DecoratedValue;
+import com.google.refine.browsing.MergeableRowVisitor;
 import com.google.refine.browsing.RecordVisitor;
-import com.google.refine.browsing.RowVisitor;
 import com.google.refine.browsing.facets.NominalFacetChoice;
 import com.google.refine.expr.Evaluable;
 import com.google.refine.expr.ExpressionUtils;
@@ -56,7 +56,7 @@ import com.google.refine.util.StringUtils;
  * Visit matched rows or records and group them into facet choices based on the values computed
  * from a given expression.
  */
-public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor {
+public class ExpressionNominalValueGrouper implements MergeableRowVisitor, RecordVisitor {
     static public class IndexedNominalFacetChoice extends NominalFacetChoice {
         int _latestIndex;
 
@@ -85,6 +85,10 @@ public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor
      */
     protected boolean hasBlank;
     protected boolean hasError;
+    
+    // Bindings reused across rows and records, so that the context of the
+    // record being visited is kept from one of its rows to the next
+    protected Properties bindings;
 
     public ExpressionNominalValueGrouper(Evaluable evaluable, String columnName, int cellIndex) {
         _evaluable = evaluable;
@@ -107,7 +111,7 @@ public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor
         hasError = false;
         hasBlank = false;
 
-        Properties bindings = ExpressionUtils.createBindings(project);
+        Properties bindings = getBindings(project);
 
         visitRow(project, rowIndex, row, bindings, rowIndex);
 
@@ -121,12 +125,33 @@ public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor
         return false;
     }
 
+    @Override
+    public MergeableRowVisitor createPartial() {
+        return new ExpressionNominalValueGrouper(_evaluable, _columnName, _cellIndex);
+    }
+
+    @Override
+    public void merge(MergeableRowVisitor partial) {
+        ExpressionNominalValueGrouper grouper = (ExpressionNominalValueGrouper) partial;
+        for (Map.Entry<Object, IndexedNominalFacetChoice> entry : grouper.choices.entrySet()) {
+            IndexedNominalFacetChoice facetChoice = choices.get(entry.getKey());
+            if (facetChoice != null) {
+                facetChoice.count += entry.getValue().count;
+                facetChoice._latestIndex = Math.max(facetChoice._latestIndex, entry.getValue()._latestIndex);
+            } else {
+                choices.put(entry.getKey(), entry.getValue());
+            }
+        }
+        blankCount += grouper.blankCount;
+        errorCount += grouper.errorCount;
+    }
+
     @Override
     public boolean visit(Project project, Record record) {
         hasError = false;
         hasBlank = false;
 
-        Properties bindings = ExpressionUtils.createBindings(project);
+        Properties bindings = getBindings(project);
 
         for (int r = record.fromRowIndex; r < record.toRowIndex; r++) {
             Row row = project.rows.get(r);
@@ -143,6 +168,13 @@ public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor
         return false;
     }
 
+    protected Properties getBindings(Project project) {
+        if (bindings == null) {
+            bindings = ExpressionUtils.createBindings(project);
+        }
+        return bindings;
+    }
+
     protected void visitRow(Project project, int rowIndex, Row row, Properties bindings, int index) {
         Object value = evalRow(project, rowIndex, row, bindings);
         if (value != null) {
@@ -36,8 +36,9 @@ package com.google.refine.browsing.util;
 import java.util.Collection;
 import java.util.Properties;
 
+import com.google.refine.browsing.MergeableRowVisitor;
 import com.google.refine.browsing.RecordVisitor;
-import com.google.refine.browsing.RowVisitor;
+import com.google.refine.expr.EvaluationBatch;
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.model.Project;
 import com.google.refine.model.Record;
@@ -47,7 +48,7 @@ import com.google.refine.model.Row;
  * Visit matched rows or records and slot them into bins based on the numbers computed
  * from a given expression.
  */
-public class ExpressionNumericValueBinner implements RowVisitor, RecordVisitor {
+public class ExpressionNumericValueBinner implements MergeableRowVisitor, RecordVisitor {
     /*
      * Configuration
      */
@@ -71,6 +72,16 @@ public class ExpressionNumericValueBinner implements RowVisitor, RecordVisitor {
     protected boolean hasNumeric;
     protected boolean hasNonNumeric;
     
+    /*
+     * Rows waiting to be evaluated together, when the expression can be
+     * evaluated in batches
+     */
+    protected EvaluationBatch batch;
+    
+    // Bindings reused across rows and records, so that the context of the
+    // record being visited is kept from one of its rows to the next
+    protected Properties bindings;
+    
     public ExpressionNumericValueBinner(RowEvaluable rowEvaluable, NumericBinIndex index) {
         _rowEvaluable = rowEvaluable;
         _index = index;
@@ -84,14 +95,26 @@ public class ExpressionNumericValueBinner implements RowVisitor, RecordVisitor {
     
     @Override
     public void end(Project project) {
-        // nothing to do
+        flush();
     }
     
     @Override
     public boolean visit(Project project, int rowIndex, Row row) {
+        if (_rowEvaluable instanceof ExpressionBasedRowEvaluable) {
+            if (batch == null) {
+                batch = ((ExpressionBasedRowEvaluable) _rowEvaluable).createBatch();
+                getBindings(project);
+            }
+            batch.add(rowIndex, row);
+            if (batch.isFull()) {
+                flush();
+            }
+            return false;
+        }
+        
         resetFlags();
         
-        Properties bindings = ExpressionUtils.createBindings(project);
+        Properties bindings = getBindings(project);
         processRow(project, rowIndex, row, bindings);
         
         updateCounts();
@@ -99,11 +122,29 @@ public class ExpressionNumericValueBinner implements RowVisitor, RecordVisitor {
         return false;
     }
     
+    @Override
+    public MergeableRowVisitor createPartial() {
+        return new ExpressionNumericValueBinner(_rowEvaluable, _index);
+    }
+    
+    @Override
+    public void merge(MergeableRowVisitor partial) {
+        ExpressionNumericValueBinner binner = (ExpressionNumericValueBinner) partial;
+        binner.flush();
+        for (int i = 0; i < bins.length; i++) {
+            bins[i] += binner.bins[i];
+        }
+        numericCount += binner.numericCount;
+        nonNumericCount += binner.nonNumericCount;
+        blankCount += binner.blankCount;
+        errorCount += binner.errorCount;
+    }
+    
     @Override
     public boolean visit(Project project, Record record) {
         resetFlags();
         
-        Properties bindings = ExpressionUtils.createBindings(project);
+        Properties bindings = getBindings(project);
         for (int r = record.fromRowIndex; r < record.toRowIndex; r++) {
             processRow(project, r, project.rows.get(r), bindings);
         }
@@ -113,6 +154,28 @@ public class ExpressionNumericValueBinner implements RowVisitor, RecordVisitor {
         return false;
     }
     
+    protected Properties getBindings(Project project) {
+        if (bindings == null) {
+            bindings = ExpressionUtils.createBindings(project);
+        }
+        return bindings;
+    }
+    
+    /**
+     * Bin the rows waiting in the batch.
+     */
+    protected void flush() {
+        if (batch != null && batch.size() > 0) {
+            ((ExpressionBasedRowEvaluable) _rowEvaluable).evalBatch(batch, bindings);
+            for (int i = 0; i < batch.size(); i++) {
+                resetFlags();
+                processResult(batch.results[i]);
+                updateCounts();
+            }
+            batch.clear();
+        }
+    }
+    
     protected void resetFlags() {
         hasError = false;
         hasBlank = false;
@@ -136,7 +199,10 @@ public class ExpressionNumericValueBinner implements RowVisitor, RecordVisitor {
     }
     
     protected void processRow(Project project, int rowIndex, Row row, Properties bindings) {
-        Object value = _rowEvaluable.eval(project, rowIndex, row, bindings);
+        processResult(_rowEvaluable.eval(project, rowIndex, row, bindings));
+    }
+    
+    protected void processResult(Object value) {
         if (value != null) {
             if (value.getClass().isArray()) {
                 Object[] a = (Object[]) value;
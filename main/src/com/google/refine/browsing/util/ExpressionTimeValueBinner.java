@@ -38,8 +38,8 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Properties;
 
+import com.google.refine.browsing.MergeableRowVisitor;
 import com.google.refine.browsing.RecordVisitor;
-import com.google.refine.browsing.RowVisitor;
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.model.Project;
 import com.google.refine.model.Record;
@@ -49,7 +49,7 @@ import com.google.refine.model.Row;
  * Visit matched rows or records and slot them into bins based on the date computed
  * from a given expression.
  */
-public class ExpressionTimeValueBinner implements RowVisitor, RecordVisitor {
+public class ExpressionTimeValueBinner implements MergeableRowVisitor, RecordVisitor {
 
     /*
      * Configuration
@@ -74,6 +74,10 @@ public class ExpressionTimeValueBinner implements RowVisitor, RecordVisitor {
     protected boolean hasTime;
     protected boolean hasNonTime;
     
+    // Bindings reused across rows and records, so that the context of the
+    // record being visited is kept from one of its rows to the next
+    protected Properties bindings;
+    
     public ExpressionTimeValueBinner(RowEvaluable rowEvaluable, TimeBinIndex index) {
         _rowEvaluable = rowEvaluable;
         _index = index;
@@ -94,7 +98,7 @@ public class ExpressionTimeValueBinner implements RowVisitor, RecordVisitor {
     public boolean visit(Project project, int rowIndex, Row row) {
         resetFlags();
         
-        Properties bindings = ExpressionUtils.createBindings(project);
+        Properties bindings = getBindings(project);
         processRow(project, rowIndex, row, bindings);
         
         updateCounts();
@@ -102,11 +106,28 @@ public class ExpressionTimeValueBinner implements RowVisitor, RecordVisitor {
         return false;
     }
     
+    @Override
+    public MergeableRowVisitor createPartial() {
+        return new ExpressionTimeValueBinner(_rowEvaluable, _index);
+    }
+    
+    @Override
+    public void merge(MergeableRowVisitor partial) {
+        ExpressionTimeValueBinner binner = (ExpressionTimeValueBinner) partial;
+        for (int i = 0; i < bins.length; i++) {
+            bins[i] += binner.bins[i];
+        }
+        timeCount += binner.timeCount;
+        nonTimeCount += binner.nonTimeCount;
+        blankCount += binner.blankCount;
+        errorCount += binner.errorCount;
+    }
+    
     @Override
     public boolean visit(Project project, Record record) {
         resetFlags();
         
-        Properties bindings = ExpressionUtils.createBindings(project);
+        Properties bindings = getBindings(project);
         for (int r = record.fromRowIndex; r < record.toRowIndex; r++) {
             processRow(project, r, project.rows.get(r), bindings);
         }
@@ -116,6 +137,13 @@ public class ExpressionTimeValueBinner implements RowVisitor, RecordVisitor {
         return false;
     }
     
+    protected Properties getBindings(Project project) {
+        if (bindings == null) {
+            bindings = ExpressionUtils.createBindings(project);
+        }
+        return bindings;
+    }
+    
     protected void resetFlags() {
         hasError = false;
         hasBlank = false;
@@ -172,8 +172,10 @@ abstract public class NumericBinIndex {
         Row             row,
         Properties         bindings
     ) {
-        Object value = rowEvaluable.eval(project, rowIndex, row, bindings);
-        
+        processResult(rowEvaluable.eval(project, rowIndex, row, bindings), allValues);
+    }
+    
+    protected void processResult(Object value, List<Double> allValues) {
         if (ExpressionUtils.isError(value)) {
             _hasError = true;
         } else if (ExpressionUtils.isNonBlankData(value)) {
@@ -36,6 +36,7 @@ package com.google.refine.browsing.util;
 import java.util.List;
 import java.util.Properties;
 
+import com.google.refine.expr.EvaluationBatch;
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.model.Project;
 import com.google.refine.model.Row;
@@ -52,6 +53,24 @@ public class NumericBinRowIndex extends NumericBinIndex {
         
         Properties bindings = ExpressionUtils.createBindings(project);
         
+        if (rowEvaluable instanceof ExpressionBasedRowEvaluable) {
+            ExpressionBasedRowEvaluable expressionEvaluable = (ExpressionBasedRowEvaluable) rowEvaluable;
+            EvaluationBatch batch = expressionEvaluable.createBatch();
+            for (int i = 0; i < project.rows.size(); i++) {
+                batch.add(i, project.rows.get(i));
+                if (batch.isFull() || i == project.rows.size() - 1) {
+                    expressionEvaluable.evalBatch(batch, bindings);
+                    for (int j = 0; j < batch.size(); j++) {
+                        preprocessing();
+                        processResult(batch.results[j], allValues);
+                        postprocessing();
+                    }
+                    batch.clear();
+                }
+            }
+            return;
+        }
+        
         for (int i = 0; i < project.rows.size(); i++) {
             Row row = project.rows.get(i);
             
@@ -0,0 +1,103 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.browsing.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.google.refine.browsing.FilteredRows;
+import com.google.refine.browsing.MergeableRowVisitor;
+import com.google.refine.browsing.RowVisitor;
+import com.google.refine.model.Project;
+import com.google.refine.util.WorkerPool;
+
+/**
+ * Base class for filtered rows that can be visited range by range. Mergeable
+ * visitors of large projects get the row range split into partitions that are
+ * visited in parallel on the worker pool.
+ */
+abstract public class PartitionedFilteredRows implements FilteredRows {
+    // Projects with fewer rows than this are always visited on the calling thread
+    static public final int PARALLEL_THRESHOLD = 20000;
+    static public final int MIN_PARTITION_SIZE = 4096;
+    
+    @Override
+    public void accept(Project project, RowVisitor visitor) {
+        try {
+            visitor.start(project);
+            
+            int c = project.rows.size();
+            if (visitor instanceof MergeableRowVisitor && c >= PARALLEL_THRESHOLD &&
+                    WorkerPool.getParallelism() > 1 && !WorkerPool.isWorkerThread()) {
+                visitPartitions(project, (MergeableRowVisitor) visitor, c);
+            } else {
+                visitRange(project, visitor, 0, c);
+            }
+        } finally {
+            visitor.end(project);
+        }
+    }
+    
+    protected void visitPartitions(final Project project, MergeableRowVisitor visitor, int rowCount) {
+        int partitionSize = Math.max(MIN_PARTITION_SIZE, rowCount / (WorkerPool.getParallelism() * 4) + 1);
+        
+        List<Callable<MergeableRowVisitor>> tasks = new ArrayList<Callable<MergeableRowVisitor>>();
+        for (int from = 0; from < rowCount; from += partitionSize) {
+            final int fromRowIndex = from;
+            final int toRowIndex = Math.min(rowCount, from + partitionSize);
+            final MergeableRowVisitor partial = visitor.createPartial();
+            
+            tasks.add(new Callable<MergeableRowVisitor>() {
+                @Override
+                public MergeableRowVisitor call() throws Exception {
+                    visitRange(project, partial, fromRowIndex, toRowIndex);
+                    return partial;
+                }
+            });
+        }
+        
+        for (MergeableRowVisitor partial : WorkerPool.invokeAll(tasks)) {
+            visitor.merge(partial);
+        }
+    }
+    
+    /**
+     * Visit the matching rows whose indices are within the given range.
+     * 
+     * @return true if the visitor aborted visitation
+     */
+    abstract protected boolean visitRange(Project project, RowVisitor visitor, int fromRowIndex, int toRowIndex);
+}
@@ -0,0 +1,148 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.browsing.util;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.google.refine.browsing.RowFilter;
+import com.google.refine.history.HistoryEntry;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+
+/**
+ * Per project cache of the rows matched by facets' row filters, as bitmaps keyed
+ * by the facets' configurations. The whole cache is dropped whenever the project's
+ * history moves, so that a bitmap is only reused while the project's data is the
+ * same as when it was computed. Filters whose expressions call functions that
+ * aren't pure must not be cached, since their rows can change with the data
+ * unchanged; the engine has no configuration key for their facets.
+ */
+public class RowFilterBitmapCache {
+    // Maximum number of bitmaps kept per project
+    static protected final int MAX_ENTRIES = 32;
+    
+    static final protected Map<Project, RowFilterBitmapCache> s_caches =
+        new WeakHashMap<Project, RowFilterBitmapCache>();
+    
+    static public RowFilterBitmapCache getCache(Project project) {
+        synchronized (s_caches) {
+            RowFilterBitmapCache cache = s_caches.get(project);
+            if (cache == null) {
+                cache = new RowFilterBitmapCache();
+                s_caches.put(project, cache);
+            }
+            return cache;
+        }
+    }
+    
+    protected long _version = -1;
+    protected long _hits = 0;
+    protected long _misses = 0;
+    
+    final protected Map<String, BitSet> _bitmaps = new LinkedHashMap<String, BitSet>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BitSet> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    
+    /**
+     * Gets the bitmap of the rows matched by a row filter, computing it unless a
+     * filter with the same configuration was run against the same version of the
+     * project. The returned bitmap is shared and must not be modified.
+     * 
+     * @param project
+     * @param key the configuration of the facet the filter comes from
+     * @param rowFilter
+     */
+    public BitSet getBitmap(Project project, String key, RowFilter rowFilter) {
+        long version = getVersion(project);
+        synchronized (this) {
+            if (version != _version) {
+                _bitmaps.clear();
+                _version = version;
+            }
+            BitSet bitmap = _bitmaps.get(key);
+            if (bitmap != null) {
+                _hits++;
+                return bitmap;
+            }
+            _misses++;
+        }
+        
+        BitSet bitmap = computeBitmap(project, rowFilter);
+        synchronized (this) {
+            if (version == _version) {
+                _bitmaps.put(key, bitmap);
+            }
+        }
+        return bitmap;
+    }
+    
+    synchronized public long getHits() {
+        return _hits;
+    }
+    
+    synchronized public long getMisses() {
+        return _misses;
+    }
+    
+    static protected BitSet computeBitmap(Project project, RowFilter rowFilter) {
+        int c = project.rows.size();
+        BitSet bitmap = new BitSet(c);
+        for (int rowIndex = 0; rowIndex < c; rowIndex++) {
+            Row row = project.rows.get(rowIndex);
+            if (rowFilter.filterRow(project, rowIndex, row)) {
+                bitmap.set(rowIndex);
+            }
+        }
+        return bitmap;
+    }
+    
+    /**
+     * The id of the last change applied to the project identifies the state of its
+     * data: any edit, undo or redo changes it.
+     */
+    static protected long getVersion(Project project) {
+        List<HistoryEntry> entries = project.history.getLastPastEntries(1);
+        return entries.isEmpty() ? 0 : entries.get(0).id;
+    }
+}
@@ -33,7 +33,11 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.clustering;
 
+import java.util.Properties;
+
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 import com.google.refine.Jsonizable;
 import com.google.refine.browsing.Engine;
@@ -48,6 +52,25 @@ public abstract class Clusterer implements Jsonizable {
 
     public abstract void computeClusters(Engine engine);
     
+    /**
+     * Compute clusters, reporting progress to the monitor and stopping early, with
+     * the clusters found so far, when it asks to. Clusterers that can't stop early
+     * compute all clusters.
+     */
+    public void computeClusters(Engine engine, ClusteringMonitor monitor) {
+        computeClusters(engine);
+        monitor.setProgress(100);
+    }
+    
+    /**
+     * Write the clusters found so far by a computation in progress, in the same
+     * format as the complete clusters. Clusterers that can't tell write none.
+     */
+    public void writePartial(JSONWriter writer, Properties options) throws JSONException {
+        writer.array();
+        writer.endArray();
+    }
+    
     public void initializeFromJSON(Project project, JSONObject o) throws Exception {
         _project = project;
         _config = o;
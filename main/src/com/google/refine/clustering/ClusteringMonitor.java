@@ -0,0 +1,90 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.clustering;
+
+/**
+ * Follows a clustering computation, which may be running on other threads: it
+ * collects the computation's progress, and tells it to stop when canceled or
+ * once its time budget is spent. Computations that stop early keep the clusters
+ * found so far.
+ */
+public class ClusteringMonitor {
+    final protected long _timeBudget;
+    volatile protected long _deadline;
+    volatile protected boolean _canceled;
+    volatile protected int _progress; // out of 100
+    
+    /**
+     * @param timeBudget time in milliseconds after which the computation should
+     *        stop, or 0 for no limit
+     */
+    public ClusteringMonitor(long timeBudget) {
+        _timeBudget = timeBudget;
+        restart();
+    }
+    
+    /**
+     * Count the time budget from now, for computations that waited to run.
+     */
+    public void restart() {
+        _deadline = _timeBudget > 0 ? System.currentTimeMillis() + _timeBudget : Long.MAX_VALUE;
+    }
+    
+    public void cancel() {
+        _canceled = true;
+    }
+    
+    public boolean isCanceled() {
+        return _canceled;
+    }
+    
+    public boolean isOutOfTime() {
+        return System.currentTimeMillis() > _deadline;
+    }
+    
+    /**
+     * Whether the computation should stop with what it has found so far.
+     */
+    public boolean shouldStop() {
+        return _canceled || isOutOfTime();
+    }
+    
+    public int getProgress() {
+        return _progress;
+    }
+    
+    public void setProgress(int progress) {
+        _progress = Math.max(0, Math.min(100, progress));
+    }
+}
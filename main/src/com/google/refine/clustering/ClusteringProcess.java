@@ -0,0 +1,159 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.clustering;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONWriter;
+
+import com.google.refine.browsing.Engine;
+import com.google.refine.model.Project;
+import com.google.refine.process.LongRunningProcess;
+import com.google.refine.process.Process;
+
+/**
+ * Computes clusters in the project's process queue rather than on the thread of
+ * the request asking for them. The clusters found so far can be fetched while it
+ * runs, and the process stops, keeping what it has found, when canceled or once
+ * its time budget is spent.
+ * <p>
+ * Clustering doesn't change the project, so the process adds no history entry.
+ * Recent processes are retained by the project's process manager after they are
+ * done, so that their clusters can be fetched by id.
+ */
+public class ClusteringProcess extends LongRunningProcess implements Runnable {
+    static final private AtomicLong s_nextID = new AtomicLong();
+    
+    final protected long _id;
+    final protected Project _project;
+    final protected Engine _engine;
+    final protected Clusterer _clusterer;
+    final protected ClusteringMonitor _monitor;
+    volatile protected Exception _exception;
+    volatile protected boolean _outOfTime;
+    
+    /**
+     * @param project
+     * @param engine
+     * @param clusterer an initialized clusterer
+     * @param timeBudget time in milliseconds after which the clustering stops,
+     *        counted from when the process starts running, or 0 for no limit
+     * @param description
+     */
+    public ClusteringProcess(Project project, Engine engine, Clusterer clusterer, long timeBudget, String description) {
+        super(description);
+        _id = s_nextID.incrementAndGet();
+        _project = project;
+        _engine = engine;
+        _clusterer = clusterer;
+        _monitor = new ClusteringMonitor(timeBudget);
+        project.processManager.retainProcess(_id, this);
+    }
+    
+    /**
+     * Gets a recent clustering process of a project, or null.
+     */
+    static public ClusteringProcess getProcess(Project project, long id) {
+        Process process = project.processManager.getRetainedProcess(id);
+        return process instanceof ClusteringProcess ? (ClusteringProcess) process : null;
+    }
+    
+    public long getID() {
+        return _id;
+    }
+    
+    @Override
+    public void cancel() {
+        _monitor.cancel();
+        super.cancel();
+    }
+    
+    @Override
+    public void write(JSONWriter writer, Properties options)
+            throws JSONException {
+        
+        _progress = _monitor.getProgress();
+        super.write(writer, options);
+    }
+    
+    /**
+     * Write the process' state, and the clusters found so far.
+     */
+    public void writeClusters(JSONWriter writer, Properties options)
+            throws JSONException {
+        
+        boolean done = isDone();
+        writer.object();
+        writer.key("id"); writer.value(_id);
+        writer.key("status"); writer.value(_thread == null ? "pending" : (done ? "done" : "running"));
+        writer.key("progress"); writer.value(done ? 100 : _monitor.getProgress());
+        writer.key("canceled"); writer.value(_monitor.isCanceled());
+        writer.key("outOfTime"); writer.value(_outOfTime);
+        Exception exception = _exception;
+        if (exception != null) {
+            writer.key("message"); writer.value(exception.getLocalizedMessage());
+        }
+        writer.key("clusters");
+        if (done && exception == null && !_monitor.isCanceled()) {
+            _clusterer.write(writer, options);
+        } else {
+            _clusterer.writePartial(writer, options);
+        }
+        writer.endObject();
+    }
+    
+    @Override
+    protected Runnable getRunnable() {
+        return this;
+    }
+    
+    @Override
+    public void run() {
+        // The time budget runs from when the process starts, not from when it was queued
+        _monitor.restart();
+        try {
+            _clusterer.computeClusters(_engine, _monitor);
+        } catch (Exception e) {
+            // Failures are reported with the clusters, rather than as failures of
+            // the process, which would hold up the processes queued after it
+            if (!_monitor.isCanceled()) {
+                _exception = e;
+            }
+        }
+        _outOfTime = !_monitor.isCanceled() && _monitor.isOutOfTime();
+        _project.processManager.onDoneProcess(this);
+    }
+}
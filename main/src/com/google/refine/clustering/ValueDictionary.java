@@ -0,0 +1,214 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.clustering;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.refine.browsing.Engine;
+import com.google.refine.browsing.FilteredRows;
+import com.google.refine.browsing.MergeableRowVisitor;
+import com.google.refine.history.HistoryEntry;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+
+/**
+ * The distinct values of a column among the rows selected by an engine, with the
+ * number of rows holding each of them. Clusterers work on these rather than on
+ * rows, so that each value is keyed or compared once however many rows hold it.
+ * <p>
+ * Dictionaries are kept among the column's precomputes, keyed by the engine's
+ * facets, so that clustering the same column again with another method or other
+ * parameters doesn't go through the rows again. They are only reused while the
+ * project's data is the same as when they were built, since facets may depend
+ * on other columns. Dictionaries are shared and must not be modified.
+ */
+public class ValueDictionary {
+    static final protected String PRECOMPUTE_KEY = "clustering-dictionaries";
+    
+    // Maximum number of dictionaries kept per column, for different facets
+    static final protected int MAX_DICTIONARIES = 4;
+    
+    /**
+     * Distinct values, in the order of the rows they first appear in.
+     */
+    final public String[] values;
+    
+    /**
+     * Number of rows holding each value.
+     */
+    final public int[] counts;
+    
+    protected ValueDictionary(String[] values, int[] counts) {
+        this.values = values;
+        this.counts = counts;
+    }
+    
+    public int size() {
+        return values.length;
+    }
+    
+    /**
+     * Gets the dictionary of a column for the rows selected by an engine, building
+     * it unless it was already built for the same facets and data.
+     * 
+     * @param project
+     * @param cellIndex cell index of the column
+     * @param engine
+     */
+    static public ValueDictionary getDictionary(Project project, int cellIndex, Engine engine) {
+        Column column = project.columnModel.getColumnByCellIndex(cellIndex);
+        String filterKey = engine.getFilterKey();
+        if (column == null || filterKey == null) {
+            return build(project, cellIndex, engine);
+        }
+        
+        String key = getVersion(project) + "\n" + filterKey;
+        Dictionaries dictionaries;
+        synchronized (column) {
+            dictionaries = (Dictionaries) column.getPrecompute(PRECOMPUTE_KEY);
+            if (dictionaries == null) {
+                dictionaries = new Dictionaries();
+                column.setPrecompute(PRECOMPUTE_KEY, dictionaries);
+            }
+        }
+        
+        ValueDictionary dictionary = dictionaries.get(key);
+        if (dictionary == null) {
+            dictionary = build(project, cellIndex, engine);
+            dictionaries.put(key, dictionary);
+        }
+        return dictionary;
+    }
+    
+    static protected ValueDictionary build(Project project, int cellIndex, Engine engine) {
+        DictionaryRowVisitor visitor = new DictionaryRowVisitor(cellIndex);
+        FilteredRows filteredRows = engine.getAllFilteredRows();
+        filteredRows.accept(project, visitor);
+        
+        String[] values = new String[visitor.counts.size()];
+        int[] counts = new int[values.length];
+        int i = 0;
+        for (Map.Entry<String, int[]> entry : visitor.counts.entrySet()) {
+            values[i] = entry.getKey();
+            counts[i] = entry.getValue()[0];
+            i++;
+        }
+        return new ValueDictionary(values, counts);
+    }
+    
+    /**
+     * The id of the last change applied to the project identifies the state of its
+     * data: any edit, undo or redo changes it.
+     */
+    static protected long getVersion(Project project) {
+        List<HistoryEntry> entries = project.history.getLastPastEntries(1);
+        return entries.isEmpty() ? 0 : entries.get(0).id;
+    }
+    
+    static protected class Dictionaries {
+        final protected Map<String, ValueDictionary> _dictionaries = new LinkedHashMap<String, ValueDictionary>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ValueDictionary> eldest) {
+                return size() > MAX_DICTIONARIES;
+            }
+        };
+        
+        synchronized ValueDictionary get(String key) {
+            return _dictionaries.get(key);
+        }
+        
+        synchronized void put(String key, ValueDictionary dictionary) {
+            _dictionaries.put(key, dictionary);
+        }
+    }
+    
+    static protected class DictionaryRowVisitor implements MergeableRowVisitor {
+        final protected int _cellIndex;
+        final protected Map<String, int[]> counts = new LinkedHashMap<String, int[]>();
+        
+        DictionaryRowVisitor(int cellIndex) {
+            _cellIndex = cellIndex;
+        }
+        
+        @Override
+        public void start(Project project) {
+            // nothing to do
+        }
+        
+        @Override
+        public void end(Project project) {
+            // nothing to do
+        }
+        
+        @Override
+        public boolean visit(Project project, int rowIndex, Row row) {
+            Cell cell = row.getCell(_cellIndex);
+            if (cell != null && cell.value != null) {
+                Object v = cell.value;
+                String s = (v instanceof String) ? ((String) v) : v.toString();
+                int[] count = counts.get(s);
+                if (count == null) {
+                    counts.put(s, new int[] { 1 });
+                } else {
+                    count[0]++;
+                }
+            }
+            return false;
+        }
+        
+        @Override
+        public MergeableRowVisitor createPartial() {
+            return new DictionaryRowVisitor(_cellIndex);
+        }
+        
+        @Override
+        public void merge(MergeableRowVisitor partial) {
+            for (Map.Entry<String, int[]> entry : ((DictionaryRowVisitor) partial).counts.entrySet()) {
+                int[] count = counts.get(entry.getKey());
+                if (count == null) {
+                    counts.put(entry.getKey(), entry.getValue());
+                } else {
+                    count[0] += entry.getValue()[0];
+                }
+            }
+        }
+    }
+}
@@ -35,6 +35,7 @@ package com.google.refine.clustering.binning;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -43,6 +44,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -51,16 +53,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.refine.browsing.Engine;
-import com.google.refine.browsing.FilteredRows;
-import com.google.refine.browsing.RowVisitor;
 import com.google.refine.clustering.Clusterer;
-import com.google.refine.model.Cell;
+import com.google.refine.clustering.ValueDictionary;
 import com.google.refine.model.Project;
-import com.google.refine.model.Row;
+import com.google.refine.util.WorkerPool;
 
 public class BinningClusterer extends Clusterer {
 
     private Keyer _keyer;
+    private Object[] _params;
+    private String _keyerKey;
+    
+    // Below this number of distinct values, keys are computed on the calling thread
+    static final protected int MIN_PARALLEL_VALUES = 1000;
     
     static final protected Map<String, Keyer> _keyers = new HashMap<String, Keyer>();
 
@@ -78,67 +83,6 @@ public class BinningClusterer extends Clusterer {
         _keyers.put("cologne-phonetic", new ColognePhoneticKeyer());
     }
 
-    class BinningRowVisitor implements RowVisitor {
-
-        Keyer _keyer;
-        Object[] _params;
-        JSONObject _config;
-        
-        Map<String,Map<String,Integer>> _map = new HashMap<String,Map<String,Integer>>();
-        
-        public BinningRowVisitor(Keyer k, JSONObject o) {
-            _keyer = k;
-            _config = o;
-            if (k instanceof NGramFingerprintKeyer) {
-                try {
-                    int size = _config.getJSONObject("params").getInt("ngram-size");
-                    logger.debug("Using ngram size: {}", size);
-                    _params = new Object[1];
-                    _params[0] = size;
-                } catch (JSONException e) {
-                    //Refine.warn("No params specified, using default");
-                }
-            }
-        }
-        
-        @Override
-        public void start(Project project) {
-            // nothing to do
-        }
-
-        @Override
-        public void end(Project project) {
-            // nothing to do
-        }
-        
-        @Override
-        public boolean visit(Project project, int rowIndex, Row row) {
-            Cell cell = row.getCell(_colindex);
-            if (cell != null && cell.value != null) {
-                Object v = cell.value;
-                String s = (v instanceof String) ? ((String) v) : v.toString();
-                String key = _keyer.key(s,_params);
-                if (_map.containsKey(key)) {
-                    Map<String,Integer> m = _map.get(key);
-                    if (m.containsKey(s)) {
-                        m.put(s, m.get(s) + 1);
-                    } else {
-                        m.put(s,1);
-                    }
-                } else {
-                    Map<String,Integer> m = new TreeMap<String,Integer>();
-                    m.put(s,1);
-                    _map.put(key, m);
-                }
-            }
-            return false;
-        }
-        
-        public Map<String,Map<String,Integer>> getMap() {
-            return _map;
-        }
-    }
-            
     public static class SizeComparator implements Comparator<Map<String,Integer>>, Serializable {
         private static final long serialVersionUID = -1390696157208674054L;
         @Override
@@ -172,20 +116,102 @@ public class BinningClusterer extends Clusterer {
     @Override
     public void initializeFromJSON(Project project, JSONObject o) throws Exception {
         super.initializeFromJSON(project, o);
-        _keyer = _keyers.get(o.getString("function").toLowerCase());
+        String function = o.getString("function").toLowerCase();
+        _keyer = _keyers.get(function);
+        if (_keyer instanceof NGramFingerprintKeyer) {
+            try {
+                int size = _config.getJSONObject("params").getInt("ngram-size");
+                logger.debug("Using ngram size: {}", size);
+                _params = new Object[1];
+                _params[0] = size;
+            } catch (JSONException e) {
+                //Refine.warn("No params specified, using default");
+            }
+        }
+        _keyerKey = _params == null ? function : function + "\n" + Arrays.toString(_params);
     }
 
     @Override
     public void computeClusters(Engine engine) {
-        BinningRowVisitor visitor = new BinningRowVisitor(_keyer,_config);
-        FilteredRows filteredRows = engine.getAllFilteredRows();
-        filteredRows.accept(_project, visitor);
-     
-        Map<String,Map<String,Integer>> map = visitor.getMap();
+        ValueDictionary dictionary = ValueDictionary.getDictionary(_project, _colindex, engine);
+        String[] keys = getKeys(dictionary.values);
+        
+        Map<String,Map<String,Integer>> map = new HashMap<String,Map<String,Integer>>();
+        for (int i = 0; i < keys.length; i++) {
+            Map<String,Integer> m = map.get(keys[i]);
+            if (m == null) {
+                m = new TreeMap<String,Integer>();
+                map.put(keys[i], m);
+            }
+            m.put(dictionary.values[i], dictionary.counts[i]);
+        }
         _clusters = new ArrayList<Map<String,Integer>>(map.values());
         Collections.sort(_clusters, new SizeComparator());
     }
     
+    /**
+     * Key distinct values, reusing the keys cached for the column, so that only
+     * the values that weren't in the column when it was last clustered with the
+     * same keyer get keyed.
+     */
+    protected String[] getKeys(String[] values) {
+        KeyCache cache = KeyCache.getCache(_project, _colindex);
+        if (cache == null) {
+            return computeKeys(values);
+        }
+        
+        Map<String,String> cachedKeys = cache.getKeys(_keyerKey);
+        String[] keys = new String[values.length];
+        List<String> missing = new ArrayList<String>();
+        for (int i = 0; i < values.length; i++) {
+            keys[i] = cachedKeys == null ? null : cachedKeys.get(values[i]);
+            if (keys[i] == null) {
+                missing.add(values[i]);
+            }
+        }
+        if (!missing.isEmpty()) {
+            String[] missingKeys = computeKeys(missing.toArray(new String[missing.size()]));
+            for (int i = 0, m = 0; i < values.length; i++) {
+                if (keys[i] == null) {
+                    keys[i] = missingKeys[m++];
+                }
+            }
+        }
+        
+        Map<String,String> newKeys = new HashMap<String,String>(values.length * 2);
+        for (int i = 0; i < values.length; i++) {
+            newKeys.put(values[i], keys[i]);
+        }
+        cache.setKeys(_keyerKey, newKeys);
+        return keys;
+    }
+    
+    /**
+     * Key each distinct value once. Large dictionaries are split across
+     * processors, so keyers must not keep state between calls.
+     */
+    protected String[] computeKeys(final String[] values) {
+        final String[] keys = new String[values.length];
+        int partitions = values.length < MIN_PARALLEL_VALUES ? 1 : WorkerPool.getParallelism();
+        
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            final int from = (int) ((long) values.length * p / partitions);
+            final int to = (int) ((long) values.length * (p + 1) / partitions);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = from; i < to; i++) {
+                        keys[i] = _keyer.key(values[i], _params);
+                    }
+                    return null;
+                }
+            });
+        }
+        WorkerPool.invokeAll(tasks);
+        return keys;
+    }
+    
     @Override
     public void write(JSONWriter writer, Properties options) throws JSONException {
         EntriesComparator c = new EntriesComparator();
@@ -34,6 +34,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.google.refine.clustering.binning;
 
 import java.util.Iterator;
+import java.util.Locale;
 import java.util.TreeSet;
 import java.util.regex.Pattern;
 
@@ -44,11 +45,125 @@ public class FingerprintKeyer extends Keyer {
     // Punctuation and control characters (except for TAB which we need for split to work)
     static final Pattern punctctrl = Pattern.compile("\\p{Punct}|[\\x00-\\x08\\x0A-\\x1F\\x7F]");
     
+    // ASCII characters removed from fingerprints, as by punctctrl
+    static final protected boolean[] STRIPPED = new boolean[0x80];
+    
+    // ASCII equivalents of the characters up to the end of the Latin Extended-A chart
+    static final protected char[] ASCII_FOLDING = new char[0x180];
+    
+    // Strings with more tokens or n-grams than this are keyed by the general implementation
+    static final protected int MAX_SORTED_TOKENS = 64;
+    
+    static {
+        for (char c = 0; c < STRIPPED.length; c++) {
+            STRIPPED[c] = punctctrl.matcher(String.valueOf(c)).matches();
+        }
+        for (char c = 0; c < ASCII_FOLDING.length; c++) {
+            ASCII_FOLDING[c] = translate(c);
+        }
+    }
+    
+    /**
+     * Buffers reused by the keys computed on a thread.
+     */
+    static protected class Scratch {
+        char[] chars = new char[64];
+        char[] out = new char[64];
+        int[] starts = new int[MAX_SORTED_TOKENS];
+        int[] lengths = new int[MAX_SORTED_TOKENS];
+        
+        char[] chars(int length) {
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+            }
+            return chars;
+        }
+        
+        char[] out(int length) {
+            if (out.length < length) {
+                out = new char[Math.max(length, out.length * 2)];
+            }
+            return out;
+        }
+    }
+    
+    static final protected ThreadLocal<Scratch> s_scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+    
     @Override
     public String key(String s, Object... o) {
         if (s == null || o !=null && o.length > 0) {
             throw new IllegalArgumentException("Fingerprint keyer accepts a single string parameter");
         }
+        if (!hasSimpleLowerCase()) {
+            return keyGeneral(s);
+        }
+        
+        Scratch scratch = s_scratch.get();
+        int length = s.length();
+        char[] chars = scratch.chars(length);
+        int[] starts = scratch.starts;
+        int[] lengths = scratch.lengths;
+        
+        // Lowercase, strip punctuation and control chars, and split by whitespace in one pass
+        int n = 0;
+        int tokenCount = 0;
+        int tokenStart = -1;
+        for (int i = 0; i <= length; i++) {
+            char c;
+            if (i < length) {
+                c = toLowerCase(s.charAt(i));
+                if (c == 0) {
+                    return keyGeneral(s);
+                } else if (c < 0x80 && STRIPPED[c]) {
+                    continue;
+                } else if (!Character.isWhitespace(c)) {
+                    if (tokenStart < 0) {
+                        tokenStart = n;
+                    }
+                    chars[n++] = c;
+                    continue;
+                }
+            }
+            if (tokenStart >= 0) {
+                if (tokenCount == MAX_SORTED_TOKENS) {
+                    return keyGeneral(s);
+                }
+                starts[tokenCount] = tokenStart;
+                lengths[tokenCount] = n - tokenStart;
+                tokenCount++;
+                tokenStart = -1;
+            }
+        }
+        
+        sortTokens(chars, starts, lengths, tokenCount);
+        
+        // Join deduplicated tokens, replacing characters by their ASCII equivalents
+        char[] out = scratch.out(n + tokenCount);
+        int outLength = 0;
+        for (int t = 0; t < tokenCount; t++) {
+            if (t > 0 && compare(chars, starts[t - 1], lengths[t - 1], starts[t], lengths[t]) == 0) {
+                continue;
+            }
+            if (outLength > 0) {
+                out[outLength++] = ' ';
+            }
+            for (int i = starts[t]; i < starts[t] + lengths[t]; i++) {
+                out[outLength++] = fold(chars[i]);
+            }
+        }
+        return new String(out, 0, outLength);
+    }
+    
+    /**
+     * The fingerprint as computed with String operations, for strings the character
+     * based implementation doesn't handle the same way.
+     */
+    protected String keyGeneral(String s) {
         s = s.trim(); // first off, remove whitespace around the string
         s = s.toLowerCase(); // then lowercase it
         s = punctctrl.matcher(s).replaceAll(""); // then remove all punctuation and control chars
@@ -67,12 +182,73 @@ public class FingerprintKeyer extends Keyer {
         }
         return asciify(b.toString()); // find ASCII equivalent to characters 
     }
+    
+    /**
+     * Whether String.toLowerCase() lowercases characters one by one in the default
+     * locale, as Character.toLowerCase() does.
+     */
+    static protected boolean hasSimpleLowerCase() {
+        String language = Locale.getDefault().getLanguage();
+        return !"tr".equals(language) && !"az".equals(language) && !"lt".equals(language);
+    }
+    
+    /**
+     * Lowercase a character as String.toLowerCase() would, or return 0 for characters
+     * that it lowercases depending on their context: dotted capital I, capital sigma
+     * and surrogates.
+     */
+    static protected char toLowerCase(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        } else if (c == '\u0130' || c == '\u03A3' ||
+                (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)) {
+            return 0;
+        }
+        return Character.toLowerCase(c);
+    }
+    
+    static protected char fold(char c) {
+        return c < ASCII_FOLDING.length ? ASCII_FOLDING[c] : c;
+    }
+    
+    /**
+     * Compare two ranges of a char array as String.compareTo() compares strings.
+     */
+    static protected int compare(char[] chars, int start1, int length1, int start2, int length2) {
+        int length = Math.min(length1, length2);
+        for (int i = 0; i < length; i++) {
+            char c1 = chars[start1 + i];
+            char c2 = chars[start2 + i];
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return length1 - length2;
+    }
+    
+    /**
+     * Sort ranges of a char array in place, by insertion since they are few.
+     */
+    static protected void sortTokens(char[] chars, int[] starts, int[] lengths, int count) {
+        for (int i = 1; i < count; i++) {
+            int start = starts[i];
+            int length = lengths[i];
+            int j = i - 1;
+            while (j >= 0 && compare(chars, starts[j], lengths[j], start, length) > 0) {
+                starts[j + 1] = starts[j];
+                lengths[j + 1] = lengths[j];
+                j--;
+            }
+            starts[j + 1] = start;
+            lengths[j + 1] = length;
+        }
+    }
 
     protected String asciify(String s) {
         char[] c = s.toCharArray();
         StringBuffer b = new StringBuffer();
         for (char element : c) {
-            b.append(translate(element));
+            b.append(fold(element));
         }
         return b.toString();
     }
@@ -81,7 +257,7 @@ public class FingerprintKeyer extends Keyer {
      * Translate the given unicode char in the closest ASCII representation
      * NOTE: this function deals only with latin-1 supplement and latin-1 extended code charts
      */
-    private char translate(char c) {
+    static private char translate(char c) {
         switch(c) {
             case '\u00C0':
             case '\u00C1':
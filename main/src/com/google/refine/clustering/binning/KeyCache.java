@@ -0,0 +1,96 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.clustering.binning;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+
+/**
+ * Keys of a column's distinct values, per keyer and parameters, kept among the
+ * column's precomputes. Keys only depend on values, so the cache is kept when the
+ * column's cells change: after an edit, only the values it introduced are keyed
+ * again. Key maps are shared and must not be modified.
+ */
+public class KeyCache implements Column.ValueKeyedPrecompute {
+    static final protected String PRECOMPUTE_KEY = "clustering-keys";
+    
+    // Maximum number of keyer configurations whose keys are kept per column
+    static final protected int MAX_KEYERS = 4;
+    
+    final protected Map<String, Map<String, String>> _keys = new LinkedHashMap<String, Map<String, String>>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Map<String, String>> eldest) {
+            return size() > MAX_KEYERS;
+        }
+    };
+    
+    /**
+     * Gets the key cache of a column, or null if there is no such column.
+     */
+    static public KeyCache getCache(Project project, int cellIndex) {
+        Column column = project.columnModel.getColumnByCellIndex(cellIndex);
+        if (column == null) {
+            return null;
+        }
+        synchronized (column) {
+            KeyCache cache = (KeyCache) column.getPrecompute(PRECOMPUTE_KEY);
+            if (cache == null) {
+                cache = new KeyCache();
+                column.setPrecompute(PRECOMPUTE_KEY, cache);
+            }
+            return cache;
+        }
+    }
+    
+    /**
+     * @param keyerKey identifies the keyer and its parameters
+     * @return keys of the values last keyed with that keyer, or null
+     */
+    synchronized public Map<String, String> getKeys(String keyerKey) {
+        return _keys.get(keyerKey);
+    }
+    
+    /**
+     * Replace the keys kept for a keyer, so that values no longer found in the
+     * column are dropped.
+     */
+    synchronized public void setKeys(String keyerKey, Map<String, String> keys) {
+        _keys.put(keyerKey, keys);
+    }
+}
@@ -41,12 +41,71 @@ public class NGramFingerprintKeyer extends FingerprintKeyer {
 
     static final Pattern alphanum = Pattern.compile("\\p{Punct}|\\p{Cntrl}|\\p{Space}");
     
+    // ASCII characters removed before splitting into n-grams, as by alphanum
+    static final protected boolean[] NGRAM_STRIPPED = new boolean[0x80];
+    
+    static {
+        for (char c = 0; c < NGRAM_STRIPPED.length; c++) {
+            NGRAM_STRIPPED[c] = alphanum.matcher(String.valueOf(c)).matches();
+        }
+    }
+    
     @Override
     public String key(String s, Object... o) {
         int ngram_size = 2;
         if (o != null && o.length > 0 && o[0] instanceof Number) {
             ngram_size = (Integer) o[0];
         }
+        if (ngram_size <= 0 || !hasSimpleLowerCase()) {
+            return keyGeneral(s, ngram_size);
+        }
+        
+        Scratch scratch = s_scratch.get();
+        int length = s.length();
+        char[] chars = scratch.chars(length);
+        
+        // Lowercase and strip punctuation, control chars and spaces in one pass
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            char c = toLowerCase(s.charAt(i));
+            if (c == 0) {
+                return keyGeneral(s, ngram_size);
+            } else if (c >= 0x80 || !NGRAM_STRIPPED[c]) {
+                chars[n++] = c;
+            }
+        }
+        
+        int count = Math.max(0, n - ngram_size + 1);
+        if (count > MAX_SORTED_TOKENS) {
+            return keyGeneral(s, ngram_size);
+        }
+        int[] starts = scratch.starts;
+        int[] lengths = scratch.lengths;
+        for (int i = 0; i < count; i++) {
+            starts[i] = i;
+            lengths[i] = ngram_size;
+        }
+        sortTokens(chars, starts, lengths, count);
+        
+        // Concatenate deduplicated n-grams, replacing characters by their ASCII equivalents
+        char[] out = scratch.out(count * ngram_size);
+        int outLength = 0;
+        for (int t = 0; t < count; t++) {
+            if (t > 0 && compare(chars, starts[t - 1], ngram_size, starts[t], ngram_size) == 0) {
+                continue;
+            }
+            for (int i = starts[t]; i < starts[t] + ngram_size; i++) {
+                out[outLength++] = fold(chars[i]);
+            }
+        }
+        return new String(out, 0, outLength);
+    }
+    
+    /**
+     * The fingerprint as computed with String operations, for strings the character
+     * based implementation doesn't handle the same way.
+     */
+    protected String keyGeneral(String s, int ngram_size) {
         s = s.toLowerCase(); // then lowercase it
         s = alphanum.matcher(s).replaceAll(""); // then remove all punctuation and control chars
         TreeSet<String> set = ngram_split(s,ngram_size);
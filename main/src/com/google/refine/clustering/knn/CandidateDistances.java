@@ -0,0 +1,402 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.clustering.knn;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.refine.clustering.ClusteringMonitor;
+import com.google.refine.util.WorkerPool;
+
+import edu.mit.simile.vicino.distances.Distance;
+
+/**
+ * Distances between the pairs of distinct values that share a block, computed
+ * once so that clusters can be drawn for any radius they cover without comparing
+ * values again.
+ * <p>
+ * Distances beyond the radius they are computed for are kept as long as there
+ * are no more than {@link #MAX_CACHED_DISTANCES} of them, in which case they
+ * cover any radius. Past that, only the distances within the radius are kept.
+ */
+public class CandidateDistances {
+    static final protected int MAX_CACHED_DISTANCES = 1 << 22;
+    
+    final public String[] values;
+    
+    // Pairs of value indices, lower index first, packed into longs
+    final protected long[] _pairs;
+    final protected double[] _distances;
+    
+    // Largest radius for which the distances of all candidate pairs are known
+    final protected double _maxRadius;
+    
+    protected CandidateDistances(String[] values, long[] pairs, double[] distances, double maxRadius) {
+        this.values = values;
+        _pairs = pairs;
+        _distances = distances;
+        _maxRadius = maxRadius;
+    }
+    
+    /**
+     * A computation of distances between candidate pairs, whose distances found
+     * so far can be looked at while it runs.
+     */
+    static public class Computation {
+        // Number of pairs a task collects before making them visible to snapshots
+        static final protected int PUBLISH_SIZE = 1024;
+        
+        final protected Distance _distance;
+        final protected String[] _values;
+        final protected List<int[]> _blocks;
+        final protected int _window;
+        final protected double _radius;
+        final protected ClusteringMonitor _monitor;
+        
+        final protected Queue<PairList> _published = new ConcurrentLinkedQueue<PairList>();
+        
+        /**
+         * @param distance
+         * @param values distinct values
+         * @param blocks indices of the values in each block, in increasing order;
+         *        a pair of values sharing several blocks is only compared in the
+         *        first of them
+         * @param window number of following values of the block each value is
+         *        compared to, to bound the work on large blocks
+         * @param radius radius the distances are computed for; a negative radius
+         *        asks for all candidate pairs to be kept
+         * @param monitor receives the progress, and may stop the computation
+         */
+        public Computation(
+                Distance distance, String[] values, List<int[]> blocks, int window, double radius, ClusteringMonitor monitor) {
+            _distance = distance;
+            _values = values;
+            _blocks = blocks;
+            _window = window;
+            _radius = radius;
+            _monitor = monitor;
+        }
+        
+        public CandidateDistances run() {
+            final int[][] blocksOfValues = getBlocksOfValues(_values.length, _blocks);
+            final AtomicInteger nextBlock = new AtomicInteger();
+            final AtomicInteger kept = new AtomicInteger();
+            final AtomicBoolean dropped = new AtomicBoolean();
+            final AtomicBoolean stopped = new AtomicBoolean();
+            
+            // Progress is measured in comparisons
+            long totalWork = 0;
+            for (int[] block : _blocks) {
+                totalWork += getWork(block.length);
+            }
+            final long total = Math.max(1, totalWork);
+            final AtomicLong done = new AtomicLong();
+            
+            List<Distance> distances = createDistances(_distance, _blocks.isEmpty() ? 1 : WorkerPool.getParallelism());
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(distances.size());
+            for (final Distance d : distances) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        PairList pairs = new PairList();
+                        int b;
+                        while ((b = nextBlock.getAndIncrement()) < _blocks.size()) {
+                            int[] block = _blocks.get(b);
+                            for (int i = 0; i < block.length; i++) {
+                                if (_monitor.shouldStop()) {
+                                    stopped.set(true);
+                                    break;
+                                }
+                                int v1 = block[i];
+                                int to = (int) Math.min(block.length, i + 1L + _window);
+                                for (int j = i + 1; j < to; j++) {
+                                    int v2 = block[j];
+                                    if (firstCommonBlock(blocksOfValues[v1], blocksOfValues[v2]) < b) {
+                                        continue;
+                                    }
+                                    double dist = d.d(_values[v1], _values[v2]);
+                                    if (_radius < 0 || dist <= _radius || kept.get() < MAX_CACHED_DISTANCES) {
+                                        kept.incrementAndGet();
+                                        pairs.add(((long) v1 << 32) | v2, dist);
+                                    } else {
+                                        dropped.set(true);
+                                    }
+                                }
+                            }
+                            if (pairs.size >= PUBLISH_SIZE) {
+                                _published.add(pairs);
+                                pairs = new PairList();
+                            }
+                            _monitor.setProgress((int) (done.addAndGet(getWork(block.length)) * 100 / total));
+                            if (stopped.get()) {
+                                break;
+                            }
+                        }
+                        _published.add(pairs);
+                        return null;
+                    }
+                });
+            }
+            WorkerPool.invokeAll(tasks);
+            
+            double maxRadius = stopped.get() ? Double.NEGATIVE_INFINITY :
+                (dropped.get() ? _radius : Double.POSITIVE_INFINITY);
+            return snapshot(maxRadius);
+        }
+        
+        /**
+         * Distances found so far, covering no radius.
+         */
+        public CandidateDistances snapshot() {
+            return snapshot(Double.NEGATIVE_INFINITY);
+        }
+        
+        protected CandidateDistances snapshot(double maxRadius) {
+            List<PairList> lists = new ArrayList<PairList>(_published);
+            int size = 0;
+            for (PairList list : lists) {
+                size += list.size;
+            }
+            long[] pairs = new long[size];
+            double[] distances = new double[size];
+            int offset = 0;
+            for (PairList list : lists) {
+                System.arraycopy(list.pairs, 0, pairs, offset, list.size);
+                System.arraycopy(list.distances, 0, distances, offset, list.size);
+                offset += list.size;
+            }
+            return new CandidateDistances(_values, pairs, distances, maxRadius);
+        }
+        
+        protected long getWork(int blockSize) {
+            long window = Math.min(blockSize - 1, _window);
+            return blockSize * window;
+        }
+    }
+    
+    /**
+     * Whether clusters can be drawn for the given radius from these distances.
+     * Distances of a computation that was stopped early cover no radius.
+     */
+    public boolean covers(double radius) {
+        return radius < 0 ? _maxRadius == Double.POSITIVE_INFINITY : radius <= _maxRadius;
+    }
+    
+    public int size() {
+        return _pairs.length;
+    }
+    
+    /**
+     * Join values within the radius of each other into clusters, as the
+     * connected components of the graph of neighboring values.
+     * 
+     * @return clusters of more than one value, largest first
+     */
+    public List<Set<Serializable>> getConnectedClusters(double radius) {
+        int[] parents = new int[values.length];
+        for (int v = 0; v < parents.length; v++) {
+            parents[v] = v;
+        }
+        for (int p = 0; p < _pairs.length; p++) {
+            if (isWithin(_distances[p], radius)) {
+                union(parents, (int) (_pairs[p] >>> 32), (int) _pairs[p]);
+            }
+        }
+        
+        Map<Integer, Set<Serializable>> clusters = new HashMap<Integer, Set<Serializable>>();
+        for (int v = 0; v < values.length; v++) {
+            int root = find(parents, v);
+            if (root != v || clusters.containsKey(root)) {
+                Set<Serializable> cluster = clusters.get(root);
+                if (cluster == null) {
+                    cluster = new TreeSet<Serializable>();
+                    cluster.add(values[root]);
+                    clusters.put(root, cluster);
+                }
+                cluster.add(values[v]);
+            }
+        }
+        return sortBySize(clusters.values());
+    }
+    
+    /**
+     * Make a cluster of each value and its neighbors within the radius, as
+     * vicino's clusterers do. Each pair of neighbors is only added to the
+     * cluster of the value that sorts first, and clusters with the same values
+     * are only returned once.
+     * 
+     * @return clusters of more than one value, largest first
+     */
+    public List<Set<Serializable>> getNeighborClusters(double radius) {
+        Map<Integer, Set<Serializable>> clusters = new HashMap<Integer, Set<Serializable>>();
+        for (int p = 0; p < _pairs.length; p++) {
+            if (isWithin(_distances[p], radius)) {
+                int v1 = (int) (_pairs[p] >>> 32);
+                int v2 = (int) _pairs[p];
+                if (values[v1].compareTo(values[v2]) > 0) {
+                    int v = v1;
+                    v1 = v2;
+                    v2 = v;
+                }
+                Set<Serializable> cluster = clusters.get(v1);
+                if (cluster == null) {
+                    cluster = new TreeSet<Serializable>();
+                    cluster.add(values[v1]);
+                    clusters.put(v1, cluster);
+                }
+                cluster.add(values[v2]);
+            }
+        }
+        return sortBySize(new LinkedHashSet<Set<Serializable>>(clusters.values()));
+    }
+    
+    static protected boolean isWithin(double distance, double radius) {
+        return radius < 0 || distance <= radius;
+    }
+    
+    static protected List<Set<Serializable>> sortBySize(Collection<Set<Serializable>> clusters) {
+        List<Set<Serializable>> result = new ArrayList<Set<Serializable>>(clusters);
+        Collections.sort(result, new Comparator<Set<Serializable>>() {
+            @Override
+            public int compare(Set<Serializable> o1, Set<Serializable> o2) {
+                return o2.size() - o1.size();
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * List the blocks each value is in, in increasing order.
+     */
+    static protected int[][] getBlocksOfValues(int valueCount, List<int[]> blocks) {
+        int[] counts = new int[valueCount];
+        for (int[] block : blocks) {
+            for (int v : block) {
+                counts[v]++;
+            }
+        }
+        int[][] blocksOfValues = new int[valueCount][];
+        for (int v = 0; v < valueCount; v++) {
+            blocksOfValues[v] = new int[counts[v]];
+        }
+        Arrays.fill(counts, 0);
+        for (int b = 0; b < blocks.size(); b++) {
+            for (int v : blocks.get(b)) {
+                blocksOfValues[v][counts[v]++] = b;
+            }
+        }
+        return blocksOfValues;
+    }
+    
+    static protected int firstCommonBlock(int[] blocks1, int[] blocks2) {
+        int i = 0;
+        int j = 0;
+        while (i < blocks1.length && j < blocks2.length) {
+            if (blocks1[i] < blocks2[j]) {
+                i++;
+            } else if (blocks1[i] > blocks2[j]) {
+                j++;
+            } else {
+                return blocks1[i];
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+    
+    /**
+     * Distances may keep state while comparing strings, so each task gets an
+     * instance of its own. If the distance can't be instantiated again, there
+     * is a single task.
+     */
+    static protected List<Distance> createDistances(Distance distance, int count) {
+        List<Distance> distances = new ArrayList<Distance>(count);
+        distances.add(distance);
+        try {
+            for (int i = 1; i < count; i++) {
+                distances.add(distance.getClass().newInstance());
+            }
+        } catch (Exception e) {
+            return distances.subList(0, 1);
+        }
+        return distances;
+    }
+    
+    static protected int find(int[] parents, int v) {
+        while (parents[v] != v) {
+            parents[v] = parents[parents[v]];
+            v = parents[v];
+        }
+        return v;
+    }
+    
+    static protected void union(int[] parents, int v1, int v2) {
+        int r1 = find(parents, v1);
+        int r2 = find(parents, v2);
+        if (r1 != r2) {
+            parents[Math.max(r1, r2)] = Math.min(r1, r2);
+        }
+    }
+    
+    static protected class PairList {
+        long[] pairs = new long[16];
+        double[] distances = new double[16];
+        int size;
+        
+        void add(long pair, double distance) {
+            if (size == pairs.length) {
+                pairs = Arrays.copyOf(pairs, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            pairs[size] = pair;
+            distances[size] = distance;
+            size++;
+        }
+    }
+}
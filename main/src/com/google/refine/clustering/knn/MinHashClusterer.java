@@ -0,0 +1,212 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.clustering.knn;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import com.google.refine.clustering.ClusteringMonitor;
+import com.google.refine.util.WorkerPool;
+
+import edu.mit.simile.vicino.distances.Distance;
+
+/**
+ * Nearest neighbor clustering of distinct values, using MinHash locality sensitive
+ * hashing to find the pairs of values worth comparing.
+ * <p>
+ * Each value is turned into the set of its character n-grams, and summarized by
+ * the minimum of several hash functions over that set. Two values get the same
+ * minimum for a hash function with a probability equal to the Jaccard similarity
+ * of their n-gram sets. The minimums are split into bands of a few rows, and
+ * values whose minimums agree on a whole band become candidates. The distance is
+ * then only computed for candidate pairs, on all processors, and values within
+ * the radius of each other are joined into the same cluster.
+ * <p>
+ * Unlike the n-gram blocking of {@link NGramBlockingClusterer}, the work doesn't grow
+ * with the square of the number of values sharing some n-gram, but pairs of
+ * values with few n-grams in common may be missed.
+ */
+public class MinHashClusterer {
+    // Values of a run are only compared to this many values following them in the
+    // run, so that values sharing a frequent band don't make the work quadratic
+    static final protected int MAX_RUN_WINDOW = 1000;
+    
+    final protected Distance _distance;
+    final protected int _ngramSize;
+    final protected int _bands;
+    final protected int _rows;
+    
+    // Coefficients of the hash functions, fixed so that clusters are the same from one run to the next
+    final protected long[] _multipliers;
+    final protected long[] _increments;
+    
+    public MinHashClusterer(Distance distance, int ngramSize, int bands, int rows) {
+        _distance = distance;
+        _ngramSize = Math.max(1, ngramSize);
+        _bands = Math.max(1, bands);
+        _rows = Math.max(1, rows);
+        
+        Random random = new Random(_bands * 31L + _rows);
+        _multipliers = new long[_bands * _rows];
+        _increments = new long[_bands * _rows];
+        for (int i = 0; i < _multipliers.length; i++) {
+            _multipliers[i] = random.nextLong() | 1;
+            _increments[i] = random.nextLong();
+        }
+    }
+    
+    /**
+     * Cluster distinct values.
+     * 
+     * @param values distinct values
+     * @param radius maximum distance between neighboring values
+     * @return clusters of more than one value, largest first
+     */
+    public List<Set<Serializable>> getClusters(String[] values, double radius) {
+        return computeDistances(values, radius).getConnectedClusters(radius);
+    }
+    
+    /**
+     * Compute the distances between candidate pairs of values, from which
+     * clusters can be drawn for the given radius, and possibly larger ones.
+     */
+    public CandidateDistances computeDistances(String[] values, double radius) {
+        return createComputation(values, radius, new ClusteringMonitor(0)).run();
+    }
+    
+    /**
+     * Prepare the computation of distances, which the monitor may stop early.
+     */
+    public CandidateDistances.Computation createComputation(String[] values, double radius, ClusteringMonitor monitor) {
+        return new CandidateDistances.Computation(_distance, values, computeBlocks(values), MAX_RUN_WINDOW, radius, monitor);
+    }
+    
+    /**
+     * Sort values by band hash within each band: values sharing a band hash
+     * end up next to each other, in runs of candidates. Runs of more than one
+     * value are returned as blocks, band after band.
+     */
+    protected List<int[]> computeBlocks(String[] values) {
+        int[] bandHashes = computeBandHashes(values);
+        List<int[]> blocks = new ArrayList<int[]>();
+        long[] sorted = new long[values.length];
+        for (int b = 0; b < _bands; b++) {
+            for (int v = 0; v < values.length; v++) {
+                sorted[v] = ((long) bandHashes[v * _bands + b] << 32) | v;
+            }
+            Arrays.sort(sorted);
+            
+            int from = 0;
+            for (int i = 1; i <= sorted.length; i++) {
+                if (i == sorted.length || (sorted[i] >>> 32) != (sorted[from] >>> 32)) {
+                    if (i - from > 1) {
+                        int[] block = new int[i - from];
+                        for (int j = from; j < i; j++) {
+                            block[j - from] = (int) sorted[j];
+                        }
+                        blocks.add(block);
+                    }
+                    from = i;
+                }
+            }
+        }
+        return blocks;
+    }
+    
+    /**
+     * Compute the MinHash signature of each value, and reduce each band of it to
+     * a hash, as values * bands entries.
+     */
+    protected int[] computeBandHashes(final String[] values) {
+        final int[] bandHashes = new int[values.length * _bands];
+        int partitions = Math.max(1, Math.min(WorkerPool.getParallelism(), values.length / 1000));
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            final int from = (int) ((long) values.length * p / partitions);
+            final int to = (int) ((long) values.length * (p + 1) / partitions);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    long[] minimums = new long[_multipliers.length];
+                    for (int v = from; v < to; v++) {
+                        computeMinimums(values[v], minimums);
+                        for (int b = 0; b < _bands; b++) {
+                            long h = 17;
+                            for (int r = 0; r < _rows; r++) {
+                                h = h * 31 + minimums[b * _rows + r];
+                            }
+                            bandHashes[v * _bands + b] = (int) (h ^ (h >>> 32));
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        WorkerPool.invokeAll(tasks);
+        return bandHashes;
+    }
+    
+    protected void computeMinimums(String value, long[] minimums) {
+        Arrays.fill(minimums, Long.MAX_VALUE);
+        String s = value.toLowerCase();
+        int count = Math.max(1, s.length() - _ngramSize + 1);
+        for (int i = 0; i < count; i++) {
+            // Values shorter than an n-gram make up a single n-gram
+            int end = Math.min(s.length(), i + _ngramSize);
+            long x = 0;
+            for (int j = i; j < end; j++) {
+                x = x * 31 + s.charAt(j);
+            }
+            for (int k = 0; k < minimums.length; k++) {
+                long h = mix(x * _multipliers[k] + _increments[k]);
+                if (h < minimums[k]) {
+                    minimums[k] = h;
+                }
+            }
+        }
+    }
+    
+    static protected long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.clustering.knn;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.refine.clustering.ClusteringMonitor;
+import com.wcohen.ss.api.Token;
+
+import edu.mit.simile.vicino.NGramTokenizer;
+import edu.mit.simile.vicino.distances.Distance;
+
+/**
+ * Nearest neighbor clustering of distinct values, comparing the values that share
+ * a character n-gram, as vicino's NGramClusterer does. Unlike NGramClusterer, it
+ * exposes the distances it computes, so that they can be cached, and compares
+ * each pair of values once however many n-grams they share.
+ */
+public class NGramBlockingClusterer {
+    final protected Distance _distance;
+    final protected int _ngramSize;
+    
+    public NGramBlockingClusterer(Distance distance, int ngramSize) {
+        _distance = distance;
+        _ngramSize = ngramSize;
+    }
+    
+    /**
+     * Cluster distinct values.
+     * 
+     * @param values distinct values
+     * @param radius maximum distance between neighboring values
+     * @return clusters of more than one value, largest first
+     */
+    public List<Set<Serializable>> getClusters(String[] values, double radius) {
+        return computeDistances(values, radius).getNeighborClusters(radius);
+    }
+    
+    /**
+     * Compute the distances between values sharing an n-gram, from which
+     * clusters can be drawn for the given radius, and possibly larger ones.
+     */
+    public CandidateDistances computeDistances(String[] values, double radius) {
+        return createComputation(values, radius, new ClusteringMonitor(0)).run();
+    }
+    
+    /**
+     * Prepare the computation of distances, which the monitor may stop early.
+     */
+    public CandidateDistances.Computation createComputation(String[] values, double radius, ClusteringMonitor monitor) {
+        return new CandidateDistances.Computation(_distance, values, computeBlocks(values), Integer.MAX_VALUE, radius, monitor);
+    }
+    
+    /**
+     * Group values by the n-grams of vicino's tokenizer, keeping the blocks of
+     * more than one value.
+     */
+    protected List<int[]> computeBlocks(String[] values) {
+        // The tokenizer keeps the tokens it has seen, so it can't be shared
+        NGramTokenizer tokenizer = new NGramTokenizer(_ngramSize);
+        Map<String, Block> blocks = new LinkedHashMap<String, Block>();
+        for (int v = 0; v < values.length; v++) {
+            for (Token token : tokenizer.tokenize(values[v])) {
+                Block block = blocks.get(token.getValue());
+                if (block == null) {
+                    block = new Block();
+                    blocks.put(token.getValue(), block);
+                }
+                block.add(v);
+            }
+        }
+        
+        List<int[]> result = new ArrayList<int[]>();
+        for (Block block : blocks.values()) {
+            if (block.size > 1) {
+                result.add(Arrays.copyOf(block.values, block.size));
+            }
+        }
+        return result;
+    }
+    
+    static protected class Block {
+        int[] values = new int[2];
+        int size;
+        
+        void add(int v) {
+            // A value with a repeated n-gram is only added once
+            if (size > 0 && values[size - 1] == v) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+    }
+}
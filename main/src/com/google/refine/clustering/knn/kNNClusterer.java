@@ -35,10 +35,11 @@ package com.google.refine.clustering.knn;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -52,14 +53,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.refine.browsing.Engine;
-import com.google.refine.browsing.FilteredRows;
 import com.google.refine.browsing.RowVisitor;
 import com.google.refine.clustering.Clusterer;
+import com.google.refine.clustering.ClusteringMonitor;
+import com.google.refine.clustering.ValueDictionary;
 import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
 import com.google.refine.model.Project;
 import com.google.refine.model.Row;
 
-import edu.mit.simile.vicino.clustering.NGramClusterer;
 import edu.mit.simile.vicino.clustering.VPTreeClusterer;
 import edu.mit.simile.vicino.distances.BZip2Distance;
 import edu.mit.simile.vicino.distances.Distance;
@@ -80,6 +82,11 @@ public class kNNClusterer extends Clusterer {
     List<Set<Serializable>> _clusters;
 
     Map<Serializable, Integer> _counts = new HashMap<Serializable, Integer>();
+    
+    // Computation in progress, from which partial clusters are drawn on other threads
+    volatile protected CandidateDistances.Computation _computation;
+    protected boolean _minHash;
+    protected double _radius;
 
     final static Logger logger = LoggerFactory.getLogger("kNN_clusterer");
     
@@ -140,72 +147,144 @@ public class kNNClusterer extends Clusterer {
         }
     }
 
-    class BlockingClusteringRowVisitor implements RowVisitor {
+    @Override
+    public void initializeFromJSON(Project project, JSONObject o) throws Exception {
+        super.initializeFromJSON(project, o);
+        _distance = _distances.get(o.getString("function").toLowerCase());
+    }
 
-        Distance _distance;
-        JSONObject _config;
-        double _radius = 1.0d;
-        int _blockingNgramSize = 6;
-        HashSet<String> _data;
-        NGramClusterer _clusterer;
-        
-        public BlockingClusteringRowVisitor(Distance d, JSONObject o) {
-            _distance = d;
-            _config = o;
-            _data = new HashSet<String>();
-            try {
-                JSONObject params = o.getJSONObject("params");
-                _radius = params.getDouble("radius");
-                logger.debug("Use radius: {}", _radius);
-                _blockingNgramSize = params.getInt("blocking-ngram-size");
-                logger.debug("Use blocking ngram size: {}",_blockingNgramSize);
-            } catch (JSONException e) {
-                logger.debug("No parameters found, using defaults");
-            }
-            _clusterer = new NGramClusterer(_distance, _blockingNgramSize);
+    /**
+     * Cluster the column's distinct values, using MinHash blocking when the
+     * "blocking" parameter is "minhash", and n-gram blocking otherwise. The
+     * distances computed between candidate pairs are kept among the column's
+     * precomputes, so that clustering the same values again, with the same or
+     * a smaller radius, doesn't compare them again.
+     */
+    @Override
+    public void computeClusters(Engine engine) {
+        computeClusters(engine, new ClusteringMonitor(0));
+    }
+    
+    /**
+     * Cluster as {@link #computeClusters(Engine)} does, stopping early when the
+     * monitor asks to. Distances of a computation stopped early aren't cached.
+     */
+    @Override
+    public void computeClusters(Engine engine, ClusteringMonitor monitor) {
+        JSONObject params = _config.optJSONObject("params");
+        if (params == null) {
+            params = new JSONObject();
         }
+        boolean minHash = "minhash".equals(params.optString("blocking"));
+        double radius = params.optDouble("radius", 1.0d);
         
-        @Override
-        public void start(Project project) {
-            // nothing to do
+        ValueDictionary dictionary = ValueDictionary.getDictionary(_project, _colindex, engine);
+        for (int i = 0; i < dictionary.size(); i++) {
+            _counts.put(dictionary.values[i], dictionary.counts[i]);
         }
-
-        @Override
-        public void end(Project project) {
-            // nothing to do
+        
+        String function = _config.optString("function").toLowerCase();
+        String key;
+        MinHashClusterer minHashClusterer = null;
+        NGramBlockingClusterer ngramClusterer = null;
+        if (minHash) {
+            int ngramSize = params.optInt("minhash-ngram-size", 3);
+            int bands = params.optInt("minhash-bands", 20);
+            int rows = params.optInt("minhash-rows", 4);
+            logger.debug("Use MinHash blocking with {} bands of {} rows", bands, rows);
+            key = function + "\nminhash\n" + ngramSize + "," + bands + "," + rows;
+            minHashClusterer = new MinHashClusterer(_distance, ngramSize, bands, rows);
+        } else {
+            int ngramSize = params.optInt("blocking-ngram-size", 6);
+            logger.debug("Use blocking ngram size: {}", ngramSize);
+            key = function + "\nngram\n" + ngramSize;
+            ngramClusterer = new NGramBlockingClusterer(_distance, ngramSize);
         }
         
-        @Override
-        public boolean visit(Project project, int rowIndex, Row row) {
-            Cell cell = row.getCell(_colindex);
-            if (cell != null && cell.value != null) {
-                Object v = cell.value;
-                String s = (v instanceof String) ? ((String) v) : v.toString().intern();
-                _clusterer.populate(s);
-                count(s);
+        DistanceCache cache = getDistanceCache();
+        CandidateDistances distances = cache == null ? null : cache.get(key, dictionary.values, radius);
+        if (distances == null) {
+            _minHash = minHash;
+            _radius = radius;
+            _computation = minHash ?
+                    minHashClusterer.createComputation(dictionary.values, radius, monitor) :
+                    ngramClusterer.createComputation(dictionary.values, radius, monitor);
+            distances = _computation.run();
+            if (cache != null && distances.covers(radius)) {
+                cache.put(key, distances);
             }
-            return false;
         }
+        monitor.setProgress(100);
         
-        public List<Set<Serializable>> getClusters() {
-            return _clusterer.getClusters(_radius);
-        }
+        _clusters = getClusters(distances, minHash, radius);
+        _computation = null;
     }
-        
-    @Override
-    public void initializeFromJSON(Project project, JSONObject o) throws Exception {
-        super.initializeFromJSON(project, o);
-        _distance = _distances.get(o.getString("function").toLowerCase());
+    
+    protected List<Set<Serializable>> getClusters(CandidateDistances distances, boolean minHash, double radius) {
+        return minHash ? distances.getConnectedClusters(radius) : distances.getNeighborClusters(radius);
     }
-
+    
+    /**
+     * Write the clusters of the distances found so far, largest first.
+     */
     @Override
-    public void computeClusters(Engine engine) {
-        //VPTreeClusteringRowVisitor visitor = new VPTreeClusteringRowVisitor(_distance,_config);
-        BlockingClusteringRowVisitor visitor = new BlockingClusteringRowVisitor(_distance,_config);
-        FilteredRows filteredRows = engine.getAllFilteredRows();
-        filteredRows.accept(_project, visitor);
-     
-        _clusters = visitor.getClusters();
+    public void writePartial(JSONWriter writer, Properties options) throws JSONException {
+        CandidateDistances.Computation computation = _computation;
+        if (computation != null) {
+            writeClusters(writer, getClusters(computation.snapshot(), _minHash, _radius));
+        } else {
+            super.writePartial(writer, options);
+        }
+    }
+    
+    protected DistanceCache getDistanceCache() {
+        Column column = _project.columnModel.getColumnByCellIndex(_colindex);
+        if (column == null) {
+            return null;
+        }
+        synchronized (column) {
+            DistanceCache cache = (DistanceCache) column.getPrecompute(DistanceCache.PRECOMPUTE_KEY);
+            if (cache == null) {
+                cache = new DistanceCache();
+                column.setPrecompute(DistanceCache.PRECOMPUTE_KEY, cache);
+            }
+            return cache;
+        }
+    }
+    
+    /**
+     * Distances between candidate pairs of a column's values, per distance and
+     * blocking method. They are dropped by changes to the column, but kept
+     * across changes to other columns as long as the column's distinct values,
+     * which may depend on facets, stay the same.
+     */
+    static protected class DistanceCache {
+        static final protected String PRECOMPUTE_KEY = "clustering-distances";
+        
+        // Maximum number of distance and blocking methods whose distances are kept per column
+        static final protected int MAX_METHODS = 2;
+        
+        final protected Map<String, CandidateDistances> _distances = new LinkedHashMap<String, CandidateDistances>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CandidateDistances> eldest) {
+                return size() > MAX_METHODS;
+            }
+        };
+        
+        synchronized CandidateDistances get(String key, String[] values, double radius) {
+            CandidateDistances distances = _distances.get(key);
+            if (distances != null && distances.covers(radius) &&
+                    (distances.values == values || Arrays.equals(distances.values, values))) {
+                return distances;
+            }
+            return null;
+        }
+        
+        synchronized void put(String key, CandidateDistances distances) {
+            _distances.put(key, distances);
+        }
     }
 
     public static class ValuesComparator implements Comparator<Entry<Serializable,Integer>>, Serializable {
@@ -218,8 +297,12 @@ public class kNNClusterer extends Clusterer {
     
     @Override
     public void write(JSONWriter writer, Properties options) throws JSONException {
+        writeClusters(writer, _clusters);
+    }
+    
+    protected void writeClusters(JSONWriter writer, List<Set<Serializable>> clusters) throws JSONException {
         writer.array();        
-        for (Set<Serializable> m : _clusters) {
+        for (Set<Serializable> m : clusters) {
             if (m.size() > 1) {
                 Map<Serializable,Integer> internal_counts = new HashMap<Serializable,Integer>();
                 for (Serializable s : m) {
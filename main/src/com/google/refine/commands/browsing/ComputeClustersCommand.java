@@ -34,26 +34,46 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.google.refine.commands.browsing;
 
 import java.io.IOException;
+import java.util.Properties;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.refine.Jsonizable;
 import com.google.refine.browsing.Engine;
 import com.google.refine.clustering.Clusterer;
+import com.google.refine.clustering.ClusteringMonitor;
+import com.google.refine.clustering.ClusteringProcess;
 import com.google.refine.clustering.binning.BinningClusterer;
 import com.google.refine.clustering.knn.kNNClusterer;
 import com.google.refine.commands.Command;
 import com.google.refine.model.Project;
 
+/**
+ * Computes clusters of a column's values. With "async" set to true, clustering
+ * runs as a {@link ClusteringProcess} in the project's process queue, and the
+ * response gives the process' id. Posting that id as "process" then returns the
+ * clusters found so far, and adding "cancel" set to true stops the process.
+ * <p>
+ * Asynchronous clustering stops, keeping the clusters found so far and reporting
+ * "outOfTime", after the number of milliseconds given by the "timeBudget"
+ * parameter, which defaults to the refine.clustering.time_budget system property,
+ * or to 5 minutes. Synchronous clustering has no time budget, since its response
+ * could not tell that the clusters are incomplete.
+ */
 public class ComputeClustersCommand extends Command {
 
     final static Logger logger = LoggerFactory.getLogger("compute-clusters_command");
 
+    static final protected int DEFAULT_TIME_BUDGET = Integer.getInteger("refine.clustering.time_budget", 300000);
+
     @Override
     public void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
@@ -61,6 +81,26 @@ public class ComputeClustersCommand extends Command {
         try {
             long start = System.currentTimeMillis();
             Project project = getProject(request);
+            
+            String processID = request.getParameter("process");
+            if (processID != null) {
+                final ClusteringProcess process = ClusteringProcess.getProcess(project, Long.parseLong(processID));
+                if (process == null) {
+                    throw new Exception("No clustering process with id " + processID);
+                }
+                if ("true".equals(request.getParameter("cancel"))) {
+                    // The process leaves the queue once its thread has stopped
+                    process.cancel();
+                }
+                respondJSON(response, new Jsonizable() {
+                    @Override
+                    public void write(JSONWriter writer, Properties options) throws JSONException {
+                        process.writeClusters(writer, options);
+                    }
+                });
+                return;
+            }
+            
             Engine engine = getEngine(request, project);
             JSONObject clusterer_conf = getJsonParameter(request,"clusterer");
 
@@ -75,7 +115,16 @@ public class ComputeClustersCommand extends Command {
                 
             clusterer.initializeFromJSON(project, clusterer_conf);
             
-            clusterer.computeClusters(engine);
+            if ("true".equals(request.getParameter("async"))) {
+                int timeBudget = getIntegerParameter(request, "timeBudget", DEFAULT_TIME_BUDGET);
+                ClusteringProcess process = new ClusteringProcess(project, engine, clusterer, timeBudget,
+                        "Cluster values of column " + clusterer_conf.getString("column"));
+                project.processManager.queueProcess(process);
+                respond(response, "{ \"code\" : \"pending\", \"process\" : " + process.getID() + " }");
+                return;
+            }
+            
+            clusterer.computeClusters(engine, new ClusteringMonitor(0));
             
             respondJSON(response, clusterer);
             logger.info("computed clusters [{},{}] in {}ms", new Object[] { type, clusterer_conf.getString("function"), Long.toString(System.currentTimeMillis() - start) });
@@ -52,6 +52,7 @@ import org.json.JSONWriter;
 import com.google.refine.commands.Command;
 import com.google.refine.expr.EvalError;
 import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.ExpressionResultCache;
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.expr.HasFields;
 import com.google.refine.expr.MetaParser;
@@ -102,7 +103,8 @@ public class PreviewExpressionCommand extends Command {
             writer.object();
             
             try {
-                Evaluable eval = MetaParser.parse(expression);
+                Evaluable eval = ExpressionResultCache.wrap(
+                    project, cellIndex, expression, MetaParser.parse(expression));
                 
                 writer.key("code"); writer.value("ok");
                 writer.key("results"); writer.array();
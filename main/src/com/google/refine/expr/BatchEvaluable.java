@@ -0,0 +1,58 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.expr;
+
+import java.util.Properties;
+
+/**
+ * An expression that can also be evaluated on a whole batch of cells of a column
+ * at once, paying for the dispatch through the expression tree once per batch
+ * rather than once per row. Callers should go through
+ * {@link EvaluationBatch#evaluate(Evaluable, Properties)}, which falls back to
+ * evaluating row by row when an expression can't be evaluated in batches.
+ */
+public interface BatchEvaluable extends Evaluable {
+    /**
+     * Evaluate this expression on every row of the batch, as if the bindings had
+     * been bound to each row and cell in turn.
+     * 
+     * @param batch the rows and cells to evaluate the expression on
+     * @param results receives the results, at the same positions as the rows
+     * @param bindings bindings for the project, not bound to any row
+     * @return false if this expression can't be evaluated on the batch, in which
+     *         case the results are undefined
+     */
+    public boolean evaluateBatch(EvaluationBatch batch, Object[] results, Properties bindings);
+}
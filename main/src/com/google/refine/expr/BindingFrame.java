@@ -0,0 +1,315 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.expr;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import com.google.refine.model.Cell;
+import com.google.refine.model.Project;
+import com.google.refine.model.Record;
+import com.google.refine.model.Row;
+
+/**
+ * Bindings for evaluating expressions, which keeps the standard variables in fixed
+ * slots rather than in the underlying hash table. Variable expressions resolve
+ * their slots when they are parsed, and {@link ExpressionUtils#bind} points the
+ * frame at a row without allocating anything: the row, cell and cells wrappers are
+ * only created if an expression asks for them.
+ * <p>
+ * The frame is still a Properties, and get(), put(), remove() and containsKey()
+ * work for all variables, so binders and extensions can use it as before. Other
+ * variables, such as those initialized by binders, are kept in the hash table.
+ * Enumerating the frame only lists those other variables. Like the Properties
+ * it replaces, a frame is meant to be used by one thread at a time.
+ */
+public class BindingFrame extends Properties {
+    private static final long serialVersionUID = 1L;
+    
+    static final public int VALUE = 0;
+    static final public int CELL = 1;
+    static final public int CELLS = 2;
+    static final public int ROW = 3;
+    static final public int ROW_INDEX = 4;
+    static final public int COLUMN_NAME = 5;
+    static final public int PROJECT = 6;
+    static final public int TRUE = 7;
+    static final public int FALSE = 8;
+    static final public int PI = 9;
+    
+    static final protected String[] SLOT_NAMES = {
+        "value", "cell", "cells", "row", "rowIndex", "columnName", "project", "true", "false", "PI"
+    };
+    
+    // Marks a slot whose value is created from the bound row on first access
+    static final protected Object LAZY = new Object();
+    
+    /**
+     * @return the slot of the variable with the given name, or -1 if it has none
+     */
+    static public int getSlot(String name) {
+        for (int i = 0; i < SLOT_NAMES.length; i++) {
+            if (SLOT_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    final protected Object[] _slots = new Object[SLOT_NAMES.length];
+    
+    protected Row _row;
+    protected int _rowIndex;
+    protected Cell _cell;
+    
+    /*
+     * Values of shared subexpressions, valid until the frame changes. Any change to
+     * a variable starts a new generation, so a memoized value is never used once
+     * the variables it might have been computed from have changed.
+     */
+    static final public Object NOT_MEMOIZED = new Object();
+    
+    static protected class Memo {
+        int generation;
+        Object value;
+    }
+    
+    protected int _generation;
+    protected Map<Object, Memo> _memos;
+    
+    /**
+     * The record of the rows the frame gets bound to, with the cells of its rows
+     * grouped by column as expressions ask for them through "row.record.cells".
+     * It is kept while the frame is bound to other rows of the same record.
+     */
+    static public class RecordContext {
+        final public Record record;
+        final protected Map<String, HasFieldsListImpl> _cells = new HashMap<String, HasFieldsListImpl>();
+        
+        protected RecordContext(Record record) {
+            this.record = record;
+        }
+        
+        /**
+         * @return the non-blank cells of the record in the given column, or null
+         * if they haven't been grouped yet
+         */
+        public HasFieldsListImpl getCells(String columnName) {
+            HasFieldsListImpl cells = _cells.get(columnName);
+            if (cells == null) {
+                return null;
+            }
+            // Lists can be changed by expressions, so each gets its own copy
+            HasFieldsListImpl copy = new HasFieldsListImpl();
+            copy.addAll(cells);
+            return copy;
+        }
+        
+        public void setCells(String columnName, HasFieldsListImpl cells) {
+            HasFieldsListImpl copy = new HasFieldsListImpl();
+            copy.addAll(cells);
+            _cells.put(columnName, copy);
+        }
+    }
+    
+    protected RecordContext _recordContext;
+    
+    public BindingFrame(Project project) {
+        _slots[PROJECT] = project;
+        _slots[TRUE] = true;
+        _slots[FALSE] = false;
+        _slots[PI] = Math.PI;
+    }
+    
+    /**
+     * Point the frame at a row and one of its cells.
+     */
+    public void bind(Row row, int rowIndex, String columnName, Cell cell) {
+        _generation++;
+        _row = row;
+        _rowIndex = rowIndex;
+        _cell = cell;
+        
+        _slots[ROW_INDEX] = LAZY;
+        _slots[ROW] = LAZY;
+        _slots[CELLS] = LAZY;
+        if (columnName != null) {
+            _slots[COLUMN_NAME] = columnName;
+        }
+        _slots[CELL] = cell == null ? null : LAZY;
+        _slots[VALUE] = cell == null ? null : cell.value;
+    }
+    
+    public Object getSlot(int slot) {
+        Object v = _slots[slot];
+        if (v == LAZY) {
+            v = createSlotValue(slot);
+            _slots[slot] = v;
+        }
+        return v;
+    }
+    
+    protected Object createSlotValue(int slot) {
+        Project project = (Project) _slots[PROJECT];
+        switch (slot) {
+        case ROW_INDEX:
+            return _rowIndex;
+        case ROW:
+            return new WrappedRow(project, _rowIndex, _row);
+        case CELLS:
+            return new CellTuple(project, _row);
+        case CELL:
+            return new WrappedCell(project, (String) _slots[COLUMN_NAME], _cell);
+        default:
+            return null;
+        }
+    }
+    
+    /**
+     * Gets the row the "row" variable stands for, without wrapping it.
+     */
+    public Row getBoundRow() {
+        Object v = _slots[ROW];
+        return v == LAZY ? _row : (v instanceof WrappedRow ? ((WrappedRow) v).row : null);
+    }
+    
+    /**
+     * Gets the index of the row the "row" variable stands for, or -1.
+     */
+    public int getBoundRowIndex() {
+        Object v = _slots[ROW];
+        return v == LAZY ? _rowIndex : (v instanceof WrappedRow ? ((WrappedRow) v).rowIndex : -1);
+    }
+    
+    /**
+     * Gets the cell the "cell" variable stands for, without wrapping it.
+     */
+    public Cell getBoundCell() {
+        Object v = _slots[CELL];
+        return v == LAZY ? _cell : (v instanceof WrappedCell ? ((WrappedCell) v).cell : null);
+    }
+    
+    /**
+     * Gets the context of the record the given row belongs to, reusing the last
+     * one if the row belongs to it and the project's records haven't changed since.
+     * 
+     * @return the record's context, or null if the row belongs to no record
+     */
+    public RecordContext getRecordContext(Project project, int rowIndex) {
+        RecordContext context = _recordContext;
+        if (context != null &&
+                rowIndex >= context.record.fromRowIndex && rowIndex < context.record.toRowIndex &&
+                project.recordModel.getRecord(context.record.recordIndex) == context.record) {
+            return context;
+        }
+        
+        Record record = project.recordModel.getRecordOfRow(rowIndex);
+        _recordContext = record == null ? null : new RecordContext(record);
+        return _recordContext;
+    }
+    
+    /**
+     * Gets the value memoized for the given key since the variables last changed,
+     * or NOT_MEMOIZED.
+     */
+    public Object getMemoized(Object key) {
+        Memo memo = _memos != null ? _memos.get(key) : null;
+        return memo != null && memo.generation == _generation ? memo.value : NOT_MEMOIZED;
+    }
+    
+    public void memoize(Object key, Object value) {
+        if (_memos == null) {
+            _memos = new IdentityHashMap<Object, Memo>();
+        }
+        Memo memo = _memos.get(key);
+        if (memo == null) {
+            memo = new Memo();
+            _memos.put(key, memo);
+        }
+        memo.generation = _generation;
+        memo.value = value;
+    }
+    
+    @Override
+    public Object get(Object key) {
+        int slot = key instanceof String ? getSlot((String) key) : -1;
+        return slot >= 0 ? getSlot(slot) : super.get(key);
+    }
+    
+    @Override
+    public Object put(Object key, Object value) {
+        _generation++;
+        int slot = key instanceof String ? getSlot((String) key) : -1;
+        if (slot >= 0) {
+            if (value == null) {
+                throw new NullPointerException();
+            }
+            Object old = getSlot(slot);
+            _slots[slot] = value;
+            return old;
+        }
+        return super.put(key, value);
+    }
+    
+    @Override
+    public Object remove(Object key) {
+        _generation++;
+        int slot = key instanceof String ? getSlot((String) key) : -1;
+        if (slot >= 0) {
+            Object old = getSlot(slot);
+            _slots[slot] = null;
+            return old;
+        }
+        return super.remove(key);
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        int slot = key instanceof String ? getSlot((String) key) : -1;
+        return slot >= 0 ? _slots[slot] != null : super.containsKey(key);
+    }
+    
+    @Override
+    public String getProperty(String key) {
+        int slot = getSlot(key);
+        if (slot >= 0) {
+            Object v = getSlot(slot);
+            return v instanceof String ? (String) v : null;
+        }
+        return super.getProperty(key);
+    }
+}
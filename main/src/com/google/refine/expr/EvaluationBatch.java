@@ -0,0 +1,129 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.expr;
+
+import java.util.Properties;
+
+import com.google.refine.model.Cell;
+import com.google.refine.model.Row;
+
+/**
+ * A batch of rows on which to evaluate an expression, taking its "value" and
+ * "cell" variables from one column. Rows are added until the batch is full,
+ * then the expression is evaluated on all of them, and the batch is cleared
+ * for the next rows.
+ */
+public class EvaluationBatch {
+    static final public int DEFAULT_CAPACITY = 1024;
+    
+    final public String     columnName;
+    final public int        cellIndex;
+    
+    final public int[]      rowIndices;
+    final public Row[]      rows;
+    final public Cell[]     cells;
+    final public Object[]   values;
+    
+    /*
+     * Results of the last evaluation
+     */
+    final public Object[]   results;
+    final public boolean[]  errors;
+    
+    protected int _size;
+    
+    public EvaluationBatch(String columnName, int cellIndex) {
+        this(columnName, cellIndex, DEFAULT_CAPACITY);
+    }
+    
+    public EvaluationBatch(String columnName, int cellIndex, int capacity) {
+        this.columnName = columnName;
+        this.cellIndex = cellIndex;
+        
+        rowIndices = new int[capacity];
+        rows = new Row[capacity];
+        cells = new Cell[capacity];
+        values = new Object[capacity];
+        results = new Object[capacity];
+        errors = new boolean[capacity];
+    }
+    
+    public int size() {
+        return _size;
+    }
+    
+    public boolean isFull() {
+        return _size == rows.length;
+    }
+    
+    public void add(int rowIndex, Row row) {
+        Cell cell = row.getCell(cellIndex);
+        rowIndices[_size] = rowIndex;
+        rows[_size] = row;
+        cells[_size] = cell;
+        values[_size] = cell == null ? null : cell.value;
+        _size++;
+    }
+    
+    public void clear() {
+        for (int i = 0; i < _size; i++) {
+            rows[i] = null;
+            cells[i] = null;
+            values[i] = null;
+            results[i] = null;
+        }
+        _size = 0;
+    }
+    
+    /**
+     * Evaluate the expression on all the rows of the batch, into the results and
+     * error flags. Expressions that can't be evaluated as a batch, or any expression
+     * while binders are registered (since they may bind anything to each row), are
+     * evaluated row by row.
+     */
+    public void evaluate(Evaluable eval, Properties bindings) {
+        if (!ExpressionUtils.s_binders.isEmpty() || !(eval instanceof BatchEvaluable) ||
+                !((BatchEvaluable) eval).evaluateBatch(this, results, bindings)) {
+            
+            for (int i = 0; i < _size; i++) {
+                ExpressionUtils.bind(bindings, rows[i], rowIndices[i], columnName, cells[i]);
+                results[i] = eval.evaluate(bindings);
+            }
+        }
+        for (int i = 0; i < _size; i++) {
+            errors[i] = ExpressionUtils.isError(results[i]);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.expr;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.refine.grel.ast.ExpressionDependencies;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+
+/**
+ * Caches the results of expressions evaluated on the cells of a column, row by row,
+ * so that facets refreshed over an unchanged column don't evaluate their expressions
+ * again. The cache is kept among the column's precomputes and so is dropped by
+ * changes to the column. Only expressions that depend on nothing but the cell they
+ * are evaluated on are cached, and each result is kept together with the cell it
+ * was computed from, so that it is not reused once the row holds another cell.
+ */
+public class ExpressionResultCache {
+    static final protected String PRECOMPUTE_KEY = "expression-results";
+    
+    // Maximum number of expressions whose results are kept per column
+    static final protected int MAX_EXPRESSIONS = 8;
+    
+    // Results are stored in pages allocated on demand, so that expressions
+    // evaluated on a few rows only, as in previews, take up little memory. Rows
+    // are evaluated in parallel, so pages are installed atomically.
+    static final protected int PAGE_SIZE = 4096;
+    
+    final protected Map<String, AtomicReferenceArray<Result[]>> _results =
+            new LinkedHashMap<String, AtomicReferenceArray<Result[]>>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AtomicReferenceArray<Result[]>> eldest) {
+            return size() > MAX_EXPRESSIONS;
+        }
+    };
+    
+    /**
+     * Wrap an evaluable so that its results on the cells of the given column are
+     * cached, if the expression allows it. The returned evaluable must be given
+     * bindings from {@link ExpressionUtils#bind}, for the same column.
+     * 
+     * @param project
+     * @param cellIndex cell index of the column the expression is evaluated on
+     * @param expression the expression's source, with or without language prefix
+     * @param eval the parsed expression
+     * @return an evaluable caching eval's results, or eval itself
+     */
+    static public Evaluable wrap(Project project, int cellIndex, String expression, Evaluable eval) {
+        if (cellIndex < 0 || !ExpressionDependencies.dependsOnCellOnly(eval)) {
+            return eval;
+        }
+        Column column = project.columnModel.getColumnByCellIndex(cellIndex);
+        if (column == null) {
+            return eval;
+        }
+        
+        ExpressionResultCache cache;
+        synchronized (column) {
+            cache = (ExpressionResultCache) column.getPrecompute(PRECOMPUTE_KEY);
+            if (cache == null) {
+                cache = new ExpressionResultCache();
+                column.setPrecompute(PRECOMPUTE_KEY, cache);
+            }
+        }
+        return new CachingEvaluable(eval, cellIndex, cache.getResults(normalize(expression), project.rows.size()));
+    }
+    
+    static protected String normalize(String expression) {
+        String s = expression.trim();
+        if (s.startsWith("grel:") || s.startsWith("gel:")) {
+            s = s.substring(s.indexOf(':') + 1).trim();
+        }
+        return s;
+    }
+    
+    synchronized protected AtomicReferenceArray<Result[]> getResults(String expression, int rowCount) {
+        AtomicReferenceArray<Result[]> results = _results.get(expression);
+        int pageCount = (rowCount + PAGE_SIZE - 1) / PAGE_SIZE;
+        if (results == null || results.length() != pageCount) {
+            results = new AtomicReferenceArray<Result[]>(pageCount);
+            _results.put(expression, results);
+        }
+        return results;
+    }
+    
+    static protected class Result {
+        final protected Cell cell;
+        final protected Object value;
+        
+        protected Result(Cell cell, Object value) {
+            this.cell = cell;
+            this.value = value;
+        }
+    }
+    
+    static protected class CachingEvaluable implements BatchEvaluable {
+        final protected Evaluable _eval;
+        final protected int _cellIndex;
+        final protected AtomicReferenceArray<Result[]> _results;
+        
+        protected CachingEvaluable(Evaluable eval, int cellIndex, AtomicReferenceArray<Result[]> results) {
+            _eval = eval;
+            _cellIndex = cellIndex;
+            _results = results;
+        }
+        
+        @Override
+        public Object evaluate(Properties bindings) {
+            // Only use the cache when evaluating on the column's own cell, and not
+            // for instance on a cell being transformed repeatedly
+            Row boundRow;
+            int rowIndex;
+            Cell boundCell;
+            if (bindings instanceof BindingFrame) {
+                BindingFrame frame = (BindingFrame) bindings;
+                boundRow = frame.getBoundRow();
+                rowIndex = frame.getBoundRowIndex();
+                boundCell = frame.getBoundCell();
+            } else {
+                Object row = bindings.get("row");
+                Object cell = bindings.get("cell");
+                boundRow = row instanceof WrappedRow ? ((WrappedRow) row).row : null;
+                rowIndex = row instanceof WrappedRow ? ((WrappedRow) row).rowIndex : -1;
+                boundCell = cell instanceof WrappedCell ? ((WrappedCell) cell).cell : null;
+            }
+            if (boundRow == null) {
+                return _eval.evaluate(bindings);
+            }
+            if (rowIndex < 0 || rowIndex / PAGE_SIZE >= _results.length() || boundCell != boundRow.getCell(_cellIndex)) {
+                return _eval.evaluate(bindings);
+            }
+            
+            Result result = getResult(rowIndex);
+            if (result == null || result.cell != boundCell) {
+                result = new Result(boundCell, _eval.evaluate(bindings));
+                setResult(rowIndex, result);
+            }
+            return result.value;
+        }
+        
+        @Override
+        public boolean evaluateBatch(EvaluationBatch batch, Object[] results, Properties bindings) {
+            if (batch.cellIndex != _cellIndex) {
+                return false;
+            }
+            
+            int size = batch.size();
+            boolean[] missing = new boolean[size];
+            boolean anyMissing = false;
+            for (int i = 0; i < size; i++) {
+                int rowIndex = batch.rowIndices[i];
+                Result result = rowIndex / PAGE_SIZE < _results.length() ? getResult(rowIndex) : null;
+                if (result != null && result.cell == batch.cells[i]) {
+                    results[i] = result.value;
+                } else {
+                    missing[i] = true;
+                    anyMissing = true;
+                }
+            }
+            if (!anyMissing) {
+                return true;
+            }
+            
+            Object[] computed = new Object[size];
+            if (!(_eval instanceof BatchEvaluable) ||
+                    !((BatchEvaluable) _eval).evaluateBatch(batch, computed, bindings)) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (missing[i]) {
+                    results[i] = computed[i];
+                    int rowIndex = batch.rowIndices[i];
+                    if (rowIndex / PAGE_SIZE < _results.length()) {
+                        setResult(rowIndex, new Result(batch.cells[i], computed[i]));
+                    }
+                }
+            }
+            return true;
+        }
+        
+        protected Result getResult(int rowIndex) {
+            Result[] page = _results.get(rowIndex / PAGE_SIZE);
+            return page == null ? null : page[rowIndex % PAGE_SIZE];
+        }
+        
+        protected void setResult(int rowIndex, Result result) {
+            int pageIndex = rowIndex / PAGE_SIZE;
+            Result[] page = _results.get(pageIndex);
+            if (page == null) {
+                // Another thread may install the page first; then use that one
+                _results.compareAndSet(pageIndex, null, new Result[PAGE_SIZE]);
+                page = _results.get(pageIndex);
+            }
+            // Results hold final fields only, so a thread reading this slot sees
+            // either nothing or a complete result
+            page[rowIndex % PAGE_SIZE] = result;
+        }
+        
+        @Override
+        public String toString() {
+            return _eval.toString();
+        }
+    }
+}
@@ -35,6 +35,7 @@ package com.google.refine.expr;
 
 import java.io.StringReader;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -43,6 +44,7 @@ import clojure.lang.IFn;
 import clojure.lang.RT;
 
 import com.google.refine.grel.Parser;
+import com.google.refine.grel.ast.ExpressionOptimizer;
 
 abstract public class MetaParser {
 
@@ -60,6 +62,25 @@ abstract public class MetaParser {
     
     static final protected Map<String, LanguageInfo> s_languages = new HashMap<String, LanguageInfo>();
 
+    /*
+     * Parsed expressions, keyed by language prefix and expression text. Facets and
+     * operations are recreated from their JSON configurations on every request, so
+     * the same expressions get parsed over and over again. Evaluables hold no state
+     * of their own, so one instance can be shared by all its users.
+     */
+    static final protected int MAX_CACHED_EXPRESSIONS = 1024;
+    
+    static final protected Map<String, Evaluable> s_cache = new LinkedHashMap<String, Evaluable>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Evaluable> eldest) {
+            return size() > MAX_CACHED_EXPRESSIONS;
+        }
+    };
+    static protected long s_cacheHits;
+    static protected long s_cacheMisses;
+
     // TODO: We should switch from using the internal compiler class 
 //    final static private Var CLOJURE_READ_STRING = RT.var("clojure.core", "read-string");
 //    final static private Var CLOJURE_EVAL = RT.var("clojure.core", "eval");
@@ -122,6 +143,7 @@ abstract public class MetaParser {
     
     static public void registerLanguageParser(String languagePrefix, String name, LanguageSpecificParser parser, String defaultExpression) {
         s_languages.put(languagePrefix, new LanguageInfo(name, parser, defaultExpression));
+        clearCache();
     }
     
     static public LanguageInfo getLanguageInfo(String languagePrefix) {
@@ -153,16 +175,48 @@ abstract public class MetaParser {
         }
         
         LanguageInfo info = s_languages.get(language.toLowerCase());
-        if (info != null) {
-            return info.parser.parse(s.substring(colon + 1));
-        } else {
-            return parseGREL(s);
+        if (info == null) {
+            language = "grel";
+        }
+        String key = language + ":" + (info != null ? s.substring(colon + 1) : s);
+        
+        synchronized (s_cache) {
+            Evaluable eval = s_cache.get(key);
+            if (eval != null) {
+                s_cacheHits++;
+                return eval;
+            }
+            s_cacheMisses++;
+        }
+        
+        Evaluable eval = info != null ? info.parser.parse(s.substring(colon + 1)) : parseGREL(s);
+        synchronized (s_cache) {
+            s_cache.put(key, eval);
+        }
+        return eval;
+    }
+    
+    static public void clearCache() {
+        synchronized (s_cache) {
+            s_cache.clear();
+        }
+    }
+    
+    static public long getCacheHits() {
+        synchronized (s_cache) {
+            return s_cacheHits;
+        }
+    }
+    
+    static public long getCacheMisses() {
+        synchronized (s_cache) {
+            return s_cacheMisses;
         }
     }
     
     static protected Evaluable parseGREL(String s) throws ParsingException {
         Parser parser = new Parser(s);
         
-        return parser.getExpression();
+        return ExpressionOptimizer.optimize(parser.getExpression());
     }
 }
@@ -35,6 +35,7 @@ package com.google.refine.expr;
 
 import java.util.Properties;
 
+import com.google.refine.expr.BindingFrame.RecordContext;
 import com.google.refine.model.Cell;
 import com.google.refine.model.Column;
 import com.google.refine.model.Project;
@@ -60,8 +61,14 @@ public class WrappedRow implements HasFields {
             return rowIndex;
         } else if ("record".equals(name)) {
             int rowIndex = (Integer) bindings.get("rowIndex");
+            if (bindings instanceof BindingFrame) {
+                RecordContext context = ((BindingFrame) bindings).getRecordContext(project, rowIndex);
+                if (context != null) {
+                    return new WrappedRecord(context.record, context);
+                }
+            }
             
-            return new WrappedRecord(project.recordModel.getRecordOfRow(rowIndex));
+            return new WrappedRecord(project.recordModel.getRecordOfRow(rowIndex), null);
         } else if ("columnNames".equals(name)) {
             Project project = (Project) bindings.get("project");
             
@@ -78,15 +85,17 @@ public class WrappedRow implements HasFields {
 
     protected class WrappedRecord implements HasFields {
         final Record _record;
+        final RecordContext _context;
 
-        protected WrappedRecord(Record record) {
+        protected WrappedRecord(Record record, RecordContext context) {
             _record = record;
+            _context = context;
         }
 
         @Override
         public Object getField(String name, Properties bindings) {
             if ("cells".equals(name)) {
-                return new RecordCells(_record);
+                return new RecordCells(_record, _context);
             } else if ("index".equals(name)) {
                 return _record.recordIndex;
             } else if ("fromRowIndex".equals(name)) {
@@ -107,18 +116,25 @@ public class WrappedRow implements HasFields {
     
     protected class RecordCells implements HasFields {
         final Record _record;
+        final RecordContext _context;
         
-        protected RecordCells(Record record) {
+        protected RecordCells(Record record, RecordContext context) {
             _record = record;
+            _context = context;
         }
         
         @Override
         public Object getField(String name, Properties bindings) {
             Column column = project.columnModel.getColumnByName(name);
             if (column != null) {
+                HasFieldsListImpl cells = _context != null ? _context.getCells(name) : null;
+                if (cells != null) {
+                    return cells;
+                }
+                
                 int cellIndex = column.getCellIndex();
                 
-                HasFieldsListImpl cells = new HasFieldsListImpl();
+                cells = new HasFieldsListImpl();
                 for (int r = _record.fromRowIndex; r < _record.toRowIndex; r++) {
                     Row row = project.rows.get(r);
                     Cell cell = row.getCell(cellIndex);
@@ -127,6 +143,9 @@ public class WrappedRow implements HasFields {
                     }
                 }
                 
+                if (_context != null) {
+                    _context.setCells(name, cells);
+                }
                 return cells;
             }
             return null;
@@ -46,10 +46,8 @@ import org.json.JSONException;
 import org.json.JSONWriter;
 
 import com.google.refine.expr.EvalError;
-import com.google.refine.expr.util.CalendarParser;
-import com.google.refine.expr.util.CalendarParserException;
+import com.google.refine.expr.util.CachedDateParser;
 import com.google.refine.grel.Function;
-import com.google.refine.util.ParsingUtilities;
 
 public class ToDate implements Function {
 
@@ -80,25 +78,11 @@ public class ToDate implements Function {
             if (args.length == 2) {
                 month_first = (Boolean) args[1];
             }
-            try {
-                return CalendarParser.parse( o1, (month_first) ? CalendarParser.MM_DD_YY : CalendarParser.DD_MM_YY);
-            } catch (CalendarParserException e) {
-                Date d = ParsingUtilities.stringToDate(o1);
-                if (d != null) {
-                    return d;
-                } else {
-                    try {
-                        return javax.xml.bind.DatatypeConverter.parseDateTime(o1).getTime();
-                    } catch (IllegalArgumentException e2) {
-                    }
-                    // alternate implementation which may be useful on some JVMs?
-//                    try {
-//                        return javax.xml.datatype.DatatypeFactory.newInstance().newXMLGregorianCalendar(o1).toGregorianCalendar().getTime();
-//                    } catch (DatatypeConfigurationException e2) {     
-//                    }
-                }
-                return new EvalError("Cannot parse to date");
+            Object date = CachedDateParser.parse(o1, month_first);
+            if (date != null) {
+                return date;
             }
+            return new EvalError("Cannot parse to date");
         }
 
         // "o, format1, format2 (optional), ..."
@@ -43,6 +43,7 @@ import org.json.JSONWriter;
 import com.google.refine.expr.EvalError;
 import com.google.refine.grel.ControlFunctionRegistry;
 import com.google.refine.grel.Function;
+import com.google.refine.util.PatternCache;
 
 public class Match implements Function {
 
@@ -54,7 +55,11 @@ public class Match implements Function {
             
             if (s != null && p != null && (p instanceof String || p instanceof Pattern)) {
                 
-                Pattern pattern = (p instanceof String) ? Pattern.compile((String) p) : (Pattern) p;
+                if (p instanceof String && PatternCache.isLiteral((String) p)) {
+                    // a pattern without groups, matching only its own text
+                    return s.toString().equals(p) ? new String[0] : null;
+                }
+                Pattern pattern = (p instanceof String) ? PatternCache.getPattern((String) p) : (Pattern) p;
 
                 Matcher matcher = pattern.matcher(s.toString());
                 
@@ -36,6 +36,7 @@ package com.google.refine.expr.functions.strings;
 import java.util.Properties;
 import java.util.regex.Pattern;
 
+import org.apache.commons.lang.StringUtils;
 import org.json.JSONException;
 import org.json.JSONWriter;
 
@@ -55,7 +56,10 @@ public class Replace implements Function {
                 String str = (o1 instanceof String) ? (String) o1 : o1.toString();
                 
                 if (o2 instanceof String) {
-                    return str.replace((String) o2, (String) o3);
+                    String target = (String) o2;
+                    // String.replace() compiles a pattern on every call
+                    return target.length() > 0 ?
+                        StringUtils.replace(str, target, (String) o3) : str.replace(target, (String) o3);
                 } else if (o2 instanceof Pattern) {
                     Pattern pattern = (Pattern) o2;
                     return pattern.matcher(str).replaceAll((String) o3);
@@ -0,0 +1,270 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.expr.util;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.refine.util.ParsingUtilities;
+
+/**
+ * Parses strings into dates the way the toDate() function does without formats,
+ * but faster on columns of dates that repeat or share a layout.
+ * <p>
+ * Each string is first reduced to its shape, with digits standing for any digit.
+ * Shapes for which {@link CalendarParser} is known to read fields in a fixed order,
+ * such as "9999-99-99" or "99/99/9999" when months come first, are read field by
+ * field without going through the general parser. Other strings go through
+ * {@link CalendarParser} and the other fallbacks as before. In both cases results,
+ * including failures, are memoized in a bounded cache keyed by the string.
+ */
+public class CachedDateParser {
+    // Maximum number of strings whose parse results are kept
+    static final protected int MAX_CACHED_DATES = 4096;
+    
+    static final private Object FAILED = new Object();
+    
+    static final private Map<String, Object> s_cache = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+            return size() > MAX_CACHED_DATES;
+        }
+    };
+    
+    /**
+     * A layout whose fields are all numeric and at fixed positions, given as
+     * start offsets into strings of the layout's shape, or -1 for absent fields.
+     */
+    static protected class FixedLayout {
+        final String shape;
+        final int year, month, day, hour, minute, second;
+        final boolean monthFirstOnly;
+        final boolean dayFirstOnly;
+        final boolean asDate;
+        
+        FixedLayout(String shape, int year, int month, int day, int hour, int minute, int second,
+                boolean monthFirstOnly, boolean dayFirstOnly, boolean asDate) {
+            this.shape = shape;
+            this.year = year;
+            this.month = month;
+            this.day = day;
+            this.hour = hour;
+            this.minute = minute;
+            this.second = second;
+            this.monthFirstOnly = monthFirstOnly;
+            this.dayFirstOnly = dayFirstOnly;
+            this.asDate = asDate;
+        }
+    }
+    
+    /*
+     * Year-first layouts are only read as year-month-day by CalendarParser when
+     * months come first; otherwise small values get taken as days. The ISO 8601
+     * layout with a literal Z is rejected by CalendarParser and read as a Date
+     * in the local time zone by ParsingUtilities.stringToDate().
+     */
+    static final protected FixedLayout[] LAYOUTS = new FixedLayout[] {
+        new FixedLayout("9999-99-99",          0, 5, 8, -1, -1, -1, true, false, false),
+        new FixedLayout("9999/99/99",          0, 5, 8, -1, -1, -1, true, false, false),
+        new FixedLayout("9999-99-99 99:99",    0, 5, 8, 11, 14, -1, true, false, false),
+        new FixedLayout("9999-99-99 99:99:99", 0, 5, 8, 11, 14, 17, true, false, false),
+        new FixedLayout("99/99/9999",          6, 0, 3, -1, -1, -1, true, false, false),
+        new FixedLayout("99/99/9999",          6, 3, 0, -1, -1, -1, false, true, false),
+        new FixedLayout("9999-99-99T99:99:99Z", 0, 5, 8, 11, 14, 17, false, false, true)
+    };
+    
+    /*
+     * XML Schema dateTime, read by hand as javax.xml.bind's DatatypeConverter would,
+     * since that package isn't part of the JDK from version 11 on. Without a time
+     * zone, the local one applies.
+     */
+    static final protected Pattern XSD_DATE_TIME = Pattern.compile(
+        "(\\d{4})-(\\d{2})-(\\d{2})T(\\d{2}):(\\d{2}):(\\d{2})(?:\\.(\\d+))?(Z|[+-]\\d{2}:\\d{2})?");
+    
+    /**
+     * Parse a string into a date.
+     * 
+     * @param s
+     * @param monthFirst whether numeric dates have months before days
+     * @return a Calendar or a Date, or null if the string can't be parsed
+     */
+    static public Object parse(String s, boolean monthFirst) {
+        String key = (monthFirst ? "M:" : "D:") + s;
+        Object cached;
+        synchronized (s_cache) {
+            cached = s_cache.get(key);
+        }
+        if (cached == null) {
+            cached = parseUncached(s, monthFirst);
+            if (cached == null) {
+                cached = FAILED;
+            }
+            synchronized (s_cache) {
+                s_cache.put(key, cached);
+            }
+        }
+        
+        // Calendars and dates are mutable, so callers get their own copies
+        if (cached == FAILED) {
+            return null;
+        } else if (cached instanceof Calendar) {
+            return ((Calendar) cached).clone();
+        } else {
+            return new Date(((Date) cached).getTime());
+        }
+    }
+    
+    static public void clearCache() {
+        synchronized (s_cache) {
+            s_cache.clear();
+        }
+    }
+    
+    static protected Object parseUncached(String s, boolean monthFirst) {
+        Object o = parseFixedLayout(s, monthFirst);
+        if (o != null) {
+            return o;
+        }
+        
+        try {
+            return CalendarParser.parse(s, monthFirst ? CalendarParser.MM_DD_YY : CalendarParser.DD_MM_YY);
+        } catch (CalendarParserException e) {
+            Date d = ParsingUtilities.stringToDate(s);
+            if (d != null) {
+                return d;
+            }
+            return parseXsdDateTime(s);
+        }
+    }
+    
+    static protected Date parseXsdDateTime(String s) {
+        Matcher m = XSD_DATE_TIME.matcher(s);
+        if (!m.matches()) {
+            return null;
+        }
+        
+        String zone = m.group(8);
+        GregorianCalendar cal = new GregorianCalendar(zone == null ? TimeZone.getDefault() :
+            TimeZone.getTimeZone("Z".equals(zone) ? "GMT" : "GMT" + zone));
+        cal.clear();
+        cal.setLenient(false);
+        cal.set(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)) - 1, Integer.parseInt(m.group(3)),
+            Integer.parseInt(m.group(4)), Integer.parseInt(m.group(5)), Integer.parseInt(m.group(6)));
+        String fraction = m.group(7);
+        if (fraction != null) {
+            cal.set(Calendar.MILLISECOND, Integer.parseInt((fraction + "00").substring(0, 3)));
+        }
+        try {
+            return cal.getTime();
+        } catch (IllegalArgumentException e) {
+            return null; // out of range fields
+        }
+    }
+    
+    /**
+     * Read a string of one of the fixed layouts, building the same calendar as
+     * CalendarParser would. Returns null if the string has no fixed layout or
+     * holds out of range values, leaving these to the general parser.
+     */
+    static protected Object parseFixedLayout(String s, boolean monthFirst) {
+        int length = s.length();
+        for (FixedLayout layout : LAYOUTS) {
+            if (layout.shape.length() != length ||
+                    (layout.monthFirstOnly && !monthFirst) ||
+                    (layout.dayFirstOnly && monthFirst) ||
+                    !hasShape(s, layout.shape)) {
+                continue;
+            }
+            
+            int year = readNumber(s, layout.year, 4);
+            int month = readNumber(s, layout.month, 2);
+            int day = readNumber(s, layout.day, 2);
+            int hour = layout.hour < 0 ? -1 : readNumber(s, layout.hour, 2);
+            int minute = layout.minute < 0 ? -1 : readNumber(s, layout.minute, 2);
+            int second = layout.second < 0 ? -1 : readNumber(s, layout.second, 2);
+            // Years below 100 get shifted to a century by CalendarParser
+            if (year < 100 || month < 1 || month > 12 || day < 1 || day > 31 ||
+                    hour > 23 || minute > 59 || second > 59) {
+                return null;
+            }
+            
+            GregorianCalendar cal = new GregorianCalendar();
+            cal.clear();
+            if (layout.asDate) {
+                cal.set(year, month - 1, day, hour, minute, second);
+                return cal.getTime();
+            }
+            cal.set(Calendar.YEAR, year);
+            cal.set(Calendar.MONTH, month - 1);
+            cal.set(Calendar.DATE, day);
+            if (hour >= 0) {
+                cal.set(Calendar.HOUR, hour);
+                cal.set(Calendar.MINUTE, minute);
+                if (second >= 0) {
+                    cal.set(Calendar.SECOND, second);
+                }
+            }
+            return cal;
+        }
+        return null;
+    }
+    
+    static private boolean hasShape(String s, String shape) {
+        for (int i = 0; i < shape.length(); i++) {
+            char c = s.charAt(i);
+            char p = shape.charAt(i);
+            if (p == '9' ? (c < '0' || c > '9') : c != p) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    static private int readNumber(String s, int start, int digits) {
+        int n = 0;
+        for (int i = start; i < start + digits; i++) {
+            n = n * 10 + (s.charAt(i) - '0');
+        }
+        return n;
+    }
+}
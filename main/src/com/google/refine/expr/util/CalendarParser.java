@@ -542,6 +542,10 @@ public class CalendarParser {
     /** Adjustment for two-digit years will break in 2050. */
     private static final int CENTURY_OFFSET = 2000;
 
+    /** separators between the tokens of a date string. */
+    private static final Pattern TOKEN_SEPARATOR = Pattern
+            .compile("([\\s/,]+|(\\S)\\-)");
+
     /** value indicating an unset variable. */
     private static final int UNSET = ParserState.UNSET;
 
@@ -1535,8 +1539,7 @@ public class CalendarParser {
             boolean ignoreChanges) throws CalendarParserException {
         ParserState state = new ParserState(order);
 
-        Pattern pat = Pattern.compile("([\\s/,]+|(\\S)\\-)");
-        Matcher matcher = pat.matcher(dateStr);
+        Matcher matcher = TOKEN_SEPARATOR.matcher(dateStr);
 
         int prevEnd = 0;
         while (prevEnd < dateStr.length()) {
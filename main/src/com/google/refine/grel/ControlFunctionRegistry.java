@@ -34,6 +34,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.google.refine.grel;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -149,6 +150,7 @@ public class ControlFunctionRegistry {
 
     static private Map<String, Function> s_nameToFunction = new HashMap<String, Function>();
     static private Map<Function, String> s_functionToName = new HashMap<Function, String>();
+    static private Set<Function> s_pureFunctions = new HashSet<Function>();
 
     static private Map<String, Control> s_nameToControl = new HashMap<String, Control>();
     static private Map<Control, String> s_controlToName = new HashMap<Control, String>();
@@ -173,9 +175,30 @@ public class ControlFunctionRegistry {
         return s_nameToControl.entrySet();
     }
 
+    /**
+     * Registers a function that isn't known to be pure.
+     */
     static public void registerFunction(String name, Function f) {
+        registerFunction(name, f, false);
+    }
+
+    /**
+     * Registers a function. A pure function returns the same result whenever it is
+     * called with the same arguments, and doesn't look at the bindings, so calls to it
+     * can be evaluated once when the expression is parsed, or shared within an expression.
+     */
+    static public void registerFunction(String name, Function f, boolean pure) {
         s_nameToFunction.put(name, f);
         s_functionToName.put(f, name);
+        if (pure) {
+            s_pureFunctions.add(f);
+        } else {
+            s_pureFunctions.remove(f);
+        }
+    }
+
+    static public boolean isPure(Function f) {
+        return s_pureFunctions.contains(f);
     }
 
     static public void registerControl(String name, Control c) {
@@ -184,112 +207,112 @@ public class ControlFunctionRegistry {
     }
 
     static {
-        registerFunction("type", new Type());
+        registerFunction("type", new Type(), true);
 
-        registerFunction("toString", new ToString());
-        registerFunction("toNumber", new ToNumber());
-        registerFunction("toDate", new ToDate());
+        registerFunction("toString", new ToString(), true);
+        registerFunction("toNumber", new ToNumber(), true);
+        registerFunction("toDate", new ToDate(), true);
 
-        registerFunction("toUppercase", new ToUppercase());
-        registerFunction("toLowercase", new ToLowercase());
-        registerFunction("toTitlecase", new ToTitlecase());
+        registerFunction("toUppercase", new ToUppercase(), true);
+        registerFunction("toLowercase", new ToLowercase(), true);
+        registerFunction("toTitlecase", new ToTitlecase(), true);
 
-        registerFunction("hasField", new HasField());
-        registerFunction("get", new Get());
-        registerFunction("slice", new Slice());
-        registerFunction("substring", new Slice());
-        registerFunction("replace", new Replace());
-        registerFunction("replaceChars", new ReplaceChars());
-        registerFunction("split", new Split());
-        registerFunction("smartSplit", new SmartSplit());
-        registerFunction("splitByCharType", new SplitByCharType());
-        registerFunction("splitByLengths", new SplitByLengths());
-        registerFunction("partition", new Partition());
-        registerFunction("rpartition", new RPartition());
-        registerFunction("trim", new Trim());
-        registerFunction("strip", new Trim());
-        registerFunction("contains", new Contains());
-        registerFunction("escape", new Escape());
-        registerFunction("unescape", new Unescape());
-        registerFunction("length", new Length());
-        registerFunction("sha1", new SHA1());
-        registerFunction("md5", new MD5());
-        registerFunction("unicode", new Unicode());
-        registerFunction("unicodeType", new UnicodeType());
-        registerFunction("diff", new Diff());
-        registerFunction("chomp", new Chomp());
-        registerFunction("fingerprint", new Fingerprint());
-        registerFunction("ngramFingerprint", new NGramFingerprint());
-        registerFunction("phonetic", new Phonetic());
-        registerFunction("reinterpret", new Reinterpret());
-        registerFunction("jsonize", new Jsonize());
-        registerFunction("parseJson", new ParseJson());
-        registerFunction("ngram", new NGram());
-        registerFunction("match", new Match());
+        registerFunction("hasField", new HasField(), true);
+        registerFunction("get", new Get(), true);
+        registerFunction("slice", new Slice(), true);
+        registerFunction("substring", new Slice(), true);
+        registerFunction("replace", new Replace(), true);
+        registerFunction("replaceChars", new ReplaceChars(), true);
+        registerFunction("split", new Split(), true);
+        registerFunction("smartSplit", new SmartSplit(), true);
+        registerFunction("splitByCharType", new SplitByCharType(), true);
+        registerFunction("splitByLengths", new SplitByLengths(), true);
+        registerFunction("partition", new Partition(), true);
+        registerFunction("rpartition", new RPartition(), true);
+        registerFunction("trim", new Trim(), true);
+        registerFunction("strip", new Trim(), true);
+        registerFunction("contains", new Contains(), true);
+        registerFunction("escape", new Escape(), true);
+        registerFunction("unescape", new Unescape(), true);
+        registerFunction("length", new Length(), true);
+        registerFunction("sha1", new SHA1(), true);
+        registerFunction("md5", new MD5(), true);
+        registerFunction("unicode", new Unicode(), true);
+        registerFunction("unicodeType", new UnicodeType(), true);
+        registerFunction("diff", new Diff(), true);
+        registerFunction("chomp", new Chomp(), true);
+        registerFunction("fingerprint", new Fingerprint(), true);
+        registerFunction("ngramFingerprint", new NGramFingerprint(), true);
+        registerFunction("phonetic", new Phonetic(), true);
+        registerFunction("reinterpret", new Reinterpret(), false);
+        registerFunction("jsonize", new Jsonize(), true);
+        registerFunction("parseJson", new ParseJson(), true);
+        registerFunction("ngram", new NGram(), true);
+        registerFunction("match", new Match(), true);
 
         // HTML functions from JSoup
-        registerFunction("parseHtml", new ParseHtml());
-        registerFunction("select", new SelectHtml());
-        registerFunction("htmlAttr", new HtmlAttr());
-        registerFunction("htmlText", new HtmlText());
-        registerFunction("innerHtml", new InnerHtml());
-        registerFunction("ownText", new OwnText());
+        registerFunction("parseHtml", new ParseHtml(), true);
+        registerFunction("select", new SelectHtml(), true);
+        registerFunction("htmlAttr", new HtmlAttr(), true);
+        registerFunction("htmlText", new HtmlText(), true);
+        registerFunction("innerHtml", new InnerHtml(), true);
+        registerFunction("ownText", new OwnText(), true);
 
-        registerFunction("indexOf", new IndexOf());
-        registerFunction("lastIndexOf", new LastIndexOf());
-        registerFunction("startsWith", new StartsWith());
-        registerFunction("endsWith", new EndsWith());
-        registerFunction("join", new Join());
-        registerFunction("reverse", new Reverse());
-        registerFunction("sort", new Sort());
-        registerFunction("uniques", new Uniques());
+        registerFunction("indexOf", new IndexOf(), true);
+        registerFunction("lastIndexOf", new LastIndexOf(), true);
+        registerFunction("startsWith", new StartsWith(), true);
+        registerFunction("endsWith", new EndsWith(), true);
+        registerFunction("join", new Join(), true);
+        registerFunction("reverse", new Reverse(), true);
+        registerFunction("sort", new Sort(), true);
+        registerFunction("uniques", new Uniques(), true);
 
-        registerFunction("now", new Now());
-        registerFunction("inc", new Inc());
-        registerFunction("datePart", new DatePart());
+        registerFunction("now", new Now(), false);
+        registerFunction("inc", new Inc(), true);
+        registerFunction("datePart", new DatePart(), true);
 
-        registerFunction("acos", new ACos());
-        registerFunction("asin", new ASin());
-        registerFunction("atan", new ATan());
-        registerFunction("atan2", new ATan2());
-        registerFunction("cos", new Cos());
-        registerFunction("cosh", new Cosh());
-        registerFunction("sin", new Sin());
-        registerFunction("sinh", new Sinh());
-        registerFunction("tan", new Tan());
-        registerFunction("tanh", new Tanh());
-        registerFunction("round", new Round());
-        registerFunction("floor", new Floor());
-        registerFunction("ceil", new Ceil());
-        registerFunction("even", new Even());
-        registerFunction("odd", new Odd());
-        registerFunction("abs", new Abs());
-        registerFunction("mod", new Mod());
-        registerFunction("max", new Max());
-        registerFunction("min", new Min());
-        registerFunction("log", new Log());
-        registerFunction("ln", new Ln());
-        registerFunction("pow", new Pow());
-        registerFunction("exp", new Exp());
-        registerFunction("sum", new Sum());
-        registerFunction("fact", new Fact());
-        registerFunction("factn", new FactN());
-        registerFunction("combin", new Combin());
-        registerFunction("degrees", new Degrees());
-        registerFunction("radians", new Radians());
-        registerFunction("gcd", new GreatestCommonDenominator());
-        registerFunction("lcm", new LeastCommonMultiple());
-        registerFunction("multinomial", new Multinomial());
-        registerFunction("quotient", new Quotient());
+        registerFunction("acos", new ACos(), true);
+        registerFunction("asin", new ASin(), true);
+        registerFunction("atan", new ATan(), true);
+        registerFunction("atan2", new ATan2(), true);
+        registerFunction("cos", new Cos(), true);
+        registerFunction("cosh", new Cosh(), true);
+        registerFunction("sin", new Sin(), true);
+        registerFunction("sinh", new Sinh(), true);
+        registerFunction("tan", new Tan(), true);
+        registerFunction("tanh", new Tanh(), true);
+        registerFunction("round", new Round(), true);
+        registerFunction("floor", new Floor(), true);
+        registerFunction("ceil", new Ceil(), true);
+        registerFunction("even", new Even(), true);
+        registerFunction("odd", new Odd(), true);
+        registerFunction("abs", new Abs(), true);
+        registerFunction("mod", new Mod(), true);
+        registerFunction("max", new Max(), true);
+        registerFunction("min", new Min(), true);
+        registerFunction("log", new Log(), true);
+        registerFunction("ln", new Ln(), true);
+        registerFunction("pow", new Pow(), true);
+        registerFunction("exp", new Exp(), true);
+        registerFunction("sum", new Sum(), true);
+        registerFunction("fact", new Fact(), true);
+        registerFunction("factn", new FactN(), true);
+        registerFunction("combin", new Combin(), true);
+        registerFunction("degrees", new Degrees(), true);
+        registerFunction("radians", new Radians(), true);
+        registerFunction("gcd", new GreatestCommonDenominator(), true);
+        registerFunction("lcm", new LeastCommonMultiple(), true);
+        registerFunction("multinomial", new Multinomial(), true);
+        registerFunction("quotient", new Quotient(), true);
 
-        registerFunction("and", new And());
-        registerFunction("or", new Or());
-        registerFunction("not", new Not());
-        registerFunction("xor", new Xor());
+        registerFunction("and", new And(), true);
+        registerFunction("or", new Or(), true);
+        registerFunction("not", new Not(), true);
+        registerFunction("xor", new Xor(), true);
 
-        registerFunction("cross", new Cross());
+        registerFunction("cross", new Cross(), false);
 
-        registerFunction("facetCount", new FacetCount());
+        registerFunction("facetCount", new FacetCount(), false);
 
         registerControl("if", new If());
         registerControl("with", new With());
@@ -0,0 +1,158 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.grel.ast;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.refine.expr.Evaluable;
+import com.google.refine.grel.Control;
+import com.google.refine.grel.ControlFunctionRegistry;
+import com.google.refine.grel.Function;
+import com.google.refine.grel.controls.Filter;
+import com.google.refine.grel.controls.ForEach;
+import com.google.refine.grel.controls.ForEachIndex;
+import com.google.refine.grel.controls.ForNonBlank;
+import com.google.refine.grel.controls.ForRange;
+import com.google.refine.grel.controls.With;
+
+/**
+ * Static analysis of what the value of a GREL expression depends on.
+ */
+public class ExpressionDependencies {
+    // Variables through which an expression sees the cell it is evaluated on
+    static final protected Set<String> CELL_VARIABLES = new HashSet<String>(Arrays.asList("value", "cell"));
+    
+    // Argument positions at which controls take the names of the variables they bind
+    static final protected Map<Class<? extends Control>, int[]> CONTROL_VARIABLES =
+        new HashMap<Class<? extends Control>, int[]>();
+    
+    static {
+        CONTROL_VARIABLES.put(Filter.class, new int[] { 1 });
+        CONTROL_VARIABLES.put(ForEach.class, new int[] { 1 });
+        CONTROL_VARIABLES.put(ForEachIndex.class, new int[] { 1, 2 });
+        CONTROL_VARIABLES.put(ForNonBlank.class, new int[] { 1 });
+        CONTROL_VARIABLES.put(ForRange.class, new int[] { 3 });
+        CONTROL_VARIABLES.put(With.class, new int[] { 1 });
+    }
+    
+    /**
+     * Whether the expression's value depends only on the cell it is evaluated on,
+     * and not on other cells, the row, the project or anything else. Expressions
+     * that aren't GREL, or that call functions not registered as pure, are assumed
+     * to depend on more than the cell.
+     */
+    static public boolean dependsOnCellOnly(Evaluable eval) {
+        return dependsOnCellOnly(eval, CELL_VARIABLES);
+    }
+    
+    static protected boolean dependsOnCellOnly(Evaluable eval, Set<String> variables) {
+        if (eval instanceof LiteralExpr) {
+            return true;
+        } else if (eval instanceof VariableExpr) {
+            return variables.contains(((VariableExpr) eval).getName());
+        } else if (eval instanceof FieldAccessorExpr) {
+            return dependsOnCellOnly(((FieldAccessorExpr) eval)._inner, variables);
+        } else if (eval instanceof SharedExpr) {
+            return dependsOnCellOnly(((SharedExpr) eval)._inner, variables);
+        } else if (eval instanceof OperatorCallExpr) {
+            return dependOnCellOnly(Arrays.asList(((OperatorCallExpr) eval)._args), variables);
+        } else if (eval instanceof FunctionCallExpr) {
+            Function function = ((FunctionCallExpr) eval)._function;
+            return ControlFunctionRegistry.isPure(function) &&
+                dependOnCellOnly(Arrays.asList(((FunctionCallExpr) eval)._args), variables);
+        } else if (eval instanceof ControlCallExpr) {
+            ControlCallExpr call = (ControlCallExpr) eval;
+            Evaluable[] args = call._args.clone();
+            int[] positions = CONTROL_VARIABLES.get(call._control.getClass());
+            if (positions != null) {
+                variables = new HashSet<String>(variables);
+                for (int position : positions) {
+                    if (position < args.length && args[position] instanceof VariableExpr) {
+                        variables.add(((VariableExpr) args[position]).getName());
+                        args[position] = null;
+                    }
+                }
+            }
+            return dependOnCellOnly(Arrays.asList(args), variables);
+        }
+        return false;
+    }
+    
+    /**
+     * Whether the expression only calls functions registered as pure, so that its
+     * value depends on nothing but the project's data. Expressions that aren't
+     * GREL are assumed not to be pure.
+     */
+    static public boolean isPure(Evaluable eval) {
+        if (eval instanceof LiteralExpr || eval instanceof VariableExpr) {
+            return true;
+        } else if (eval instanceof FieldAccessorExpr) {
+            return isPure(((FieldAccessorExpr) eval)._inner);
+        } else if (eval instanceof SharedExpr) {
+            return isPure(((SharedExpr) eval)._inner);
+        } else if (eval instanceof OperatorCallExpr) {
+            return arePure(((OperatorCallExpr) eval)._args);
+        } else if (eval instanceof FunctionCallExpr) {
+            return ControlFunctionRegistry.isPure(((FunctionCallExpr) eval)._function) &&
+                arePure(((FunctionCallExpr) eval)._args);
+        } else if (eval instanceof ControlCallExpr) {
+            return arePure(((ControlCallExpr) eval)._args);
+        }
+        return false;
+    }
+    
+    static protected boolean arePure(Evaluable[] evals) {
+        for (Evaluable eval : evals) {
+            if (eval != null && !isPure(eval)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    static protected boolean dependOnCellOnly(List<Evaluable> evals, Set<String> variables) {
+        for (Evaluable eval : evals) {
+            if (eval != null && !dependsOnCellOnly(eval, variables)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
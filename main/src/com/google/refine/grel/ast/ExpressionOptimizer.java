@@ -0,0 +1,238 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.grel.ast;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.grel.ControlFunctionRegistry;
+import com.google.refine.grel.controls.If;
+
+/**
+ * Rewrites a parsed GREL expression so that it evaluates faster, without changing
+ * its results:
+ * <ul>
+ * <li>operators and pure functions applied to literals are evaluated once, here,
+ *     and so are "if" controls whose conditions are literals;</li>
+ * <li>pure subexpressions that occur more than once, such as a repeated
+ *     value.trim().toLowercase(), are evaluated only once per evaluation of the
+ *     whole expression (see {@link SharedExpr}).</li>
+ * </ul>
+ */
+public class ExpressionOptimizer {
+    
+    static public Evaluable optimize(Evaluable eval) {
+        eval = fold(eval);
+        
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        count(eval, counts);
+        return share(eval, counts, new HashMap<String, Evaluable>());
+    }
+    
+    static protected Evaluable fold(Evaluable eval) {
+        if (eval instanceof FieldAccessorExpr) {
+            FieldAccessorExpr e = (FieldAccessorExpr) eval;
+            return new FieldAccessorExpr(fold(e._inner), e._fieldName);
+            
+        } else if (eval instanceof OperatorCallExpr) {
+            OperatorCallExpr e = (OperatorCallExpr) eval;
+            Evaluable[] args = fold(e._args);
+            Evaluable folded = new OperatorCallExpr(args, e._op);
+            return allLiterals(args) ? evaluateConstant(folded) : folded;
+            
+        } else if (eval instanceof FunctionCallExpr) {
+            FunctionCallExpr e = (FunctionCallExpr) eval;
+            Evaluable[] args = fold(e._args);
+            Evaluable folded = new FunctionCallExpr(args, e._function);
+            return ControlFunctionRegistry.isPure(e._function) && allLiterals(args) ?
+                    evaluateConstant(folded) : folded;
+            
+        } else if (eval instanceof ControlCallExpr) {
+            ControlCallExpr e = (ControlCallExpr) eval;
+            Evaluable[] args = fold(e._args);
+            if (e._control instanceof If && args.length == 3 && args[0] instanceof LiteralExpr) {
+                return ExpressionUtils.isTrue(((LiteralExpr) args[0])._value) ? args[1] : args[2];
+            }
+            return new ControlCallExpr(args, e._control);
+        }
+        return eval;
+    }
+    
+    static protected Evaluable[] fold(Evaluable[] evals) {
+        Evaluable[] folded = new Evaluable[evals.length];
+        for (int i = 0; i < evals.length; i++) {
+            folded[i] = fold(evals[i]);
+        }
+        return folded;
+    }
+    
+    static protected boolean allLiterals(Evaluable[] evals) {
+        for (Evaluable eval : evals) {
+            if (!(eval instanceof LiteralExpr)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Replace an expression over literals by its value, if that value is
+     * immutable and so can be handed out to every evaluation.
+     */
+    static protected Evaluable evaluateConstant(Evaluable eval) {
+        Object v;
+        try {
+            v = eval.evaluate(new Properties());
+        } catch (RuntimeException e) {
+            return eval;
+        }
+        if (v instanceof String || v instanceof Number || v instanceof Boolean) {
+            return new LiteralExpr(v);
+        }
+        return eval;
+    }
+    
+    /**
+     * Gets a key that is the same for structurally identical subexpressions, or null
+     * if the subexpression can't be shared because it contains controls or calls to
+     * functions that aren't pure.
+     */
+    static protected String getKey(Evaluable eval) {
+        if (eval instanceof LiteralExpr) {
+            Object v = ((LiteralExpr) eval)._value;
+            if (v instanceof Pattern) {
+                return "/" + ((Pattern) v).flags() + "/" + v;
+            }
+            return v == null ? "null" : v.getClass().getSimpleName() + ":" + eval.toString();
+        } else if (eval instanceof VariableExpr) {
+            return ((VariableExpr) eval)._name;
+        } else if (eval instanceof FieldAccessorExpr) {
+            FieldAccessorExpr e = (FieldAccessorExpr) eval;
+            String inner = getKey(e._inner);
+            return inner == null ? null : "(" + inner + ")." + e._fieldName;
+        } else if (eval instanceof OperatorCallExpr) {
+            OperatorCallExpr e = (OperatorCallExpr) eval;
+            return getKey(e._op, e._args);
+        } else if (eval instanceof FunctionCallExpr) {
+            FunctionCallExpr e = (FunctionCallExpr) eval;
+            return ControlFunctionRegistry.isPure(e._function) ?
+                    getKey(e._function.getClass().getName(), e._args) : null;
+        }
+        return null;
+    }
+    
+    static protected String getKey(String name, Evaluable[] args) {
+        StringBuffer sb = new StringBuffer(name);
+        sb.append('(');
+        for (int i = 0; i < args.length; i++) {
+            String key = getKey(args[i]);
+            if (key == null) {
+                return null;
+            }
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(key);
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+    
+    static protected Evaluable[] getChildren(Evaluable eval) {
+        if (eval instanceof FieldAccessorExpr) {
+            return new Evaluable[] { ((FieldAccessorExpr) eval)._inner };
+        } else if (eval instanceof OperatorCallExpr) {
+            return ((OperatorCallExpr) eval)._args;
+        } else if (eval instanceof FunctionCallExpr) {
+            return ((FunctionCallExpr) eval)._args;
+        } else if (eval instanceof ControlCallExpr) {
+            return ((ControlCallExpr) eval)._args;
+        }
+        return new Evaluable[0];
+    }
+    
+    static protected void count(Evaluable eval, Map<String, Integer> counts) {
+        if (eval instanceof FunctionCallExpr) {
+            String key = getKey(eval);
+            if (key != null) {
+                Integer n = counts.get(key);
+                counts.put(key, n == null ? 1 : n + 1);
+            }
+        }
+        for (Evaluable child : getChildren(eval)) {
+            count(child, counts);
+        }
+    }
+    
+    static protected Evaluable share(Evaluable eval, Map<String, Integer> counts, Map<String, Evaluable> shared) {
+        String key = eval instanceof FunctionCallExpr ? getKey(eval) : null;
+        if (key != null && counts.get(key) > 1) {
+            Evaluable s = shared.get(key);
+            if (s == null) {
+                FunctionCallExpr e = (FunctionCallExpr) eval;
+                s = new SharedExpr(new FunctionCallExpr(share(e._args, counts, shared), e._function));
+                shared.put(key, s);
+            }
+            return s;
+        }
+        
+        if (eval instanceof FieldAccessorExpr) {
+            FieldAccessorExpr e = (FieldAccessorExpr) eval;
+            return new FieldAccessorExpr(share(e._inner, counts, shared), e._fieldName);
+        } else if (eval instanceof OperatorCallExpr) {
+            OperatorCallExpr e = (OperatorCallExpr) eval;
+            return new OperatorCallExpr(share(e._args, counts, shared), e._op);
+        } else if (eval instanceof FunctionCallExpr) {
+            FunctionCallExpr e = (FunctionCallExpr) eval;
+            return new FunctionCallExpr(share(e._args, counts, shared), e._function);
+        } else if (eval instanceof ControlCallExpr) {
+            ControlCallExpr e = (ControlCallExpr) eval;
+            return new ControlCallExpr(share(e._args, counts, shared), e._control);
+        }
+        return eval;
+    }
+    
+    static protected Evaluable[] share(Evaluable[] evals, Map<String, Integer> counts, Map<String, Evaluable> shared) {
+        Evaluable[] result = new Evaluable[evals.length];
+        for (int i = 0; i < evals.length; i++) {
+            result[i] = share(evals[i], counts, shared);
+        }
+        return result;
+    }
+}
@@ -39,7 +39,9 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.google.refine.expr.EvalError;
+import com.google.refine.expr.BatchEvaluable;
 import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.EvaluationBatch;
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.expr.HasFields;
 
@@ -48,7 +50,7 @@ import com.google.refine.expr.HasFields;
  * e.g., "cell.value" is accessing the field named "value" on the
  * variable called "cell".
  */
-public class FieldAccessorExpr implements Evaluable {
+public class FieldAccessorExpr implements BatchEvaluable {
     final protected Evaluable     _inner;
     final protected String        _fieldName;
     
@@ -59,7 +61,25 @@ public class FieldAccessorExpr implements Evaluable {
     
     @Override
     public Object evaluate(Properties bindings) {
-        Object o = _inner.evaluate(bindings);
+        return getField(_inner.evaluate(bindings), bindings);
+    }
+    
+    @Override
+    public boolean evaluateBatch(EvaluationBatch batch, Object[] results, Properties bindings) {
+        if (!(_inner instanceof BatchEvaluable) ||
+                !((BatchEvaluable) _inner).evaluateBatch(batch, results, bindings)) {
+            return false;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (results[i] instanceof HasFields) {
+                return false; // its fields may depend on the row bound
+            }
+            results[i] = getField(results[i], bindings);
+        }
+        return true;
+    }
+    
+    protected Object getField(Object o, Properties bindings) {
         if (ExpressionUtils.isError(o)) {
             return o; // bubble the error up
         } else if (o == null) {
@@ -35,9 +35,12 @@ package com.google.refine.grel.ast;
 
 import java.util.Properties;
 
+import com.google.refine.expr.BatchEvaluable;
 import com.google.refine.expr.EvalError;
 import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.EvaluationBatch;
 import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.grel.ControlFunctionRegistry;
 import com.google.refine.grel.Function;
 
 /**
@@ -46,7 +49,7 @@ import com.google.refine.grel.Function;
  * If any argument is an error, the function is not applied, and the error is
  * the result of the expression.
  */
-public class FunctionCallExpr implements Evaluable {
+public class FunctionCallExpr implements BatchEvaluable {
     final protected Evaluable[] _args;
     final protected Function    _function;
     
@@ -65,6 +68,46 @@ public class FunctionCallExpr implements Evaluable {
             }
              args[i] = v;
         }
+        return call(bindings, args);
+    }
+    
+    /**
+     * Only pure functions are evaluated in batches, since others may look at
+     * the row bound.
+     */
+    @Override
+    public boolean evaluateBatch(EvaluationBatch batch, Object[] results, Properties bindings) {
+        if (!ControlFunctionRegistry.isPure(_function)) {
+            return false;
+        }
+        
+        int size = batch.size();
+        Object[][] argValues = new Object[_args.length][];
+        for (int a = 0; a < _args.length; a++) {
+            argValues[a] = new Object[size];
+            if (!(_args[a] instanceof BatchEvaluable) ||
+                    !((BatchEvaluable) _args[a]).evaluateBatch(batch, argValues[a], bindings)) {
+                return false;
+            }
+        }
+        
+        rows:
+        for (int i = 0; i < size; i++) {
+            Object[] args = new Object[_args.length];
+            for (int a = 0; a < args.length; a++) {
+                Object v = argValues[a][i];
+                if (ExpressionUtils.isError(v)) {
+                    results[i] = v; // bubble up the error
+                    continue rows;
+                }
+                args[a] = v;
+            }
+            results[i] = call(bindings, args);
+        }
+        return true;
+    }
+    
+    protected Object call(Properties bindings, Object[] args) {
         try {
             return _function.call(bindings, args);
         } catch (Exception e) {
@@ -33,16 +33,18 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.grel.ast;
 
+import java.util.Arrays;
 import java.util.Properties;
 
 import org.json.JSONObject;
 
-import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.BatchEvaluable;
+import com.google.refine.expr.EvaluationBatch;
 
 /**
  * An abstract syntax tree node encapsulating a literal value.
  */
-public class LiteralExpr implements Evaluable {
+public class LiteralExpr implements BatchEvaluable {
     final protected Object _value;
     
     public LiteralExpr(Object value) {
@@ -53,6 +55,12 @@ public class LiteralExpr implements Evaluable {
     public Object evaluate(Properties bindings) {
         return _value;
     }
+    
+    @Override
+    public boolean evaluateBatch(EvaluationBatch batch, Object[] results, Properties bindings) {
+        Arrays.fill(results, 0, batch.size(), _value);
+        return true;
+    }
 
     @Override
     public String toString() {
@@ -35,110 +35,187 @@ package com.google.refine.grel.ast;
 
 import java.util.Properties;
 
+import com.google.refine.expr.BatchEvaluable;
 import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.EvaluationBatch;
 import com.google.refine.expr.ExpressionUtils;
 
 /**
  * An abstract syntax tree node encapsulating an operator call, such as "+".
  */
-public class OperatorCallExpr implements Evaluable {
+public class OperatorCallExpr implements BatchEvaluable {
+    /**
+     * Operators, resolved once when the expression is parsed rather than by
+     * comparing operator strings on every evaluation.
+     */
+    static protected enum Operator {
+        ADD {
+            @Override Object apply(long n1, long n2) { return n1 + n2; }
+            @Override Object apply(double n1, double n2) { return n1 + n2; }
+        },
+        SUBTRACT {
+            @Override Object apply(long n1, long n2) { return n1 - n2; }
+            @Override Object apply(double n1, double n2) { return n1 - n2; }
+        },
+        MULTIPLY {
+            @Override Object apply(long n1, long n2) { return n1 * n2; }
+            @Override Object apply(double n1, double n2) { return n1 * n2; }
+        },
+        DIVIDE {
+            @Override Object apply(long n1, long n2) { return n1 / n2; }
+            @Override Object apply(double n1, double n2) { return n1 / n2; }
+        },
+        MODULO {
+            @Override Object apply(long n1, long n2) { return n1 % n2; }
+            @Override Object apply(double n1, double n2) { return n1 % n2; }
+        },
+        GREATER {
+            @Override Object apply(long n1, long n2) { return n1 > n2; }
+            @Override Object apply(double n1, double n2) { return n1 > n2; }
+        },
+        GREATER_OR_EQUAL {
+            @Override Object apply(long n1, long n2) { return n1 >= n2; }
+            @Override Object apply(double n1, double n2) { return n1 >= n2; }
+        },
+        LESS {
+            @Override Object apply(long n1, long n2) { return n1 < n2; }
+            @Override Object apply(double n1, double n2) { return n1 < n2; }
+        },
+        LESS_OR_EQUAL {
+            @Override Object apply(long n1, long n2) { return n1 <= n2; }
+            @Override Object apply(double n1, double n2) { return n1 <= n2; }
+        },
+        EQUAL {
+            @Override Object apply(long n1, long n2) { return n1 == n2; }
+            @Override Object apply(double n1, double n2) { return n1 == n2; }
+            @Override Object apply(Object o1, Object o2) {
+                return o1 != null ? o1.equals(o2) : o2 == null;
+            }
+        },
+        NOT_EQUAL {
+            @Override Object apply(long n1, long n2) { return n1 != n2; }
+            @Override Object apply(double n1, double n2) { return n1 != n2; }
+            @Override Object apply(Object o1, Object o2) {
+                return o1 != null ? !o1.equals(o2) : o2 != null;
+            }
+        },
+        UNKNOWN {
+            @Override Object apply(long n1, long n2) { return null; }
+            @Override Object apply(double n1, double n2) { return null; }
+        };
+        
+        abstract Object apply(long n1, long n2);
+        
+        abstract Object apply(double n1, double n2);
+        
+        /**
+         * Apply the operator to operands other than two numbers.
+         */
+        Object apply(Object o1, Object o2) {
+            return null;
+        }
+        
+        static Operator get(String op) {
+            if ("+".equals(op)) {
+                return ADD;
+            } else if ("-".equals(op)) {
+                return SUBTRACT;
+            } else if ("*".equals(op)) {
+                return MULTIPLY;
+            } else if ("/".equals(op)) {
+                return DIVIDE;
+            } else if ("%".equals(op)) {
+                return MODULO;
+            } else if (">".equals(op)) {
+                return GREATER;
+            } else if (">=".equals(op)) {
+                return GREATER_OR_EQUAL;
+            } else if ("<".equals(op)) {
+                return LESS;
+            } else if ("<=".equals(op)) {
+                return LESS_OR_EQUAL;
+            } else if ("==".equals(op)) {
+                return EQUAL;
+            } else if ("!=".equals(op)) {
+                return NOT_EQUAL;
+            }
+            return UNKNOWN;
+        }
+    }
+    
     final protected Evaluable[] _args;
     final protected String        _op;
+    final protected Operator      _operator;
 
     public OperatorCallExpr(Evaluable[] args, String op) {
         _args = args;
         _op = op;
+        _operator = Operator.get(op);
     }
 
     @Override
     public Object evaluate(Properties bindings) {
-        Object[] args = new Object[_args.length];
-        for (int i = 0; i < _args.length; i++) {
-            Object v = _args[i].evaluate(bindings);
-            if (ExpressionUtils.isError(v)) {
-                return v;
+        if (_args.length != 2) {
+            for (Evaluable arg : _args) {
+                Object v = arg.evaluate(bindings);
+                if (ExpressionUtils.isError(v)) {
+                    return v;
+                }
             }
-            args[i] = v;
+            return null;
         }
-
-        if (args.length == 2) {
-            if (args[0] != null && args[1] != null) {
-                if (isIntegral(args[0]) && isIntegral(args[1])) {
-                    long n1 = ((Number) args[0]).longValue();
-                    long n2 = ((Number) args[1]).longValue();
-
-                    if ("+".equals(_op)) {
-                        return n1 + n2;
-                    } else if ("-".equals(_op)) {
-                        return n1 - n2;
-                    } else if ("*".equals(_op)) {
-                        return n1 * n2;
-                    } else if ("/".equals(_op)) {
-                        return n1 / n2;
-                    } else if ("%".equals(_op)) {
-                        return n1 % n2;
-                    } else if (">".equals(_op)) {
-                        return n1 > n2;
-                    } else if (">=".equals(_op)) {
-                        return n1 >= n2;
-                    } else if ("<".equals(_op)) {
-                        return n1 < n2;
-                    } else if ("<=".equals(_op)) {
-                        return n1 <= n2;
-                    } else if ("==".equals(_op)) {
-                        return n1 == n2;
-                    } else if ("!=".equals(_op)) {
-                        return n1 != n2;
-                    }
-                } else if (args[0] instanceof Number && args[1] instanceof Number) {
-                    double n1 = ((Number) args[0]).doubleValue();
-                    double n2 = ((Number) args[1]).doubleValue();
-
-                    if ("+".equals(_op)) {
-                        return n1 + n2;
-                    } else if ("-".equals(_op)) {
-                        return n1 - n2;
-                    } else if ("*".equals(_op)) {
-                        return n1 * n2;
-                    } else if ("/".equals(_op)) {
-                        return n1 / n2;
-                    } else if ("%".equals(_op)) {
-                        return n1 % n2;
-                    } else if (">".equals(_op)) {
-                        return n1 > n2;
-                    } else if (">=".equals(_op)) {
-                        return n1 >= n2;
-                    } else if ("<".equals(_op)) {
-                        return n1 < n2;
-                    } else if ("<=".equals(_op)) {
-                        return n1 <= n2;
-                    } else if ("==".equals(_op)) {
-                        return n1 == n2;
-                    } else if ("!=".equals(_op)) {
-                        return n1 != n2;
-                    }
+        
+        Object arg0 = _args[0].evaluate(bindings);
+        if (ExpressionUtils.isError(arg0)) {
+            return arg0;
+        }
+        Object arg1 = _args[1].evaluate(bindings);
+        if (ExpressionUtils.isError(arg1)) {
+            return arg1;
+        }
+        return apply(arg0, arg1);
+    }
+    
+    @Override
+    public boolean evaluateBatch(EvaluationBatch batch, Object[] results, Properties bindings) {
+        if (_args.length != 2 || !(_args[0] instanceof BatchEvaluable) || !(_args[1] instanceof BatchEvaluable)) {
+            return false;
+        }
+        
+        Object[] args1 = new Object[batch.size()];
+        if (!((BatchEvaluable) _args[0]).evaluateBatch(batch, results, bindings) ||
+                !((BatchEvaluable) _args[1]).evaluateBatch(batch, args1, bindings)) {
+            return false;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Object arg0 = results[i];
+            if (!ExpressionUtils.isError(arg0)) {
+                results[i] = ExpressionUtils.isError(args1[i]) ? args1[i] : apply(arg0, args1[i]);
+            }
+        }
+        return true;
+    }
+    
+    protected Object apply(Object arg0, Object arg1) {
+        if (arg0 != null && arg1 != null) {
+            if (isIntegral(arg0) && isIntegral(arg1)) {
+                Object r = _operator.apply(((Number) arg0).longValue(), ((Number) arg1).longValue());
+                if (r != null) {
+                    return r;
                 }
-
-                if ("+".equals(_op)) {
-                    return args[0].toString() + args[1].toString();
+            } else if (arg0 instanceof Number && arg1 instanceof Number) {
+                Object r = _operator.apply(((Number) arg0).doubleValue(), ((Number) arg1).doubleValue());
+                if (r != null) {
+                    return r;
                 }
             }
 
-            if ("==".equals(_op)) {
-                if (args[0] != null) {
-                    return args[0].equals(args[1]);
-                } else {
-                    return args[1] == null;
-                }
-            } else if ("!=".equals(_op)) {
-                if (args[0] != null) {
-                    return !args[0].equals(args[1]);
-                } else {
-                    return args[1] != null;
-                }
+            if (_operator == Operator.ADD) {
+                return arg0.toString() + arg1.toString();
             }
         }
-        return null;
+
+        return _operator.apply(arg0, arg1);
     }
 
     @Override
@@ -0,0 +1,81 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.grel.ast;
+
+import java.util.Properties;
+
+import com.google.refine.expr.BindingFrame;
+import com.google.refine.expr.BatchEvaluable;
+import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.EvaluationBatch;
+
+/**
+ * An abstract syntax tree node standing for a subexpression that occurs more than
+ * once in an expression. All occurrences share this one node, which evaluates the
+ * subexpression once and remembers its value until the variables change.
+ */
+public class SharedExpr implements BatchEvaluable {
+    final protected Evaluable _inner;
+    
+    public SharedExpr(Evaluable inner) {
+        _inner = inner;
+    }
+    
+    @Override
+    public Object evaluate(Properties bindings) {
+        if (!(bindings instanceof BindingFrame)) {
+            return _inner.evaluate(bindings);
+        }
+        
+        BindingFrame frame = (BindingFrame) bindings;
+        Object v = frame.getMemoized(this);
+        if (v == BindingFrame.NOT_MEMOIZED) {
+            v = _inner.evaluate(bindings);
+            frame.memoize(this, v);
+        }
+        return v;
+    }
+    
+    @Override
+    public boolean evaluateBatch(EvaluationBatch batch, Object[] results, Properties bindings) {
+        return _inner instanceof BatchEvaluable &&
+            ((BatchEvaluable) _inner).evaluateBatch(batch, results, bindings);
+    }
+    
+    @Override
+    public String toString() {
+        return _inner.toString();
+    }
+}
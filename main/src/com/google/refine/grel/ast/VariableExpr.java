@@ -33,24 +33,50 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.grel.ast;
 
+import java.util.Arrays;
 import java.util.Properties;
 
-import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.BatchEvaluable;
+import com.google.refine.expr.BindingFrame;
+import com.google.refine.expr.EvaluationBatch;
 
 /**
  * An abstract syntax tree node encapsulating the retrieval of a variable's content.
  */
-public class VariableExpr implements Evaluable {
+public class VariableExpr implements BatchEvaluable {
     final protected String _name;
+    final protected int _slot;
     
     public VariableExpr(String name) {
         _name = name;
+        _slot = BindingFrame.getSlot(name);
     }
     
     @Override
     public Object evaluate(Properties bindings) {
+        if (_slot >= 0 && bindings instanceof BindingFrame) {
+            return ((BindingFrame) bindings).getSlot(_slot);
+        }
         return bindings.get(_name);
     }
+    
+    @Override
+    public boolean evaluateBatch(EvaluationBatch batch, Object[] results, Properties bindings) {
+        switch (_slot) {
+        case BindingFrame.VALUE:
+            System.arraycopy(batch.values, 0, results, 0, batch.size());
+            return true;
+        case BindingFrame.PROJECT:
+        case BindingFrame.TRUE:
+        case BindingFrame.FALSE:
+        case BindingFrame.PI:
+            // the same for all rows
+            Arrays.fill(results, 0, batch.size(), bindings.get(_name));
+            return true;
+        default:
+            return false;
+        }
+    }
 
     @Override
     public String toString() {
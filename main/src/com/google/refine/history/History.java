@@ -39,6 +39,7 @@ import java.io.InputStreamReader;
 import java.io.LineNumberReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -115,6 +116,8 @@ public class History implements Jsonizable {
     protected long               _projectID;
     protected List<HistoryEntry> _pastEntries;   // done changes, can be undone
     protected List<HistoryEntry> _futureEntries; // undone changes, can be redone
+    
+    transient protected HistoryJournal _journal = new HistoryJournal();
 
     public History(Project project) {
         _projectID = project.id;
@@ -136,24 +139,60 @@ public class History implements Jsonizable {
                 entry.apply(project);
                 _pastEntries.add(entry);
 
+                _journal.addRecord(HistoryJournal.ADD, entryToJournalValue(entry));
                 setModified();
 
-                // Any new change will clear all future entries.
-                List<HistoryEntry> futureEntries = _futureEntries;
-                _futureEntries = new ArrayList<HistoryEntry>();
-
-                for (HistoryEntry entry2 : futureEntries) {
-                    try {
-                        // remove residual data on disk
-                        entry2.delete();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+                // Any new change will clear all future entries. Their residual data
+                // on disk is removed after the next full save, since the journal
+                // saved so far may still need it.
+                if (!_futureEntries.isEmpty()) {
+                    _journal.discardEntries(_futureEntries);
+                    _futureEntries = new ArrayList<HistoryEntry>();
                 }
             }
         }
     }
 
+    public HistoryJournal getJournal() {
+        return _journal;
+    }
+
+    protected String entryToJournalValue(HistoryEntry entry) {
+        Properties options = new Properties();
+        options.setProperty("mode", "save");
+
+        StringWriter writer = new StringWriter();
+        entry.save(writer, options);
+        return writer.toString();
+    }
+
+    /**
+     * Reapply a record of the project's journal while the project is being loaded.
+     * 
+     * @param project
+     * @param record
+     * @throws Exception
+     */
+    synchronized public void replayJournalRecord(Project project, String record) throws Exception {
+        int equal = record.indexOf('=');
+        String type = record.substring(0, equal);
+        String value = record.substring(equal + 1);
+
+        if (HistoryJournal.ADD.equals(type)) {
+            HistoryEntry entry = HistoryEntry.load(project, value);
+            entry.apply(project);
+            _pastEntries.add(entry);
+            if (!_futureEntries.isEmpty()) {
+                _journal.discardEntries(_futureEntries);
+                _futureEntries = new ArrayList<HistoryEntry>();
+            }
+        } else if (HistoryJournal.UNDO_REDO.equals(type)) {
+            undoRedo(project, Long.parseLong(value), false);
+        } else {
+            throw new Exception("Unknown journal record " + type);
+        }
+    }
+
     protected void setModified() {
         ProjectManager.singleton.getProjectMetadata(_projectID).updateModified();
     }
@@ -167,20 +206,25 @@ public class History implements Jsonizable {
     }
 
     synchronized public void undoRedo(long lastDoneEntryID) {
+        undoRedo(ProjectManager.singleton.getProject(_projectID), lastDoneEntryID, true);
+        _journal.addRecord(HistoryJournal.UNDO_REDO, Long.toString(lastDoneEntryID));
+    }
+
+    protected void undoRedo(Project project, long lastDoneEntryID, boolean modify) {
         if (lastDoneEntryID == 0) {
             // undo all the way back to the start of the project
-            undo(_pastEntries.size());
+            undo(project, _pastEntries.size(), modify);
         } else {
             for (int i = 0; i < _pastEntries.size(); i++) {
                 if (_pastEntries.get(i).id == lastDoneEntryID) {
-                    undo(_pastEntries.size() - i - 1);
+                    undo(project, _pastEntries.size() - i - 1, modify);
                     return;
                 }
             }
 
             for (int i = 0; i < _futureEntries.size(); i++) {
                 if (_futureEntries.get(i).id == lastDoneEntryID) {
-                    redo(i + 1);
+                    redo(project, i + 1, modify);
                     return;
                 }
             }
@@ -227,15 +271,15 @@ public class History implements Jsonizable {
         return null;
     }
 
-    protected void undo(int times) {
-        Project project = ProjectManager.singleton.getProject(_projectID);
-
+    protected void undo(Project project, int times, boolean modify) {
         while (times > 0 && _pastEntries.size() > 0) {
             HistoryEntry entry = _pastEntries.get(_pastEntries.size() - 1);
 
             entry.revert(project);
 
-            setModified();
+            if (modify) {
+                setModified();
+            }
             times--;
 
             _pastEntries.remove(_pastEntries.size() - 1);
@@ -243,15 +287,15 @@ public class History implements Jsonizable {
         }
     }
 
-    protected void redo(int times) {
-        Project project = ProjectManager.singleton.getProject(_projectID);
-
+    protected void redo(Project project, int times, boolean modify) {
         while (times > 0 && _futureEntries.size() > 0) {
             HistoryEntry entry = _futureEntries.get(0);
 
             entry.apply(project);
 
-            setModified();
+            if (modify) {
+                setModified();
+            }
             times--;
 
             _pastEntries.add(entry);
@@ -0,0 +1,145 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.history;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps track of the history changes made to a project since its last full
+ * snapshot, so that saving the project can append just those changes to a
+ * journal instead of rewriting the whole project. Each record is one line: a
+ * new history entry ("add=" followed by the entry's JSON) or an undo/redo
+ * ("undoRedo=" followed by the id of the last entry left done).
+ * <p>
+ * The changes themselves are already saved in the history directory when they
+ * are applied, so replaying a record only needs to reapply them. This is why the
+ * changes of undone entries discarded by a new entry are only deleted once the
+ * project has been saved in full: until then, the journal may still replay them.
+ */
+public class HistoryJournal {
+    static final public String ADD = "add";
+    static final public String UNDO_REDO = "undoRedo";
+    
+    protected List<String> _unsavedRecords = new ArrayList<String>();
+    
+    // id of the snapshot the saved records apply to, or 0 if there is none
+    protected long  _snapshotId = 0;
+    protected long  _snapshotTime = System.currentTimeMillis();
+    protected int   _savedRecordCount = 0;
+    protected long  _savedLength = 0;
+    
+    // entries discarded since the last full save, whose changes can be deleted after the next one
+    protected List<HistoryEntry> _discardedEntries = new ArrayList<HistoryEntry>();
+    
+    synchronized public void addRecord(String type, String value) {
+        _unsavedRecords.add(type + "=" + value);
+    }
+    
+    /**
+     * Take the records not saved yet. If saving them fails, they should be given
+     * back with {@link #restoreUnsavedRecords(List)}.
+     */
+    synchronized public List<String> takeUnsavedRecords() {
+        List<String> records = _unsavedRecords;
+        _unsavedRecords = new ArrayList<String>();
+        return records;
+    }
+    
+    synchronized public void restoreUnsavedRecords(List<String> records) {
+        _unsavedRecords.addAll(0, records);
+    }
+    
+    /**
+     * Keep entries that can no longer be redone until the project is next saved in
+     * full, after which no journal refers to their changes. Until then, the project
+     * can't be saved by appending to the journal.
+     */
+    synchronized public void discardEntries(List<HistoryEntry> entries) {
+        _discardedEntries.addAll(entries);
+    }
+    
+    /**
+     * Take the entries discarded so far, once the project has been saved in full,
+     * so that their changes can be deleted.
+     */
+    synchronized public List<HistoryEntry> takeDiscardedEntries() {
+        List<HistoryEntry> entries = _discardedEntries;
+        _discardedEntries = new ArrayList<HistoryEntry>();
+        return entries;
+    }
+    
+    synchronized public void recordsSaved(List<String> records) {
+        _savedRecordCount += records.size();
+        for (String record : records) {
+            _savedLength += record.length() + 1;
+        }
+    }
+    
+    /**
+     * Start a new journal on top of a full snapshot of the project that includes
+     * all changes made so far.
+     * 
+     * @param snapshotId id of the snapshot, or 0 if no journal should be kept
+     *      until the next snapshot
+     */
+    synchronized public void startJournal(long snapshotId) {
+        _snapshotId = snapshotId;
+        _snapshotTime = System.currentTimeMillis();
+        _savedRecordCount = 0;
+        _savedLength = 0;
+        _unsavedRecords.clear();
+    }
+    
+    synchronized public int getSavedRecordCount() {
+        return _savedRecordCount;
+    }
+    
+    synchronized public long getSnapshotId() {
+        return _snapshotId;
+    }
+    
+    /**
+     * @return whether unsaved records can still be appended to the journal rather
+     *      than the project being saved in full
+     */
+    synchronized public boolean canAppend(int maxRecordCount, long maxLength, long maxAge) {
+        return _snapshotId != 0
+            && _discardedEntries.isEmpty()
+            && _savedRecordCount + _unsavedRecords.size() <= maxRecordCount
+            && _savedLength <= maxLength
+            && System.currentTimeMillis() - _snapshotTime <= maxAge;
+    }
+}
@@ -1027,6 +1027,7 @@ public class ImportingUtilities {
         
         if (!job.canceled) {
             if (exceptions.size() == 0) {
+                project.compact(); // share equal cells between rows
                 project.update(); // update all internal models, indexes, caches, etc.
                 
                 ProjectManager.singleton.registerProject(project, pm);
@@ -0,0 +1,458 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.refine.expr.EvalError;
+import com.google.refine.model.Cell;
+import com.google.refine.model.LazyRowList;
+import com.google.refine.model.Recon;
+import com.google.refine.model.Row;
+import com.google.refine.model.RowChunkSource;
+import com.google.refine.util.Pool;
+import com.google.refine.util.WorkerPool;
+
+/**
+ * Binary encoding of a project's rows, used in place of the line-based JSON
+ * rows of data.txt so that loading a project doesn't have to parse JSON.
+ * <p>
+ * The stream starts with a magic number, a format version, the row count and
+ * the chunk size. Rows follow in chunks, each prefixed with its length in bytes,
+ * its row count and the largest cell count of its rows, so that a chunk can be
+ * located and decoded without decoding the ones before it. Each row is a flag
+ * byte followed by its cell count and cells. Each cell is a type tag followed by
+ * its value; strings are written once per chunk and referred to by their index
+ * in the chunk's dictionary afterwards. Recons are written as ids into the
+ * {@link Pool} saved alongside the rows. Since chunks are independent, they are
+ * encoded and decoded in parallel on the {@link WorkerPool}.
+ * <p>
+ * Version 1 streams, which have no chunks and a single dictionary, can still
+ * be read.
+ */
+public class BinaryRowFormat {
+    static final public int MAGIC = 0x4f524f57; // "OROW"
+    static final public int VERSION = 2;
+    static final public int DEFAULT_CHUNK_SIZE = 4096;
+    
+    static final protected int HEADER_LENGTH = 16;
+    static final protected int CHUNK_HEADER_LENGTH = 12;
+    
+    static final protected int ROW_FLAGGED = 1;
+    static final protected int ROW_STARRED = 2;
+    
+    static final protected int CELL_NULL = 0;
+    static final protected int CELL_STRING = 1;
+    static final protected int CELL_STRING_REF = 2;
+    static final protected int CELL_LONG = 3;
+    static final protected int CELL_DOUBLE = 4;
+    static final protected int CELL_TRUE = 5;
+    static final protected int CELL_FALSE = 6;
+    static final protected int CELL_DATE = 7;
+    static final protected int CELL_ERROR = 8;
+    static final protected int CELL_HAS_RECON = 0x80;
+    
+    static public void save(List<Row> rows, OutputStream out, Pool pool) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+        int rowCount = rows.size();
+        int chunkSize = DEFAULT_CHUNK_SIZE;
+        
+        RowChunkSource source = null;
+        if (rows instanceof LazyRowList) {
+            // keep the chunking of the rows we were loaded from so that chunks never
+            // accessed since can be copied as is
+            source = ((LazyRowList) rows).getChunkSource();
+            if (source != null) {
+                chunkSize = source.getChunkSize();
+            }
+        }
+        
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeInt(rowCount);
+        dos.writeInt(chunkSize);
+        
+        // chunks are encoded in parallel and written in order, with only a few
+        // encoded chunks waiting to be written at any time
+        ExecutorService executor = WorkerPool.getExecutor();
+        int maxPending = WorkerPool.getParallelism() * 2;
+        LinkedList<Future<EncodedChunk>> pending = new LinkedList<Future<EncodedChunk>>();
+        try {
+            for (int from = 0; from < rowCount; from += chunkSize) {
+                int chunkIndex = from / chunkSize;
+                if (source != null && !((LazyRowList) rows).isChunkLoaded(chunkIndex)) {
+                    writePendingChunks(dos, pending, pool, 0);
+                    source.copyChunk(chunkIndex, dos, pool);
+                } else {
+                    final List<Row> chunkRows = rows.subList(from, Math.min(from + chunkSize, rowCount));
+                    pending.add(executor.submit(new Callable<EncodedChunk>() {
+                        @Override
+                        public EncodedChunk call() throws Exception {
+                            return encodeChunk(chunkRows);
+                        }
+                    }));
+                    writePendingChunks(dos, pending, pool, maxPending);
+                }
+            }
+            writePendingChunks(dos, pending, pool, 0);
+        } finally {
+            cancel(pending);
+        }
+        dos.flush();
+    }
+    
+    /**
+     * Read rows written by {@link #save(List, OutputStream, Pool)}.
+     * 
+     * @param in
+     * @param pool pool holding the recons referenced by the rows
+     * @param rows list to add the rows to
+     * @return the largest number of cells in any row
+     * @throws IOException
+     */
+    static public int load(InputStream in, final Pool pool, List<Row> rows) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(in));
+        int version = readHeader(dis);
+        
+        int count = dis.readInt();
+        int maxCellCount = 0;
+        if (version == 1) {
+            List<String> dictionary = new ArrayList<String>();
+            for (int i = 0; i < count; i++) {
+                Row row = readRow(dis, dictionary, pool);
+                rows.add(row);
+                maxCellCount = Math.max(maxCellCount, row.cells.size());
+            }
+        } else {
+            /* int chunkSize = */ dis.readInt();
+            
+            // chunks are read in order and decoded in parallel
+            ExecutorService executor = WorkerPool.getExecutor();
+            int maxPending = WorkerPool.getParallelism() * 2;
+            LinkedList<Future<Row[]>> pending = new LinkedList<Future<Row[]>>();
+            try {
+                int read = 0;
+                while (read < count) {
+                    final byte[] bytes = new byte[dis.readInt()];
+                    final int chunkRowCount = dis.readInt();
+                    maxCellCount = Math.max(maxCellCount, dis.readInt());
+                    dis.readFully(bytes);
+                    
+                    pending.add(executor.submit(new Callable<Row[]>() {
+                        @Override
+                        public Row[] call() throws Exception {
+                            return readChunk(new ByteArrayInputStream(bytes), chunkRowCount, pool);
+                        }
+                    }));
+                    addPendingChunks(rows, pending, maxPending);
+                    read += chunkRowCount;
+                }
+                addPendingChunks(rows, pending, 0);
+            } finally {
+                cancel(pending);
+            }
+        }
+        return maxCellCount;
+    }
+    
+    /**
+     * Read the magic number and version of a binary row stream.
+     * 
+     * @return the format version
+     * @throws IOException if the stream isn't in a supported format
+     */
+    static protected int readHeader(DataInputStream dis) throws IOException {
+        if (dis.readInt() != MAGIC) {
+            throw new IOException("Not a binary row file");
+        }
+        int version = dis.readInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported binary row format version " + version);
+        }
+        return version;
+    }
+    
+    static protected class EncodedChunk {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final List<Recon> recons = new ArrayList<Recon>();
+        int rowCount;
+        int maxCellCount;
+    }
+    
+    static protected EncodedChunk encodeChunk(List<Row> rows) throws IOException {
+        EncodedChunk encoded = new EncodedChunk();
+        DataOutputStream chunk = new DataOutputStream(encoded.bytes);
+        
+        Map<String, Integer> dictionary = new HashMap<String, Integer>();
+        for (Row row : rows) {
+            writeRow(chunk, row, dictionary, encoded.recons);
+            encoded.maxCellCount = Math.max(encoded.maxCellCount, row.cells.size());
+        }
+        chunk.flush();
+        encoded.rowCount = rows.size();
+        return encoded;
+    }
+    
+    static protected void writePendingChunks(
+            DataOutputStream dos, LinkedList<Future<EncodedChunk>> pending, Pool pool, int maxPending)
+            throws IOException {
+        while (pending.size() > maxPending) {
+            EncodedChunk encoded = getResult(pending.removeFirst());
+            
+            dos.writeInt(encoded.bytes.size());
+            dos.writeInt(encoded.rowCount);
+            dos.writeInt(encoded.maxCellCount);
+            encoded.bytes.writeTo(dos);
+            
+            for (Recon recon : encoded.recons) {
+                pool.pool(recon);
+            }
+        }
+    }
+    
+    static protected void addPendingChunks(List<Row> rows, LinkedList<Future<Row[]>> pending, int maxPending)
+            throws IOException {
+        while (pending.size() > maxPending) {
+            rows.addAll(Arrays.asList(getResult(pending.removeFirst())));
+        }
+    }
+    
+    static protected <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause().toString(), e.getCause());
+        }
+    }
+    
+    static protected void cancel(List<? extends Future<?>> pending) {
+        for (Future<?> future : pending) {
+            future.cancel(false);
+        }
+    }
+    
+    /**
+     * Decode the rows of a chunk, not including its header.
+     */
+    static protected Row[] readChunk(InputStream in, int rowCount, Pool pool) throws IOException {
+        DataInputStream dis = new DataInputStream(in);
+        List<String> dictionary = new ArrayList<String>();
+        
+        Row[] rows = new Row[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            rows[i] = readRow(dis, dictionary, pool);
+        }
+        return rows;
+    }
+    
+    static protected void writeRow(DataOutputStream dos, Row row, Map<String, Integer> dictionary, List<Recon> recons)
+            throws IOException {
+        dos.writeByte((row.flagged ? ROW_FLAGGED : 0) | (row.starred ? ROW_STARRED : 0));
+        
+        List<Cell> cells = row.cells;
+        int cellCount = cells.size();
+        writeVarInt(dos, cellCount);
+        for (int i = 0; i < cellCount; i++) {
+            writeCell(dos, cells.get(i), dictionary, recons);
+        }
+    }
+    
+    static protected Row readRow(DataInputStream dis, List<String> dictionary, Pool pool) throws IOException {
+        int flags = dis.readByte();
+        int cellCount = readVarInt(dis);
+        
+        Row row = new Row(cellCount);
+        row.flagged = (flags & ROW_FLAGGED) != 0;
+        row.starred = (flags & ROW_STARRED) != 0;
+        for (int i = 0; i < cellCount; i++) {
+            row.cells.add(readCell(dis, dictionary, pool));
+        }
+        return row;
+    }
+    
+    static protected void writeCell(DataOutputStream dos, Cell cell, Map<String, Integer> dictionary, List<Recon> recons)
+            throws IOException {
+        Serializable value = cell != null ? cell.value : null;
+        if (value == null) {
+            // cells without values are dropped when loading JSON rows, too
+            dos.writeByte(CELL_NULL);
+            return;
+        }
+        
+        int reconFlag = 0;
+        if (cell.recon != null) {
+            reconFlag = CELL_HAS_RECON;
+            recons.add(cell.recon);
+        }
+        
+        if (value instanceof EvalError) {
+            dos.writeByte(CELL_ERROR | reconFlag);
+            writeString(dos, ((EvalError) value).message);
+        } else if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            dos.writeByte(CELL_LONG | reconFlag);
+            dos.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            dos.writeByte(CELL_DOUBLE | reconFlag);
+            dos.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            dos.writeByte((((Boolean) value) ? CELL_TRUE : CELL_FALSE) | reconFlag);
+        } else if (value instanceof Date) {
+            dos.writeByte(CELL_DATE | reconFlag);
+            dos.writeLong(((Date) value).getTime());
+        } else if (value instanceof Calendar) {
+            dos.writeByte(CELL_DATE | reconFlag);
+            dos.writeLong(((Calendar) value).getTimeInMillis());
+        } else {
+            String s = value.toString();
+            Integer index = dictionary.get(s);
+            if (index != null) {
+                dos.writeByte(CELL_STRING_REF | reconFlag);
+                writeVarInt(dos, index);
+            } else {
+                dictionary.put(s, dictionary.size());
+                dos.writeByte(CELL_STRING | reconFlag);
+                writeString(dos, s);
+            }
+        }
+        
+        if (cell.recon != null) {
+            dos.writeLong(cell.recon.id);
+        }
+    }
+    
+    static protected Cell readCell(DataInputStream dis, List<String> dictionary, Pool pool) throws IOException {
+        int tag = dis.readByte() & 0xff;
+        
+        Serializable value;
+        switch (tag & ~CELL_HAS_RECON) {
+        case CELL_NULL:
+            return null;
+        case CELL_STRING:
+            String s = readString(dis);
+            dictionary.add(s);
+            value = s;
+            break;
+        case CELL_STRING_REF:
+            value = dictionary.get(readVarInt(dis));
+            break;
+        case CELL_LONG:
+            value = dis.readLong();
+            break;
+        case CELL_DOUBLE:
+            value = dis.readDouble();
+            break;
+        case CELL_TRUE:
+            value = Boolean.TRUE;
+            break;
+        case CELL_FALSE:
+            value = Boolean.FALSE;
+            break;
+        case CELL_DATE:
+            value = new Date(dis.readLong());
+            break;
+        case CELL_ERROR:
+            value = new EvalError(readString(dis));
+            break;
+        default:
+            throw new IOException("Unknown cell type " + tag);
+        }
+        
+        Recon recon = null;
+        if ((tag & CELL_HAS_RECON) != 0) {
+            recon = pool.getRecon(Long.toString(dis.readLong()));
+        }
+        return new Cell(value, recon);
+    }
+    
+    static protected void writeString(DataOutputStream dos, String s) throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        writeVarInt(dos, bytes.length);
+        dos.write(bytes);
+    }
+    
+    static protected String readString(DataInputStream dis) throws IOException {
+        byte[] bytes = new byte[readVarInt(dis)];
+        dis.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+    
+    static protected void writeVarInt(DataOutputStream dos, int n) throws IOException {
+        while ((n & ~0x7f) != 0) {
+            dos.writeByte((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        dos.writeByte(n);
+    }
+    
+    static protected int readVarInt(DataInputStream dis) throws IOException {
+        int n = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = dis.readByte() & 0xff;
+            n |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return n;
+    }
+}
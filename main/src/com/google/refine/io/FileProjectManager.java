@@ -167,13 +167,38 @@ public class FileProjectManager extends ProjectManager {
         tin.close();
     }
 
+    /**
+     * Export a project directory. The exported data.zip is saved afresh from
+     * the project in memory, so it includes any changes kept in the project's
+     * journal, and its rows are saved as JSON rather than in binary form so that
+     * the archive can be imported by older versions too.
+     */
     @Override
     public void exportProject(long projectId, TarOutputStream tos) throws IOException {
         File dir = this.getProjectDir(projectId);
-        this.tarDir("", dir, tos);
+        Project project = getProject(projectId);
+        if (project == null) {
+            this.tarDir("", dir, tos);
+            return;
+        }
+
+        File tempFile = File.createTempFile("export-" + projectId, ".zip");
+        try {
+            synchronized (project) {
+                ProjectUtilities.saveToFile(project, tempFile, false);
+            }
+            this.tarDir("", dir, tos, true);
+            this.tarFile("data.zip", tempFile, tos);
+        } finally {
+            tempFile.delete();
+        }
     }
 
     protected void tarDir(String relative, File dir, TarOutputStream tos) throws IOException{
+        tarDir(relative, dir, tos, false);
+    }
+
+    protected void tarDir(String relative, File dir, TarOutputStream tos, boolean skipProjectData) throws IOException{
         File[] files = dir.listFiles();
         for (File file : files) {
             if (!file.isHidden()) {
@@ -181,21 +206,32 @@ public class FileProjectManager extends ProjectManager {
 
                 if (file.isDirectory()) {
                     tarDir(path + File.separator, file, tos);
-                } else {
-                    TarEntry entry = new TarEntry(path);
+                } else if (ProjectUtilities.isRowCacheFile(path)) {
+                    // derived from data.zip when the project is opened
+                } else if (!skipProjectData || !isProjectDataFile(path)) {
+                    tarFile(path, file, tos);
+                }
+            }
+        }
+    }
 
-                    entry.setMode(TarEntry.DEFAULT_FILE_MODE);
-                    entry.setSize(file.length());
-                    entry.setModTime(file.lastModified());
+    protected void tarFile(String path, File file, TarOutputStream tos) throws IOException {
+        TarEntry entry = new TarEntry(path);
 
-                    tos.putNextEntry(entry);
+        entry.setMode(TarEntry.DEFAULT_FILE_MODE);
+        entry.setSize(file.length());
+        entry.setModTime(file.lastModified());
 
-                    copyFile(file, tos);
+        tos.putNextEntry(entry);
 
-                    tos.closeEntry();
-                }
-            }
-        }
+        copyFile(file, tos);
+
+        tos.closeEntry();
+    }
+
+    static protected boolean isProjectDataFile(String path) {
+        return "data.zip".equals(path) || "data.temp.zip".equals(path) || "data.old.zip".equals(path)
+            || ProjectUtilities.JOURNAL_FILE.equals(path);
     }
 
     protected void copyFile(File file, OutputStream os) throws IOException {
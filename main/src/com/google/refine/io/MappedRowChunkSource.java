@@ -0,0 +1,213 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.model.CellDictionary;
+import com.google.refine.model.Row;
+import com.google.refine.model.RowChunkSource;
+import com.google.refine.util.Pool;
+
+/**
+ * Reads the chunks of an uncompressed file in {@link BinaryRowFormat} by memory
+ * mapping them on demand. Opening the file only reads the chunk headers to
+ * index where each chunk starts.
+ */
+public class MappedRowChunkSource implements RowChunkSource {
+    final static Logger logger = LoggerFactory.getLogger("MappedRowChunkSource");
+    
+    final protected RandomAccessFile _file;
+    final protected FileChannel _channel;
+    final protected Pool _pool;
+    protected Pool _lastPool;
+    
+    protected int _rowCount;
+    protected int _chunkSize;
+    protected long[] _offsets;
+    protected int[] _lengths;
+    protected int[] _rowCounts;
+    
+    /**
+     * @param file file holding rows in {@link BinaryRowFormat}
+     * @param pool pool holding the recons referenced by the rows
+     * @return the source, or null if the file is in a format version without chunks
+     * @throws IOException
+     */
+    static public MappedRowChunkSource open(File file, Pool pool) throws IOException {
+        MappedRowChunkSource source = new MappedRowChunkSource(file, pool);
+        try {
+            if (source.readIndex()) {
+                return source;
+            }
+        } catch (IOException e) {
+            source.close();
+            throw e;
+        }
+        source.close();
+        return null;
+    }
+    
+    protected MappedRowChunkSource(File file, Pool pool) throws IOException {
+        _file = new RandomAccessFile(file, "r");
+        _channel = _file.getChannel();
+        _pool = pool;
+    }
+    
+    protected boolean readIndex() throws IOException {
+        ByteBuffer header = read(0, BinaryRowFormat.HEADER_LENGTH);
+        if (header.getInt() != BinaryRowFormat.MAGIC) {
+            throw new IOException("Not a binary row file");
+        }
+        int version = header.getInt();
+        if (version < 2) {
+            return false;
+        } else if (version > BinaryRowFormat.VERSION) {
+            throw new IOException("Unsupported binary row format version " + version);
+        }
+        _rowCount = header.getInt();
+        _chunkSize = header.getInt();
+        
+        int chunkCount = (_rowCount + _chunkSize - 1) / _chunkSize;
+        _offsets = new long[chunkCount];
+        _lengths = new int[chunkCount];
+        _rowCounts = new int[chunkCount];
+        
+        long offset = BinaryRowFormat.HEADER_LENGTH;
+        for (int c = 0; c < chunkCount; c++) {
+            ByteBuffer chunkHeader = read(offset, BinaryRowFormat.CHUNK_HEADER_LENGTH);
+            _offsets[c] = offset;
+            _lengths[c] = chunkHeader.getInt();
+            _rowCounts[c] = chunkHeader.getInt();
+            
+            offset += BinaryRowFormat.CHUNK_HEADER_LENGTH + _lengths[c];
+        }
+        return true;
+    }
+    
+    protected ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (_channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of binary row file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+    
+    @Override
+    public int getRowCount() {
+        return _rowCount;
+    }
+    
+    @Override
+    public int getChunkSize() {
+        return _chunkSize;
+    }
+    
+    @Override
+    public Row[] readChunk(int chunkIndex) throws IOException {
+        MappedByteBuffer buffer = _channel.map(MapMode.READ_ONLY,
+            _offsets[chunkIndex] + BinaryRowFormat.CHUNK_HEADER_LENGTH, _lengths[chunkIndex]);
+        
+        Row[] rows = BinaryRowFormat.readChunk(new ByteBufferInputStream(buffer), _rowCounts[chunkIndex], _pool);
+        
+        CellDictionary dictionary = new CellDictionary();
+        for (Row row : rows) {
+            dictionary.compact(row);
+        }
+        return rows;
+    }
+    
+    @Override
+    public void copyChunk(int chunkIndex, OutputStream out, Pool pool) throws IOException {
+        if (pool != _lastPool) {
+            // we don't know which recons the chunk references without decoding it
+            pool.poolAll(_pool);
+            _lastPool = pool;
+        }
+        
+        MappedByteBuffer buffer = _channel.map(MapMode.READ_ONLY,
+            _offsets[chunkIndex], BinaryRowFormat.CHUNK_HEADER_LENGTH + _lengths[chunkIndex]);
+        
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        out.write(bytes);
+    }
+    
+    @Override
+    public void close() {
+        try {
+            _file.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close binary row file", e);
+        }
+    }
+    
+    static protected class ByteBufferInputStream extends InputStream {
+        final protected ByteBuffer _buffer;
+        
+        ByteBufferInputStream(ByteBuffer buffer) {
+            _buffer = buffer;
+        }
+        
+        @Override
+        public int read() {
+            return _buffer.hasRemaining() ? (_buffer.get() & 0xff) : -1;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!_buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, _buffer.remaining());
+            _buffer.get(b, off, len);
+            return len;
+        }
+    }
+}
@@ -34,8 +34,18 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.google.refine.io;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -44,21 +54,66 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.refine.ProjectManager;
+import com.google.refine.RefineServlet;
+import com.google.refine.history.HistoryEntry;
+import com.google.refine.history.HistoryJournal;
+import com.google.refine.model.LazyRowList;
 import com.google.refine.model.Project;
+import com.google.refine.model.RowChunkSource;
+import com.google.refine.util.ParsingUtilities;
 import com.google.refine.util.Pool;
 
 
 public class ProjectUtilities {
     final static Logger logger = LoggerFactory.getLogger("project_utilities");
 
+    final static protected String ROW_CACHE_PREFIX = "rows-";
+    final static protected String ROW_CACHE_SUFFIX = ".cache";
+
+    final static protected String JOURNAL_FILE = "journal.txt";
+
+    // Save a project in full rather than appending to its journal once the journal
+    // has this many changes, is this long or is this old
+    final static protected int MAX_JOURNAL_RECORDS = 100;
+    final static protected long MAX_JOURNAL_LENGTH = 1024 * 1024; // 1 MB
+    final static protected long MAX_JOURNAL_AGE = 1000 * 60 * 60; // 1 hour
+
+    final static protected Random s_random = new Random();
+
+    /**
+     * Save a project. If only history changes were made since the project was last
+     * saved in full, and the journal of such changes hasn't grown too large or old,
+     * they are appended to the journal. Otherwise the whole project is saved and
+     * the journal is started over.
+     * 
+     * @param project
+     * @throws IOException
+     */
     synchronized public static void save(Project project) throws IOException {
         synchronized (project) {
             long id = project.id;
             File dir = ((FileProjectManager)ProjectManager.singleton).getProjectDir(id);
 
+            HistoryJournal journal = project.history.getJournal();
+            if (journal.canAppend(MAX_JOURNAL_RECORDS, MAX_JOURNAL_LENGTH, MAX_JOURNAL_AGE)) {
+                List<String> records = journal.takeUnsavedRecords();
+                try {
+                    appendToJournal(dir, journal, records);
+
+                    project.setLastSave();
+
+                    logger.info("Saved {} change(s) of project '{}' to its journal", records.size(), id);
+                    return;
+                } catch (IOException e) {
+                    logger.warn("Failed to append to journal of project " + id + ", saving it in full", e);
+                    journal.restoreUnsavedRecords(records);
+                }
+            }
+
+            long snapshotId = generateSnapshotId();
             File tempFile = new File(dir, "data.temp.zip");
             try {
-                saveToFile(project, tempFile);
+                saveToFile(project, tempFile, true, snapshotId);
             } catch (IOException e) {
                 e.printStackTrace();
                 logger.warn("Failed to save project {}", id);
@@ -82,30 +137,173 @@ public class ProjectUtilities {
                 oldFile.delete();
             }
 
+            // the snapshot includes all journaled changes; a journal left behind
+            // is ignored anyway since its snapshot id no longer matches
+            new File(dir, JOURNAL_FILE).delete();
+            journal.startJournal(snapshotId);
+
+            // nothing refers to the changes of discarded entries anymore
+            for (HistoryEntry entry : journal.takeDiscardedEntries()) {
+                try {
+                    entry.delete();
+                } catch (Exception e) {
+                    logger.warn("Failed to delete the change of history entry " + entry.id, e);
+                }
+            }
+
             project.setLastSave();
 
             logger.info("Saved project '{}'",id);
         }
     }
 
+    static protected long generateSnapshotId() {
+        long snapshotId;
+        do {
+            snapshotId = s_random.nextLong();
+        } while (snapshotId == 0);
+        return snapshotId;
+    }
+
+    static protected void appendToJournal(File dir, HistoryJournal journal, List<String> records)
+            throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        // the first records after a snapshot start a new file, overwriting any stale journal
+        boolean append = journal.getSavedRecordCount() > 0;
+        FileOutputStream fos = new FileOutputStream(new File(dir, JOURNAL_FILE), append);
+        try {
+            Writer writer = new OutputStreamWriter(fos, "UTF-8");
+            if (!append) {
+                writer.write(RefineServlet.VERSION); writer.write('\n');
+                writer.write("snapshot="); writer.write(Long.toString(journal.getSnapshotId())); writer.write('\n');
+            }
+            for (String record : records) {
+                writer.write(record); writer.write('\n');
+            }
+            writer.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        journal.recordsSaved(records);
+    }
+
+    /**
+     * Replay the journal of a project on top of the snapshot it was loaded from.
+     * If a change can't be replayed, the project is left with the changes before
+     * it, and the journal is renamed so that it is neither replayed nor deleted.
+     * 
+     * @param project
+     * @param dir
+     * @param snapshotId id of the snapshot, or 0 if it has none
+     */
+    static protected void replayJournal(Project project, File dir, long snapshotId) {
+        HistoryJournal journal = project.history.getJournal();
+        journal.startJournal(snapshotId);
+
+        File file = new File(dir, JOURNAL_FILE);
+        if (snapshotId == 0 || !file.exists()) {
+            return;
+        }
+
+        List<String> replayed = new ArrayList<String>();
+        try {
+            LineNumberReader reader = new LineNumberReader(
+                new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                /* String version = */ reader.readLine();
+                if (!("snapshot=" + snapshotId).equals(reader.readLine())) {
+                    // the journal of an older snapshot
+                    return;
+                }
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    project.history.replayJournalRecord(project, line);
+                    replayed.add(line);
+                }
+            } finally {
+                reader.close();
+            }
+            journal.recordsSaved(replayed);
+
+            if (replayed.size() > 0) {
+                logger.info("Replayed {} change(s) from the journal of project {}", replayed.size(), project.id);
+            }
+        } catch (Exception e) {
+            // The project keeps the changes replayed so far, and the next save will
+            // be a full one, which deletes the journal. Keep the journal aside so
+            // that the changes that couldn't be replayed aren't lost with it.
+            File failedFile = new File(dir, "journal-failed-" + System.currentTimeMillis() + ".txt");
+            boolean kept = file.renameTo(failedFile);
+            logger.warn("Failed to replay the journal of project " + project.id
+                    + " after " + replayed.size() + " change(s); "
+                    + (kept ? "the journal was kept as " + failedFile : "the journal could not be kept"), e);
+
+            journal.startJournal(0);
+        }
+    }
+
     protected static void saveToFile(Project project, File file) throws IOException  {
+        saveToFile(project, file, true);
+    }
+
+    /**
+     * Save a project to a zip file.
+     * 
+     * @param project
+     * @param file
+     * @param binaryRows true to save the rows in {@link BinaryRowFormat}, false to
+     *      save them as JSON lines in data.txt like older versions did
+     * @throws IOException
+     */
+    protected static void saveToFile(Project project, File file, boolean binaryRows) throws IOException  {
+        saveToFile(project, file, binaryRows, 0);
+    }
+
+    /**
+     * @param snapshotId id identifying this save to the project's journal, or 0
+     */
+    protected static void saveToFile(Project project, File file, boolean binaryRows, long snapshotId)
+            throws IOException  {
         ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
         try {
             Pool pool = new Pool();
 
             out.putNextEntry(new ZipEntry("data.txt"));
             try {
-                project.saveToOutputStream(out, pool);
+                project.saveToOutputStream(out, pool, !binaryRows);
             } finally {
                 out.closeEntry();
             }
 
+            if (binaryRows) {
+                out.putNextEntry(new ZipEntry("rows.bin"));
+                try {
+                    BinaryRowFormat.save(project.rows, out, pool);
+                } finally {
+                    out.closeEntry();
+                }
+            }
+
             out.putNextEntry(new ZipEntry("pool.txt"));
             try {
                 pool.save(out);
             } finally {
                 out.closeEntry();
             }
+
+            if (snapshotId != 0) {
+                out.putNextEntry(new ZipEntry("snapshot.txt"));
+                try {
+                    out.write(Long.toString(snapshotId).getBytes("UTF-8"));
+                } finally {
+                    out.closeEntry();
+                }
+            }
         } finally {
             out.close();
         }
@@ -147,20 +345,126 @@ public class ProjectUtilities {
             long id
     ) throws Exception {
         ZipFile zipFile = new ZipFile(file);
+        long snapshotId = 0;
+        Project project;
         try {
-            Pool pool = new Pool();
-            ZipEntry poolEntry = zipFile.getEntry("pool.txt");
-            if (poolEntry != null) {
-                pool.load(zipFile.getInputStream(poolEntry));
-            } // else, it's a legacy project file
-
-            return Project.loadFromInputStream(
-                    zipFile.getInputStream(zipFile.getEntry("data.txt")),
-                    id,
-                    pool
-            );
+            ZipEntry snapshotEntry = zipFile.getEntry("snapshot.txt");
+            if (snapshotEntry != null) {
+                snapshotId = Long.parseLong(
+                    ParsingUtilities.inputStreamToString(zipFile.getInputStream(snapshotEntry)).trim());
+            }
+
+            project = loadFromZipFile(file, zipFile, id);
         } finally {
             zipFile.close();
         }
+
+        replayJournal(project, file.getParentFile(), snapshotId);
+        return project;
+    }
+
+    static protected Project loadFromZipFile(
+            File file,
+            ZipFile zipFile,
+            long id
+    ) throws Exception {
+        Pool pool = new Pool();
+        ZipEntry poolEntry = zipFile.getEntry("pool.txt");
+        if (poolEntry != null) {
+            pool.load(zipFile.getInputStream(poolEntry));
+        } // else, it's a legacy project file
+
+        ZipEntry rowsEntry = zipFile.getEntry("rows.bin");
+        if (rowsEntry != null && isLazyLoadingEnabled()) {
+            RowChunkSource source = openRowCache(file, zipFile, rowsEntry, pool);
+            if (source != null) {
+                try {
+                    return Project.loadFromInputStream(
+                            zipFile.getInputStream(zipFile.getEntry("data.txt")),
+                            id,
+                            pool,
+                            new LazyRowList(source)
+                    );
+                } catch (Exception e) {
+                    source.close();
+                    throw e;
+                }
+            } // else, the rows were saved in a format that can't be loaded lazily
+        }
+
+        Project project = Project.loadFromInputStream(
+                zipFile.getInputStream(zipFile.getEntry("data.txt")),
+                id,
+                pool
+        );
+
+        if (rowsEntry != null) {
+            int maxCellCount = BinaryRowFormat.load(zipFile.getInputStream(rowsEntry), pool, project.rows);
+            project.columnModel.setMaxCellIndex(maxCellCount - 1);
+            project.compact();
+            project.update();
+        } // else, the rows were saved as JSON in data.txt
+
+        return project;
+    }
+
+    /**
+     * Whether projects should be opened with their rows memory mapped and decoded
+     * only when accessed, rather than loaded into memory all at once.
+     */
+    static protected boolean isLazyLoadingEnabled() {
+        Object v = ProjectManager.singleton.getPreferenceStore().get("project.rows.lazyLoading");
+        return v != null && Boolean.parseBoolean(v.toString());
+    }
+
+    /**
+     * Extract the binary rows of a project file into an uncompressed cache file
+     * next to it, unless that was already done for the same rows, and open it for
+     * memory mapping. The cache is named after the CRC and size of the rows, as
+     * the project file's modification time may not change between two saves on
+     * file systems with a coarse time resolution.
+     */
+    static protected RowChunkSource openRowCache(File file, ZipFile zipFile, ZipEntry rowsEntry, Pool pool)
+            throws IOException {
+        File dir = file.getParentFile();
+        String cacheName = ROW_CACHE_PREFIX + Long.toHexString(rowsEntry.getCrc()) + "-" + rowsEntry.getSize()
+            + ROW_CACHE_SUFFIX;
+        File cacheFile = new File(dir, cacheName);
+
+        if (!cacheFile.exists()) {
+            File tempFile = new File(dir, "rows.temp");
+            InputStream in = zipFile.getInputStream(rowsEntry);
+            try {
+                OutputStream out = new FileOutputStream(tempFile);
+                try {
+                    byte[] buffer = new byte[65536];
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, count);
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+            if (!tempFile.renameTo(cacheFile)) {
+                tempFile.delete();
+                throw new IOException("Failed to create row cache " + cacheFile);
+            }
+
+            // caches of older versions of the project file; where the OS doesn't allow
+            // deleting a file that is still mapped, it stays until the next cache is made
+            for (File oldCacheFile : dir.listFiles()) {
+                if (isRowCacheFile(oldCacheFile.getName()) && !cacheName.equals(oldCacheFile.getName())) {
+                    oldCacheFile.delete();
+                }
+            }
+        }
+        return MappedRowChunkSource.open(cacheFile, pool);
+    }
+
+    static public boolean isRowCacheFile(String name) {
+        return name.startsWith(ROW_CACHE_PREFIX) && name.endsWith(ROW_CACHE_SUFFIX);
     }
 }
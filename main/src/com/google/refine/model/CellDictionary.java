@@ -0,0 +1,140 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary-encodes the cells of a project column by column. Cells are immutable,
+ * so rows holding equal values in the same column can share a single {@link Cell}
+ * instance instead of each carrying its own Cell and boxed value. Only cells
+ * without a recon and with a String, Number or Boolean value are shared, since
+ * recons and dates are mutable.
+ * <p>
+ * A column whose dictionary grows past the configured limit is considered to
+ * hold mostly distinct values and is no longer encoded.
+ */
+public class CellDictionary {
+    static public final int DEFAULT_MAX_ENTRIES_PER_COLUMN = 1 << 16;
+    
+    final protected int _maxEntriesPerColumn;
+    final protected List<Map<Serializable, Cell>> _columns = new ArrayList<Map<Serializable, Cell>>();
+    final protected List<Boolean> _overflowed = new ArrayList<Boolean>();
+    
+    protected long _sharedCount = 0;
+    
+    public CellDictionary() {
+        this(DEFAULT_MAX_ENTRIES_PER_COLUMN);
+    }
+    
+    public CellDictionary(int maxEntriesPerColumn) {
+        _maxEntriesPerColumn = maxEntriesPerColumn;
+    }
+    
+    /**
+     * Return the shared instance of a cell equal to the given one in the given
+     * column, registering the cell as that instance if it's the first seen.
+     * 
+     * @param cellIndex index of the cell in its row
+     * @param cell cell to encode, may be null
+     * @return the shared cell, or the given cell if it can't be shared
+     */
+    public Cell intern(int cellIndex, Cell cell) {
+        if (cell == null || cell.recon != null || !isShareable(cell.value)) {
+            return cell;
+        }
+        
+        while (_columns.size() <= cellIndex) {
+            _columns.add(new HashMap<Serializable, Cell>());
+            _overflowed.add(Boolean.FALSE);
+        }
+        if (_overflowed.get(cellIndex)) {
+            return cell;
+        }
+        
+        Map<Serializable, Cell> dictionary = _columns.get(cellIndex);
+        Cell shared = dictionary.get(cell.value);
+        if (shared != null) {
+            _sharedCount++;
+            return shared;
+        }
+        
+        if (dictionary.size() >= _maxEntriesPerColumn) {
+            // high cardinality column, encoding it would only cost memory
+            dictionary.clear();
+            _overflowed.set(cellIndex, Boolean.TRUE);
+        } else {
+            dictionary.put(cell.value, cell);
+        }
+        return cell;
+    }
+    
+    /**
+     * Replace the cells of a row with their shared instances and release the
+     * row's spare cell capacity.
+     * 
+     * @param row
+     */
+    public void compact(Row row) {
+        List<Cell> cells = row.cells;
+        int count = cells.size();
+        for (int i = 0; i < count; i++) {
+            Cell cell = cells.get(i);
+            Cell shared = intern(i, cell);
+            if (shared != cell) {
+                cells.set(i, shared);
+            }
+        }
+        if (cells instanceof ArrayList) {
+            ((ArrayList<Cell>) cells).trimToSize();
+        }
+    }
+    
+    /**
+     * @return number of cells replaced by a shared instance so far
+     */
+    public long getSharedCount() {
+        return _sharedCount;
+    }
+    
+    static protected boolean isShareable(Object value) {
+        return value instanceof String || value instanceof Long || value instanceof Double
+            || value instanceof Integer || value instanceof Boolean;
+    }
+}
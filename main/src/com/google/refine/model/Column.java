@@ -35,6 +35,7 @@ package com.google.refine.model;
 
 import java.io.Writer;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Properties;
 
@@ -56,6 +57,15 @@ public class Column implements Jsonizable {
     
     transient protected Map<String, Object> _precomputes;
     
+    /**
+     * Marks precomputes that only depend on the values found in the column, and
+     * not on the rows holding them, such as keys computed from values. These are
+     * kept by {@link Column#clearPrecomputes()}, and must check for themselves
+     * which of their entries still apply.
+     */
+    static public interface ValueKeyedPrecompute {
+    }
+    
     public Column(int cellIndex, String originalName) {
         _cellIndex = cellIndex;
         _originalName = _name = originalName;
@@ -113,27 +123,33 @@ public class Column implements Jsonizable {
     }
     
     /**
-     * Clear all cached precomputed values.
+     * Clear all cached precomputed values, except for those that are a
+     * {@link ValueKeyedPrecompute}.
      * <p>
      * If you are modifying something that requires this to be called, you
      * probably also need to call
      * {@link InterProjectModel#flushJoinsInvolvingProjectColumn(long, String)}.
      * e.g. ProjectManager.singleton.getInterProjectModel().flushJoinsInvolvingProjectColumn(project.id, column.getName())
      */
-    public void clearPrecomputes() {
+    public synchronized void clearPrecomputes() {
         if (_precomputes != null) {
-            _precomputes.clear();
+            Iterator<Object> i = _precomputes.values().iterator();
+            while (i.hasNext()) {
+                if (!(i.next() instanceof ValueKeyedPrecompute)) {
+                    i.remove();
+                }
+            }
         }
     }
     
-    public Object getPrecompute(String key) {
+    public synchronized Object getPrecompute(String key) {
         if (_precomputes != null) {
             return _precomputes.get(key);
         }
         return null;
     }
     
-    public void setPrecompute(String key, Object value) {
+    public synchronized void setPrecompute(String key, Object value) {
         if (_precomputes == null) {
             _precomputes = new HashMap<String, Object>();
         }
@@ -0,0 +1,260 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.model;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A list of rows that decodes them from a {@link RowChunkSource} only when they
+ * are first accessed, one chunk at a time. Decoded chunks are kept, so rows
+ * modified in place by changes stay modified.
+ * <p>
+ * Replacing a row keeps the list lazy. Inserting or removing rows shifts row
+ * indices away from the chunks they were saved in, so the first such
+ * modification decodes all remaining rows, releases the source and turns this
+ * into a plain array list.
+ */
+public class LazyRowList extends AbstractList<Row> implements RandomAccess {
+    protected RowChunkSource _source;
+    final protected int _chunkSize;
+    final protected int _rowCount;
+    final protected AtomicReferenceArray<Row[]> _chunks;
+    
+    protected volatile List<Row> _rows;
+    
+    public LazyRowList(RowChunkSource source) {
+        _source = source;
+        _chunkSize = source.getChunkSize();
+        _rowCount = source.getRowCount();
+        _chunks = new AtomicReferenceArray<Row[]>((_rowCount + _chunkSize - 1) / _chunkSize);
+    }
+    
+    /**
+     * @return the source rows are still decoded from, or null once all rows have
+     *      been decoded into a plain list
+     */
+    public RowChunkSource getChunkSource() {
+        return _rows == null ? _source : null;
+    }
+    
+    public boolean isChunkLoaded(int chunkIndex) {
+        return _rows != null || _chunks.get(chunkIndex) != null;
+    }
+    
+    /**
+     * @return number of rows decoded so far
+     */
+    public int getLoadedRowCount() {
+        List<Row> rows = _rows;
+        if (rows != null) {
+            return rows.size();
+        }
+        int count = 0;
+        for (int c = 0; c < _chunks.length(); c++) {
+            Row[] chunk = _chunks.get(c);
+            if (chunk != null) {
+                count += chunk.length;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Get a view of this list for reading only. Rows whose chunk hasn't been
+     * decoded yet are decoded into the view rather than kept in this list, so a
+     * sequential scan through the view doesn't load the whole project. Rows
+     * obtained from the view must not be modified, and the view must not be
+     * shared between threads.
+     */
+    public List<Row> readOnlyView() {
+        return new AbstractList<Row>() {
+            Row[] scratch;
+            int scratchIndex = -1;
+            
+            @Override
+            public Row get(int index) {
+                List<Row> rows = _rows;
+                if (rows != null) {
+                    return rows.get(index);
+                }
+                checkIndex(index);
+                
+                int chunkIndex = index / _chunkSize;
+                Row[] chunk = _chunks.get(chunkIndex);
+                if (chunk == null) {
+                    if (scratchIndex != chunkIndex) {
+                        synchronized (LazyRowList.this) {
+                            if (_rows != null) {
+                                return _rows.get(index);
+                            }
+                            chunk = _chunks.get(chunkIndex);
+                            if (chunk != null) {
+                                return chunk[index % _chunkSize];
+                            }
+                            scratch = readChunk(chunkIndex);
+                            scratchIndex = chunkIndex;
+                        }
+                    }
+                    chunk = scratch;
+                }
+                return chunk[index % _chunkSize];
+            }
+            
+            @Override
+            public int size() {
+                return LazyRowList.this.size();
+            }
+        };
+    }
+    
+    @Override
+    public Row get(int index) {
+        List<Row> rows = _rows;
+        if (rows != null) {
+            return rows.get(index);
+        }
+        checkIndex(index);
+        
+        int chunkIndex = index / _chunkSize;
+        Row[] chunk = _chunks.get(chunkIndex);
+        if (chunk == null) {
+            synchronized (this) {
+                if (_rows != null) {
+                    return _rows.get(index);
+                }
+                chunk = loadChunk(chunkIndex);
+            }
+        }
+        return chunk[index % _chunkSize];
+    }
+    
+    @Override
+    public int size() {
+        List<Row> rows = _rows;
+        return rows != null ? rows.size() : _rowCount;
+    }
+    
+    @Override
+    synchronized public Row set(int index, Row row) {
+        if (_rows != null) {
+            return _rows.set(index, row);
+        }
+        checkIndex(index);
+        
+        Row[] chunk = loadChunk(index / _chunkSize);
+        Row old = chunk[index % _chunkSize];
+        chunk[index % _chunkSize] = row;
+        return old;
+    }
+    
+    @Override
+    synchronized public void add(int index, Row row) {
+        materialize().add(index, row);
+        modCount++;
+    }
+    
+    @Override
+    synchronized public Row remove(int index) {
+        Row row = materialize().remove(index);
+        modCount++;
+        return row;
+    }
+    
+    @Override
+    synchronized public void clear() {
+        release();
+        _rows = new ArrayList<Row>();
+        modCount++;
+    }
+    
+    /**
+     * Release the source without decoding the rows not accessed so far. The list
+     * must not be used afterwards.
+     */
+    synchronized public void dispose() {
+        release();
+    }
+    
+    protected Row[] loadChunk(int chunkIndex) {
+        Row[] chunk = _chunks.get(chunkIndex);
+        if (chunk == null) {
+            chunk = readChunk(chunkIndex);
+            _chunks.set(chunkIndex, chunk);
+        }
+        return chunk;
+    }
+    
+    protected Row[] readChunk(int chunkIndex) {
+        try {
+            return _source.readChunk(chunkIndex);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read rows of chunk " + chunkIndex, e);
+        }
+    }
+    
+    protected List<Row> materialize() {
+        if (_rows == null) {
+            List<Row> rows = new ArrayList<Row>(_rowCount);
+            for (int c = 0; c < _chunks.length(); c++) {
+                rows.addAll(Arrays.asList(loadChunk(c)));
+            }
+            release();
+            _rows = rows;
+        }
+        return _rows;
+    }
+    
+    protected void release() {
+        if (_source != null) {
+            _source.close();
+            _source = null;
+        }
+        for (int c = 0; c < _chunks.length(); c++) {
+            _chunks.set(c, null);
+        }
+    }
+    
+    protected void checkIndex(int index) {
+        if (index < 0 || index >= _rowCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + _rowCount);
+        }
+    }
+}
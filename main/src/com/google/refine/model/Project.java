@@ -71,7 +71,7 @@ public class Project {
     }
     
     final public long                       id;
-    final public List<Row>                  rows = new ArrayList<Row>();
+    final public List<Row>                  rows;
     
     final public ColumnModel                columnModel = new ColumnModel();
     final public RecordModel                recordModel = new RecordModel();
@@ -84,17 +84,36 @@ public class Project {
 
     final static Logger logger = LoggerFactory.getLogger("project");
 
+    // Number of rows sampled, and approximate object sizes, for estimating memory usage
+    static protected final int MEMORY_SAMPLE_SIZE = 100;
+    static protected final long ROW_OVERHEAD = 80;
+    static protected final long REFERENCE_SIZE = 8;
+    static protected final long CELL_OVERHEAD = 24;
+    static protected final long STRING_OVERHEAD = 56;
+    static protected final long BOXED_VALUE_SIZE = 24;
+    static protected final long RECON_SIZE = 400;
+
     static public long generateID() {
         return System.currentTimeMillis() + Math.round(Math.random() * 1000000000000L);
     }
 
     public Project() {
         id = generateID();
+        rows = new ArrayList<Row>();
         history = new History(this);
     }
 
     protected Project(long id) {
+        this(id, new ArrayList<Row>());
+    }
+
+    /**
+     * @param id
+     * @param rows list holding the project's rows, e.g. a {@link LazyRowList}
+     */
+    protected Project(long id, List<Row> rows) {
         this.id = id;
+        this.rows = rows;
         this.history = new History(this);
     }
     
@@ -110,6 +129,9 @@ public class Project {
             }
         }
         ProjectManager.singleton.getInterProjectModel().flushJoinsInvolvingProject(this.id);
+        if (rows instanceof LazyRowList) {
+            ((LazyRowList) rows).dispose();
+        }
         // The rest of the project should get garbage collected when we return.
     }
 
@@ -128,6 +150,20 @@ public class Project {
     }
 
     public void saveToOutputStream(OutputStream out, Pool pool) throws IOException {
+        saveToOutputStream(out, pool, true);
+    }
+
+    /**
+     * Save the project in the line-based text format.
+     * 
+     * @param out
+     * @param pool pool collecting the recons referenced by the rows
+     * @param includeRows false if the rows are saved separately, e.g. in
+     *      binary form, in which case only the column model, history and
+     *      overlay models are written
+     * @throws IOException
+     */
+    public void saveToOutputStream(OutputStream out, Pool pool, boolean includeRows) throws IOException {
         for (OverlayModel overlayModel : overlayModels.values()) {
             try {
                 overlayModel.onBeforeSave(this);
@@ -141,6 +177,9 @@ public class Project {
             Properties options = new Properties();
             options.setProperty("mode", "save");
             options.put("pool", pool);
+            if (!includeRows) {
+                options.setProperty("omitRows", "true");
+            }
 
             saveToWriter(writer, options);
         } finally {
@@ -177,27 +216,46 @@ public class Project {
             writer.write('\n');
         }
         
-        writer.write("rowCount="); writer.write(Integer.toString(rows.size())); writer.write('\n');
-        for (Row row : rows) {
-            row.save(writer, options); writer.write('\n');
+        if (!"true".equals(options.getProperty("omitRows"))) {
+            writer.write("rowCount="); writer.write(Integer.toString(rows.size())); writer.write('\n');
+            for (Row row : rows) {
+                row.save(writer, options); writer.write('\n');
+            }
         }
     }
     
     static public Project loadFromInputStream(InputStream is, long id, Pool pool) throws Exception {
-        return loadFromReader(new LineNumberReader(new InputStreamReader(is, "UTF-8")), id, pool);
+        return loadFromInputStream(is, id, pool, new ArrayList<Row>());
+    }
+    
+    /**
+     * Load a project saved in the line-based text format.
+     * 
+     * @param is
+     * @param id
+     * @param pool
+     * @param rows list to hold the project's rows; it may already contain the
+     *      rows if they were saved separately
+     * @return the project
+     * @throws Exception
+     */
+    static public Project loadFromInputStream(InputStream is, long id, Pool pool, List<Row> rows) throws Exception {
+        return loadFromReader(new LineNumberReader(new InputStreamReader(is, "UTF-8")), id, pool, rows);
     }
     
     static private Project loadFromReader(
         LineNumberReader reader,
         long id,
-        Pool pool
+        Pool pool,
+        List<Row> rows
     ) throws Exception {
         long start = System.currentTimeMillis();
         
         // version of Refine which wrote the file
         /* String version = */ reader.readLine();
         
-        Project project = new Project(id);
+        Project project = new Project(id, rows);
+        CellDictionary dictionary = new CellDictionary();
         int maxCellCount = 0;
         
         String line;
@@ -222,6 +280,7 @@ public class Project {
                     line = reader.readLine();
                     if (line != null) {
                         Row row = Row.load(line, pool);
+                        dictionary.compact(row);
                         project.rows.add(row);
                         maxCellCount = Math.max(maxCellCount, row.cells.size());
                     }
@@ -250,12 +309,73 @@ public class Project {
         logger.info(
             "Loaded project {} from disk in {} sec(s)",id,Long.toString((System.currentTimeMillis() - start) / 1000)
         );
+        logger.debug("Shared {} cells of project {}", dictionary.getSharedCount(), id);
 
         project.update();
 
         return project;
     }
 
+    /**
+     * Roughly estimate how many bytes of heap the project's rows take up, by
+     * extrapolating from a sample of rows. Cells shared by dictionary encoding are
+     * counted once per row, so this errs on the high side. Rows of a lazily loaded
+     * project that have not been read yet are not counted.
+     */
+    public long estimateMemoryUsage() {
+        List<Row> sampleRows = rows;
+        int rowCount = rows.size();
+        int stride;
+        if (rows instanceof LazyRowList) {
+            rowCount = ((LazyRowList) rows).getLoadedRowCount();
+            sampleRows = ((LazyRowList) rows).readOnlyView();
+            stride = 1; // stay within the first chunk
+        } else {
+            stride = Math.max(1, rowCount / MEMORY_SAMPLE_SIZE);
+        }
+        if (rowCount == 0) {
+            return 0;
+        }
+        
+        long sampleSize = 0;
+        int sampleCount = 0;
+        for (int i = 0; i < sampleRows.size() && sampleCount < MEMORY_SAMPLE_SIZE; i += stride) {
+            sampleSize += estimateMemoryUsage(sampleRows.get(i));
+            sampleCount++;
+        }
+        return sampleSize * rowCount / sampleCount;
+    }
+    
+    static protected long estimateMemoryUsage(Row row) {
+        long size = ROW_OVERHEAD + REFERENCE_SIZE * row.cells.size();
+        for (Cell cell : row.cells) {
+            if (cell != null) {
+                size += CELL_OVERHEAD;
+                if (cell.value instanceof String) {
+                    size += STRING_OVERHEAD + 2L * ((String) cell.value).length();
+                } else if (cell.value != null) {
+                    size += BOXED_VALUE_SIZE;
+                }
+                if (cell.recon != null) {
+                    size += RECON_SIZE;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Dictionary-encode the cells of all rows so that equal, recon-less cells in a
+     * column share a single instance. Cells are immutable, so changes applied
+     * afterwards are unaffected.
+     */
+    public void compact() {
+        CellDictionary dictionary = new CellDictionary();
+        for (Row row : rows) {
+            dictionary.compact(row);
+        }
+    }
+
     public void update() {
         columnModel.update();
         recordModel.update(this);
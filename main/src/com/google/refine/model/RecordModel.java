@@ -79,6 +79,10 @@ public class RecordModel implements Jsonizable {
 
     protected List<RowDependency> _rowDependencies;
     protected List<Record> _records;
+    
+    // Index of the record each row belongs to, so that looking up the record of
+    // a row doesn't go through row dependencies
+    protected int[] _recordIndicesOfRows;
 
     public RowDependency getRowDependency(int rowIndex) {
         return _rowDependencies != null && rowIndex >= 0 && rowIndex < _rowDependencies.size() ?
@@ -95,14 +99,9 @@ public class RecordModel implements Jsonizable {
     }
 
     public Record getRecordOfRow(int rowIndex) {
-        RowDependency rd = getRowDependency(rowIndex);
-        if (rd != null) {
-            if (rd.recordIndex < 0) {
-                rd = getRowDependency(rd.contextRows.get(0));
-            }
-            return getRecord(rd.recordIndex);
-        }
-        return null;
+        int[] recordIndices = _recordIndicesOfRows;
+        return recordIndices != null && rowIndex >= 0 && rowIndex < recordIndices.length ?
+                getRecord(recordIndices[rowIndex]) : null;
     }
 
     @Override
@@ -133,7 +132,8 @@ public class RecordModel implements Jsonizable {
 
     synchronized public void update(Project project) {
         synchronized (project) {
-            List<Row> rows = project.rows;
+            List<Row> rows = project.rows instanceof LazyRowList ?
+                ((LazyRowList) project.rows).readOnlyView() : project.rows;
             int rowCount = rows.size();
 
             ColumnModel columnModel = project.columnModel;
@@ -208,6 +208,12 @@ public class RecordModel implements Jsonizable {
 
                 _records.add(new Record(recordRowIndex, rowCount, recordIndex++));
             }
+            
+            int[] recordIndices = new int[rowCount];
+            for (Record record : _records) {
+                Arrays.fill(recordIndices, record.fromRowIndex, record.toRowIndex, record.recordIndex);
+            }
+            _recordIndicesOfRows = recordIndices;
         }
     }
 
@@ -0,0 +1,71 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.google.refine.util.Pool;
+
+/**
+ * A store of saved rows that can be decoded a chunk of consecutive rows at a
+ * time, backing a {@link LazyRowList}.
+ */
+public interface RowChunkSource {
+    public int getRowCount();
+    
+    /**
+     * @return number of rows per chunk; only the last chunk may hold fewer
+     */
+    public int getChunkSize();
+    
+    public Row[] readChunk(int chunkIndex) throws IOException;
+    
+    /**
+     * Copy the encoded form of a chunk as is, so that unchanged rows can be
+     * saved again without being decoded.
+     * 
+     * @param chunkIndex
+     * @param out
+     * @param pool pool to add the recons referenced by the chunk to
+     * @throws IOException
+     */
+    public void copyChunk(int chunkIndex, OutputStream out, Pool pool) throws IOException;
+    
+    /**
+     * Release the underlying storage. No chunk can be read afterwards.
+     */
+    public void close();
+}
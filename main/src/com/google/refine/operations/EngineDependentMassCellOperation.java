@@ -40,6 +40,7 @@ import org.json.JSONObject;
 
 import com.google.refine.browsing.Engine;
 import com.google.refine.browsing.FilteredRows;
+import com.google.refine.browsing.MergeableRowVisitor;
 import com.google.refine.browsing.RowVisitor;
 import com.google.refine.history.Change;
 import com.google.refine.history.HistoryEntry;
@@ -88,6 +89,62 @@ abstract public class EngineDependentMassCellOperation extends EngineDependentOp
             cellChanges, column.getName(), _updateRowContextDependencies);
     }
     
+    /**
+     * Creates the visitor that collects the operation's cell changes. Operations whose
+     * change to a row only depends on that row should return a
+     * {@link CellChangeRowVisitor}, so that the rows of large projects can be visited
+     * in parallel.
+     */
     abstract protected RowVisitor createRowVisitor(Project project, List<CellChange> cellChanges, long historyEntryID) throws Exception;
     abstract protected String createDescription(Column column, List<CellChange> cellChanges);
+    
+    /**
+     * A row visitor for changes that each depend only on their own row. Partial
+     * visitors, which may run on other threads, collect changes into lists of
+     * their own. These get appended in row order, so the resulting change is the
+     * same as if the rows were visited one after the other.
+     */
+    abstract static protected class CellChangeRowVisitor implements MergeableRowVisitor {
+        final protected List<CellChange> cellChanges;
+        
+        protected CellChangeRowVisitor(List<CellChange> cellChanges) {
+            this.cellChanges = cellChanges;
+        }
+        
+        /**
+         * Create a visitor with the same configuration, but its own bindings,
+         * adding changes to the given list.
+         */
+        abstract protected CellChangeRowVisitor createPartial(List<CellChange> cellChanges);
+        
+        @Override
+        public void start(Project project) {
+            // nothing to do
+        }
+        
+        @Override
+        public void end(Project project) {
+            flush();
+        }
+        
+        /**
+         * Visitors that hold on to rows, for instance to evaluate expressions on
+         * them in batches, should add the changes for those rows here.
+         */
+        protected void flush() {
+            // nothing to do
+        }
+        
+        @Override
+        public MergeableRowVisitor createPartial() {
+            return createPartial(new ArrayList<CellChange>());
+        }
+        
+        @Override
+        public void merge(MergeableRowVisitor partial) {
+            CellChangeRowVisitor visitor = (CellChangeRowVisitor) partial;
+            visitor.flush();
+            cellChanges.addAll(visitor.cellChanges);
+        }
+    }
 }
@@ -187,7 +187,6 @@ public class MassEditOperation extends EngineDependentMassCellOperation {
         Column column = project.columnModel.getColumnByName(_columnName);
         
         Evaluable eval = MetaParser.parse(_expression);
-        Properties bindings = ExpressionUtils.createBindings(project);
         
         Map<String, Serializable> fromTo = new HashMap<String, Serializable>();
         Serializable fromBlankTo = null;
@@ -207,75 +206,73 @@ public class MassEditOperation extends EngineDependentMassCellOperation {
             }
         }
         
-        return new RowVisitor() {
-            int                         cellIndex;
-            Properties                  bindings;
-            List<CellChange>            cellChanges;
-            Evaluable                   eval;
-            
-            Map<String, Serializable>   fromTo;
-            Serializable                fromBlankTo;
-            Serializable                fromErrorTo;
-            
-            public RowVisitor init(
-                int cellIndex, 
-                Properties bindings, 
-                List<CellChange> cellChanges, 
-                Evaluable eval, 
-                Map<String, Serializable> fromTo,
-                Serializable fromBlankTo,
-                Serializable fromErrorTo
-            ) {
-                this.cellIndex = cellIndex;
-                this.bindings = bindings;
-                this.cellChanges = cellChanges;
-                this.eval = eval;
-                this.fromTo = fromTo;
-                this.fromBlankTo = fromBlankTo;
-                this.fromErrorTo = fromErrorTo;
-                return this;
-            }
+        return new MassEditRowVisitor(
+            project, column.getCellIndex(), eval, fromTo, fromBlankTo, fromErrorTo, cellChanges);
+    }
+    
+    protected class MassEditRowVisitor extends CellChangeRowVisitor {
+        final Project                   project;
+        final int                       cellIndex;
+        final Evaluable                 eval;
+        final Properties                bindings;
+        
+        final Map<String, Serializable> fromTo;
+        final Serializable              fromBlankTo;
+        final Serializable              fromErrorTo;
+        
+        MassEditRowVisitor(
+            Project project,
+            int cellIndex,
+            Evaluable eval,
+            Map<String, Serializable> fromTo,
+            Serializable fromBlankTo,
+            Serializable fromErrorTo,
+            List<CellChange> cellChanges
+        ) {
+            super(cellChanges);
+            this.project = project;
+            this.cellIndex = cellIndex;
+            this.eval = eval;
+            this.bindings = ExpressionUtils.createBindings(project);
+            this.fromTo = fromTo;
+            this.fromBlankTo = fromBlankTo;
+            this.fromErrorTo = fromErrorTo;
+        }
+        
+        @Override
+        protected CellChangeRowVisitor createPartial(List<CellChange> cellChanges) {
+            return new MassEditRowVisitor(project, cellIndex, eval, fromTo, fromBlankTo, fromErrorTo, cellChanges);
+        }
+        
+        @Override
+        public boolean visit(Project project, int rowIndex, Row row) {
+            Cell cell = row.getCell(cellIndex);
+            Cell newCell = null;
             
-            @Override
-            public void start(Project project) {
-                // nothing to do
-            }
-
-            @Override
-            public void end(Project project) {
-                // nothing to do
-            }
+            ExpressionUtils.bind(bindings, row, rowIndex, _columnName, cell);
             
-            @Override
-            public boolean visit(Project project, int rowIndex, Row row) {
-                Cell cell = row.getCell(cellIndex);
-                Cell newCell = null;
-                
-                ExpressionUtils.bind(bindings, row, rowIndex, _columnName, cell);
-                
-                Object v = eval.evaluate(bindings);
-                if (ExpressionUtils.isError(v)) {
-                    if (fromErrorTo != null) {
-                        newCell = new Cell(fromErrorTo, (cell != null) ? cell.recon : null);
-                    }
-                } else if (ExpressionUtils.isNonBlankData(v)) {
-                    String from = v.toString();
-                    Serializable to = fromTo.get(from);
-                    if (to != null) {
-                        newCell = new Cell(to, (cell != null) ? cell.recon : null);
-                    }
-                } else {
-                    if (fromBlankTo != null) {
-                        newCell = new Cell(fromBlankTo, (cell != null) ? cell.recon : null);
-                    }
+            Object v = eval.evaluate(bindings);
+            if (ExpressionUtils.isError(v)) {
+                if (fromErrorTo != null) {
+                    newCell = new Cell(fromErrorTo, (cell != null) ? cell.recon : null);
                 }
-                
-                if (newCell != null) {
-                    CellChange cellChange = new CellChange(rowIndex, cellIndex, cell, newCell);
-                    cellChanges.add(cellChange);
+            } else if (ExpressionUtils.isNonBlankData(v)) {
+                String from = v.toString();
+                Serializable to = fromTo.get(from);
+                if (to != null) {
+                    newCell = new Cell(to, (cell != null) ? cell.recon : null);
+                }
+            } else {
+                if (fromBlankTo != null) {
+                    newCell = new Cell(fromBlankTo, (cell != null) ? cell.recon : null);
                 }
-                return false;
             }
-        }.init(column.getCellIndex(), bindings, cellChanges, eval, fromTo, fromBlankTo, fromErrorTo);
+            
+            if (newCell != null) {
+                CellChange cellChange = new CellChange(rowIndex, cellIndex, cell, newCell);
+                cellChanges.add(cellChange);
+            }
+            return false;
+        }
     }
 }
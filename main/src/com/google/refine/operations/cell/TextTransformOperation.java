@@ -43,6 +43,8 @@ import org.json.JSONWriter;
 
 import com.google.refine.browsing.RowVisitor;
 import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.EvaluationBatch;
+import com.google.refine.expr.ExpressionResultCache;
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.expr.MetaParser;
 import com.google.refine.expr.WrappedCell;
@@ -142,91 +144,103 @@ public class TextTransformOperation extends EngineDependentMassCellOperation {
     protected RowVisitor createRowVisitor(Project project, List<CellChange> cellChanges, long historyEntryID) throws Exception {
         Column column = project.columnModel.getColumnByName(_columnName);
         
-        Evaluable eval = MetaParser.parse(_expression);
-        Properties bindings = ExpressionUtils.createBindings(project);
+        Evaluable eval = ExpressionResultCache.wrap(
+            project, column.getCellIndex(), _expression, MetaParser.parse(_expression));
         
-        return new RowVisitor() {
-            int                 cellIndex;
-            Properties             bindings;
-            List<CellChange>     cellChanges;
-            Evaluable             eval;
-            
-            public RowVisitor init(int cellIndex, Properties bindings, List<CellChange> cellChanges, Evaluable eval) {
-                this.cellIndex = cellIndex;
-                this.bindings = bindings;
-                this.cellChanges = cellChanges;
-                this.eval = eval;
-                return this;
-            }
-            
-            @Override
-            public void start(Project project) {
-                // nothing to do
+        return new TextTransformRowVisitor(project, column.getCellIndex(), eval, cellChanges);
+    }
+    
+    protected class TextTransformRowVisitor extends CellChangeRowVisitor {
+        final Project       project;
+        final int           cellIndex;
+        final Evaluable     eval;
+        final Properties    bindings;
+        final EvaluationBatch batch;
+        
+        TextTransformRowVisitor(Project project, int cellIndex, Evaluable eval, List<CellChange> cellChanges) {
+            super(cellChanges);
+            this.project = project;
+            this.cellIndex = cellIndex;
+            this.eval = eval;
+            this.bindings = ExpressionUtils.createBindings(project);
+            this.batch = new EvaluationBatch(_columnName, cellIndex);
+        }
+        
+        @Override
+        protected CellChangeRowVisitor createPartial(List<CellChange> cellChanges) {
+            return new TextTransformRowVisitor(project, cellIndex, eval, cellChanges);
+        }
+        
+        @Override
+        public boolean visit(Project project, int rowIndex, Row row) {
+            batch.add(rowIndex, row);
+            if (batch.isFull()) {
+                flush();
             }
-
-            @Override
-            public void end(Project project) {
-                // nothing to do
+            return false;
+        }
+        
+        @Override
+        protected void flush() {
+            if (batch.size() > 0) {
+                batch.evaluate(eval, bindings);
+                for (int i = 0; i < batch.size(); i++) {
+                    processResult(batch.rowIndices[i], batch.rows[i], batch.cells[i], batch.results[i]);
+                }
+                batch.clear();
             }
+        }
+        
+        protected void processResult(int rowIndex, Row row, Cell cell, Object o) {
+            Cell newCell = null;
 
-            @Override
-            public boolean visit(Project project, int rowIndex, Row row) {
-                Cell cell = row.getCell(cellIndex);
-                Cell newCell = null;
-
-                Object oldValue = cell != null ? cell.value : null;
-
-                ExpressionUtils.bind(bindings, row, rowIndex, _columnName, cell);
+            Object oldValue = cell != null ? cell.value : null;
 
-                Object o = eval.evaluate(bindings);
-                if (o == null) {
-                    if (oldValue != null) {
-                        CellChange cellChange = new CellChange(rowIndex, cellIndex, cell, null);
-                        cellChanges.add(cellChange);
-                    }
+            if (o == null) {
+                if (oldValue != null) {
+                    CellChange cellChange = new CellChange(rowIndex, cellIndex, cell, null);
+                    cellChanges.add(cellChange);
+                }
+            } else {
+                if (o instanceof Cell) {
+                    newCell = (Cell) o;
+                } else if (o instanceof WrappedCell) {
+                    newCell = ((WrappedCell) o).cell;
                 } else {
-                    if (o instanceof Cell) {
-                        newCell = (Cell) o;
-                    } else if (o instanceof WrappedCell) {
-                        newCell = ((WrappedCell) o).cell;
-                    } else {
-                        Serializable newValue = ExpressionUtils.wrapStorable(o);
-                        if (ExpressionUtils.isError(newValue)) {
-                            if (_onError == OnError.KeepOriginal) {
-                                return false;
-                            } else if (_onError == OnError.SetToBlank) {
-                                newValue = null;
-                            }
+                    Serializable newValue = ExpressionUtils.wrapStorable(o);
+                    if (ExpressionUtils.isError(newValue)) {
+                        if (_onError == OnError.KeepOriginal) {
+                            return;
+                        } else if (_onError == OnError.SetToBlank) {
+                            newValue = null;
                         }
+                    }
+                    
+                    if (!ExpressionUtils.sameValue(oldValue, newValue)) {
+                        newCell = new Cell(newValue, (cell != null) ? cell.recon : null);
                         
-                        if (!ExpressionUtils.sameValue(oldValue, newValue)) {
-                            newCell = new Cell(newValue, (cell != null) ? cell.recon : null);
-                            
-                            if (_repeat) {
-                                for (int i = 0; i < _repeatCount; i++) {
-                                    ExpressionUtils.bind(bindings, row, rowIndex, _columnName, newCell);
-                                    
-                                    newValue = ExpressionUtils.wrapStorable(eval.evaluate(bindings));
-                                    if (ExpressionUtils.isError(newValue)) {
-                                        break;
-                                    } else if (ExpressionUtils.sameValue(newCell.value, newValue)) {
-                                        break;
-                                    }
-                                    
-                                    newCell = new Cell(newValue, newCell.recon);
+                        if (_repeat) {
+                            for (int i = 0; i < _repeatCount; i++) {
+                                ExpressionUtils.bind(bindings, row, rowIndex, _columnName, newCell);
+                                
+                                newValue = ExpressionUtils.wrapStorable(eval.evaluate(bindings));
+                                if (ExpressionUtils.isError(newValue)) {
+                                    break;
+                                } else if (ExpressionUtils.sameValue(newCell.value, newValue)) {
+                                    break;
                                 }
+                                
+                                newCell = new Cell(newValue, newCell.recon);
                             }
                         }
                     }
-                    
-                    if (newCell != null) {
-                        CellChange cellChange = new CellChange(rowIndex, cellIndex, cell, newCell);
-                        cellChanges.add(cellChange);
-                    }
                 }
                 
-                return false;
+                if (newCell != null) {
+                    CellChange cellChange = new CellChange(rowIndex, cellIndex, cell, newCell);
+                    cellChanges.add(cellChange);
+                }
             }
-        }.init(column.getCellIndex(), bindings, cellChanges, eval);
+        }
     }
 }
@@ -59,6 +59,7 @@ import com.google.refine.model.changes.ColumnSplitChange;
 import com.google.refine.operations.EngineDependentOperation;
 import com.google.refine.operations.OperationRegistry;
 import com.google.refine.util.JSONUtilities;
+import com.google.refine.util.PatternCache;
 
 public class ColumnSplitOperation extends EngineDependentOperation {
     final protected String     _columnName;
@@ -208,7 +209,7 @@ public class ColumnSplitOperation extends EngineDependentOperation {
                 };
             };
         } else if (_regex) {
-            Pattern pattern = Pattern.compile(_separator);
+            Pattern pattern = PatternCache.getPattern(_separator);
             
             rowVisitor = new ColumnSplitRowVisitor(column.getCellIndex(), columnNames, rowIndices, tuples) {
                 Pattern _pattern;
@@ -34,8 +34,10 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.google.refine.process;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.json.JSONException;
@@ -46,8 +48,19 @@ import com.google.refine.history.HistoryEntry;
 import com.google.refine.history.HistoryProcess;
 
 public class ProcessManager implements Jsonizable {
+    // Maximum number of processes whose results can be fetched by id
+    static final protected int MAX_RETAINED_PROCESSES = 16;
+    
     protected List<Process> _processes = Collections.synchronizedList(new LinkedList<Process>());
     protected List<Exception> _latestExceptions = null;
+    protected Map<Long, Process> _retainedProcesses = new LinkedHashMap<Long, Process>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Process> eldest) {
+            return size() > MAX_RETAINED_PROCESSES;
+        }
+    };
     
     public ProcessManager() {
         
@@ -103,6 +116,25 @@ public class ProcessManager implements Jsonizable {
         return false;
     }
     
+    /**
+     * Keep a process, even after it is done, so that its results can be fetched
+     * by id. Only the most recently retained or fetched processes are kept.
+     */
+    public void retainProcess(long id, Process process) {
+        synchronized (_retainedProcesses) {
+            _retainedProcesses.put(id, process);
+        }
+    }
+    
+    /**
+     * Gets a process kept with retainProcess(), or null.
+     */
+    public Process getRetainedProcess(long id) {
+        synchronized (_retainedProcesses) {
+            return _retainedProcesses.get(id);
+        }
+    }
+    
     public boolean hasPending() {
         return _processes.size() > 0;
     }
@@ -0,0 +1,96 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled regular expressions, shared by expression functions, facets and operations
+ * that get their patterns as strings, so that a pattern evaluated on every row is only
+ * compiled once.
+ */
+public class PatternCache {
+    static final protected int MAX_PATTERNS = 256;
+    
+    // Characters with a special meaning in regular expressions
+    static final protected String METACHARACTERS = "\\^$.|?*+()[]{}";
+    
+    static final protected Map<String, Pattern> s_patterns = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+            return size() > MAX_PATTERNS;
+        }
+    };
+    
+    static public Pattern getPattern(String regex) {
+        return getPattern(regex, 0);
+    }
+    
+    /**
+     * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid
+     */
+    static public Pattern getPattern(String regex, int flags) {
+        String key = flags + ":" + regex;
+        synchronized (s_patterns) {
+            Pattern pattern = s_patterns.get(key);
+            if (pattern != null) {
+                return pattern;
+            }
+        }
+        
+        Pattern pattern = Pattern.compile(regex, flags);
+        synchronized (s_patterns) {
+            s_patterns.put(key, pattern);
+        }
+        return pattern;
+    }
+    
+    /**
+     * Whether the regular expression has no special characters, and so only
+     * matches its own text.
+     */
+    static public boolean isLiteral(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            if (METACHARACTERS.indexOf(regex.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
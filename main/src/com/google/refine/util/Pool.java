@@ -74,6 +74,16 @@ public class Pool implements Jsonizable {
         poolReconCandidates(recon);
     }
     
+    /**
+     * Pool all recons of another pool, e.g. those referenced by rows that are
+     * saved again without being decoded.
+     */
+    public void poolAll(Pool pool) {
+        for (Recon recon : pool.recons.values()) {
+            pool(recon);
+        }
+    }
+    
     public void poolReconCandidates(Recon recon) {
         if (recon.match != null) {
             pool(recon.match);
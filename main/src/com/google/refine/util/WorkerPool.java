@@ -0,0 +1,140 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of daemon threads, one per processor, shared by the work that is split
+ * across processors, such as decoding and encoding project rows.
+ * <p>
+ * Tasks running in the pool must not submit further tasks to it and wait for
+ * them, since all threads could end up waiting.
+ */
+public class WorkerPool {
+    static private ExecutorService s_executor;
+    
+    static public int getParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+    
+    synchronized static public ExecutorService getExecutor() {
+        if (s_executor == null) {
+            s_executor = Executors.newFixedThreadPool(getParallelism(), new ThreadFactory() {
+                final AtomicInteger _count = new AtomicInteger();
+                
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new WorkerThread(r, "refine-worker-" + _count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return s_executor;
+    }
+    
+    /**
+     * Whether the calling thread is one of the pool's, and so must not wait for
+     * other tasks in the pool.
+     */
+    static public boolean isWorkerThread() {
+        return Thread.currentThread() instanceof WorkerThread;
+    }
+    
+    /**
+     * Run tasks on the pool and wait for all of them to finish. When called from
+     * one of the pool's threads, the tasks run one after the other on that thread
+     * instead. Exceptions thrown by a task are rethrown, wrapped into runtime
+     * exceptions if they are checked.
+     * 
+     * @return the tasks' results, in the same order as the tasks
+     */
+    static public <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            if (tasks.size() <= 1 || getParallelism() <= 1 || isWorkerThread()) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+            } else {
+                List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+                try {
+                    for (Callable<T> task : tasks) {
+                        futures.add(getExecutor().submit(task));
+                    }
+                    for (Future<T> future : futures) {
+                        results.add(future.get());
+                    }
+                } finally {
+                    for (Future<T> future : futures) {
+                        future.cancel(false);
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            throw asRuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (Exception e) {
+            throw asRuntimeException(e);
+        }
+        return results;
+    }
+    
+    static protected RuntimeException asRuntimeException(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new RuntimeException(t);
+    }
+    
+    static protected class WorkerThread extends Thread {
+        WorkerThread(Runnable r, String name) {
+            super(r, name);
+        }
+    }
+}
@@ -33,6 +33,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.tests;
 
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -199,6 +200,88 @@ public class ProjectManagerTests extends RefineTest {
     }
     //TODO test canSaveAllModifiedWithRaceCondition
 
+    @Test
+    public void canEvictLeastRecentlyUsed(){
+        whenGetSaveTimes(project, metadata, -10); //already saved
+        registerProject();
+        Project project2 = spy(new ProjectStub(2));
+        doReturn(project2).when(SUT).loadProject(2);
+        when(project.estimateMemoryUsage()).thenReturn(1024L);
+        SUT.getPreferenceStore().put("project.cache.maxMemoryMB", "0");
+
+        Assert.assertSame(SUT.getProject(2), project2);
+
+        verify(project, times(1)).dispose();
+        verify(SUT, never()).saveProject(project);
+        verify(project2, never()).dispose();
+        Assert.assertEquals(SUT.getCacheMisses(), 1);
+        Assert.assertEquals(SUT.getCacheEvictions(), 1);
+
+        Assert.assertSame(SUT.getProject(2), project2);
+        Assert.assertEquals(SUT.getCacheHits(), 1);
+    }
+
+    @Test
+    public void canSaveBeforeEvicting(){
+        whenGetSaveTimes(project, metadata); //modified since the last save
+        registerProject();
+        Project project2 = spy(new ProjectStub(2));
+        doReturn(project2).when(SUT).loadProject(2);
+        when(project.estimateMemoryUsage()).thenReturn(1024L);
+        SUT.getPreferenceStore().put("project.cache.maxMemoryMB", "0");
+
+        SUT.getProject(2);
+
+        verify(SUT, times(1)).saveProject(project);
+        verify(project, times(1)).dispose();
+        Assert.assertEquals(SUT.getCacheEvictions(), 1);
+    }
+
+    @Test
+    public void keepsRecentlyAccessedProjects(){
+        whenGetSaveTimes(project, metadata, -10);
+        registerProject();
+        Project project2 = spy(new ProjectStub(2));
+        doReturn(project2).when(SUT).loadProject(2);
+        when(project.estimateMemoryUsage()).thenReturn(1024L);
+        SUT.getPreferenceStore().put("project.cache.maxMemoryMB", "0");
+
+        Assert.assertSame(SUT.getProject(project.id), project);
+        SUT.getProject(2);
+
+        verify(project, never()).dispose();
+        Assert.assertEquals(SUT.getCacheEvictions(), 0);
+    }
+
+    @Test
+    public void keepsProjectsWithPendingProcesses(){
+        whenGetSaveTimes(project, metadata, -10);
+        registerProject();
+        Project project2 = spy(new ProjectStub(2));
+        doReturn(project2).when(SUT).loadProject(2);
+        when(project.estimateMemoryUsage()).thenReturn(1024L);
+        when(procmgr.hasPending()).thenReturn(true);
+        SUT.getPreferenceStore().put("project.cache.maxMemoryMB", "0");
+
+        SUT.getProject(2);
+
+        verify(project, never()).dispose();
+        Assert.assertEquals(SUT.getCacheEvictions(), 0);
+    }
+
+    @Test
+    public void keepsProjectsWithinBudget(){
+        whenGetSaveTimes(project, metadata, -10);
+        registerProject();
+        Project project2 = spy(new ProjectStub(2));
+        doReturn(project2).when(SUT).loadProject(2);
+
+        SUT.getProject(2);
+
+        verify(project, never()).dispose();
+        Assert.assertEquals(SUT.getCacheEvictions(), 0);
+    }
+
     //-------------helpers-------------
 
     protected void registerProject(){
@@ -0,0 +1,132 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.tests.browsing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Properties;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.ProjectMetadata;
+import com.google.refine.browsing.Engine;
+import com.google.refine.io.FileProjectManager;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.ModelException;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+import com.google.refine.tests.util.TestUtils;
+
+public class FacetScanPlannerTests extends RefineTest {
+
+    static final String ENGINE_JSON = "{\"facets\":[" +
+        "{\"type\":\"list\",\"name\":\"A\",\"columnName\":\"A\",\"expression\":\"value\",\"omitBlank\":false,\"omitError\":false," +
+        "\"selection\":[{\"v\":{\"v\":\"a1\",\"l\":\"a1\"}}],\"selectBlank\":false,\"selectError\":false,\"invert\":false}," +
+        "{\"type\":\"list\",\"name\":\"B\",\"columnName\":\"B\",\"expression\":\"value\",\"omitBlank\":false,\"omitError\":false," +
+        "\"selection\":[{\"v\":{\"v\":\"b2\",\"l\":\"b2\"}}],\"selectBlank\":true,\"selectError\":false,\"invert\":false}," +
+        "{\"type\":\"range\",\"name\":\"N\",\"columnName\":\"N\",\"expression\":\"value\",\"from\":2,\"to\":7," +
+        "\"selectNumeric\":true,\"selectNonNumeric\":true,\"selectBlank\":true,\"selectError\":true}," +
+        "{\"type\":\"text\",\"name\":\"A\",\"columnName\":\"A\",\"query\":\"a\",\"mode\":\"text\",\"caseSensitive\":false}" +
+        "],\"mode\":\"row-based\"}";
+
+    Project project;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @BeforeMethod
+    public void SetUp() throws IOException, ModelException {
+        File dir = TestUtils.createTempDirectory("openrefine-test-workspace-dir");
+        FileProjectManager.initialize(dir);
+        project = new Project();
+        ProjectMetadata pm = new ProjectMetadata();
+        pm.setName("Facet Scan Test Project");
+        ProjectManager.singleton.registerProject(project, pm);
+
+        String[] names = { "A", "B", "N" };
+        for (String name : names) {
+            int index = project.columnModel.allocateNewCellIndex();
+            project.columnModel.addColumn(index, new Column(index, name), true);
+        }
+        for (int i = 0; i < 200; i++) {
+            Row row = new Row(3);
+            row.setCell(0, new Cell("a" + (i % 3), null));
+            row.setCell(1, i % 11 == 0 ? null : new Cell("b" + (i % 5), null));
+            row.setCell(2, new Cell((long) (i % 10), null));
+            project.rows.add(row);
+        }
+        project.update();
+    }
+
+    @Test
+    public void fusedScanMatchesPerFacetScans() throws JSONException {
+        Engine fused = new Engine(project);
+        fused.initializeFromJSON(new JSONObject(ENGINE_JSON));
+        fused.computeFacets();
+
+        Engine separate = new Engine(project) {
+            @Override
+            public void computeFacets() throws JSONException {
+                for (com.google.refine.browsing.facets.Facet facet : _facets) {
+                    facet.computeChoices(_project, getFilteredRows(facet));
+                }
+            }
+        };
+        separate.initializeFromJSON(new JSONObject(ENGINE_JSON));
+        separate.computeFacets();
+
+        Assert.assertEquals(toJSON(fused), toJSON(separate));
+    }
+
+    protected String toJSON(Engine engine) throws JSONException {
+        StringWriter sw = new StringWriter();
+        engine.write(new JSONWriter(sw), new Properties());
+        return sw.toString();
+    }
+}
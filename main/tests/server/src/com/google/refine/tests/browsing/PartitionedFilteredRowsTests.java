@@ -0,0 +1,103 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.tests.browsing;
+
+import java.util.Properties;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.browsing.RowFilter;
+import com.google.refine.browsing.util.ConjunctiveFilteredRows;
+import com.google.refine.browsing.util.ExpressionNominalValueGrouper;
+import com.google.refine.browsing.util.PartitionedFilteredRows;
+import com.google.refine.expr.Evaluable;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+import com.google.refine.tests.model.ProjectStub;
+
+public class PartitionedFilteredRowsTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @Test
+    public void parallelGroupingMatchesCounts() {
+        Project project = new ProjectStub(1);
+        int rowCount = PartitionedFilteredRows.PARALLEL_THRESHOLD * 3 + 17;
+        for (int i = 0; i < rowCount; i++) {
+            Row row = new Row(1);
+            row.setCell(0, i % 10 == 0 ? null : new Cell("v" + (i % 7), null));
+            project.rows.add(row);
+        }
+
+        ConjunctiveFilteredRows filteredRows = new ConjunctiveFilteredRows();
+        filteredRows.add(new RowFilter() {
+            @Override
+            public boolean filterRow(Project project, int rowIndex, Row row) {
+                return rowIndex % 2 == 0;
+            }
+        });
+        ExpressionNominalValueGrouper grouper = new ExpressionNominalValueGrouper(new Evaluable() {
+            @Override
+            public Object evaluate(Properties bindings) {
+                return bindings.get("value");
+            }
+        }, "Column", 0);
+        filteredRows.accept(project, grouper);
+
+        int[] expected = new int[7];
+        int blanks = 0;
+        for (int i = 0; i < rowCount; i += 2) {
+            if (i % 10 == 0) {
+                blanks++;
+            } else {
+                expected[i % 7]++;
+            }
+        }
+        Assert.assertEquals(grouper.blankCount, blanks);
+        Assert.assertEquals(grouper.choices.size(), 7);
+        for (int v = 0; v < 7; v++) {
+            Assert.assertEquals(grouper.choices.get("v" + v).count, expected[v]);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.tests.clustering;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.browsing.Engine;
+import com.google.refine.clustering.ClusteringMonitor;
+import com.google.refine.clustering.ClusteringProcess;
+import com.google.refine.clustering.knn.CandidateDistances;
+import com.google.refine.clustering.knn.NGramBlockingClusterer;
+import com.google.refine.clustering.knn.kNNClusterer;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+
+import edu.mit.simile.vicino.distances.LevenshteinDistance;
+
+public class ClusteringProcessTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    static final String CONFIG =
+        "{\"type\":\"knn\",\"function\":\"levenshtein\",\"column\":\"name\"," +
+        "\"params\":{\"radius\":1,\"blocking-ngram-size\":4}}";
+
+    Project project;
+    List<String> values;
+
+    @BeforeMethod
+    public void SetUp() throws Exception {
+        project = new Project();
+        project.columnModel.addColumn(0, new Column(project.columnModel.allocateNewCellIndex(), "name"), false);
+        project.columnModel.update();
+        values = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            values.add("Acme Corporation " + i);
+            values.add("Acme Corporatoin " + i);
+        }
+        for (String value : values) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell(value, null));
+            project.rows.add(row);
+        }
+    }
+
+    @Test
+    public void processComputesClusters() throws Exception {
+        kNNClusterer clusterer = new kNNClusterer();
+        clusterer.initializeFromJSON(project, new JSONObject(CONFIG));
+        ClusteringProcess process = new ClusteringProcess(project, new Engine(project), clusterer, 0, "Cluster");
+        project.processManager.queueProcess(process);
+        Assert.assertSame(ClusteringProcess.getProcess(project, process.getID()), process);
+        Assert.assertNull(ClusteringProcess.getProcess(new Project(), process.getID()));
+
+        long deadline = System.currentTimeMillis() + 60000;
+        while (!process.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(process.isDone());
+        Assert.assertFalse(project.processManager.hasPending());
+
+        StringWriter sw = new StringWriter();
+        process.writeClusters(new JSONWriter(sw), new Properties());
+        JSONObject o = new JSONObject(sw.toString());
+        Assert.assertEquals(o.getString("status"), "done");
+        Assert.assertEquals(o.getInt("progress"), 100);
+        Assert.assertFalse(o.getBoolean("outOfTime"));
+
+        kNNClusterer expected = new kNNClusterer();
+        expected.initializeFromJSON(project, new JSONObject(CONFIG));
+        expected.computeClusters(new Engine(project));
+        sw = new StringWriter();
+        expected.write(new JSONWriter(sw), new Properties());
+        Assert.assertEquals(o.getJSONArray("clusters").toString(), new JSONArray(sw.toString()).toString());
+        Assert.assertTrue(o.getJSONArray("clusters").length() > 0);
+    }
+
+    @Test
+    public void stoppedComputationIsNotCached() throws Exception {
+        String[] array = values.toArray(new String[values.size()]);
+        int clusterCount = new NGramBlockingClusterer(new LevenshteinDistance(), 4).getClusters(array, 1.0).size();
+        ClusteringMonitor monitor = new ClusteringMonitor(0);
+        monitor.cancel();
+        CandidateDistances distances = new NGramBlockingClusterer(new LevenshteinDistance(), 4)
+            .createComputation(array, 1.0, monitor).run();
+        Assert.assertFalse(distances.covers(1.0));
+        Assert.assertTrue(distances.getNeighborClusters(1.0).size() < clusterCount);
+
+        kNNClusterer clusterer = new kNNClusterer();
+        clusterer.initializeFromJSON(project, new JSONObject(CONFIG));
+        clusterer.computeClusters(new Engine(project), monitor);
+        clusterer = new kNNClusterer();
+        clusterer.initializeFromJSON(project, new JSONObject(CONFIG));
+        clusterer.computeClusters(new Engine(project), new ClusteringMonitor(0));
+        StringWriter sw = new StringWriter();
+        clusterer.write(new JSONWriter(sw), new Properties());
+        Assert.assertEquals(new JSONArray(sw.toString()).length(), clusterCount);
+    }
+}
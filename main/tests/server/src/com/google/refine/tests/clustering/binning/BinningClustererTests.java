@@ -0,0 +1,152 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.tests.clustering.binning;
+
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.Properties;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.browsing.Engine;
+import com.google.refine.clustering.ValueDictionary;
+import com.google.refine.clustering.binning.BinningClusterer;
+import com.google.refine.clustering.binning.KeyCache;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+
+public class BinningClustererTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    Project project;
+
+    @BeforeMethod
+    public void SetUp() throws Exception {
+        project = new Project();
+        project.columnModel.addColumn(0, new Column(project.columnModel.allocateNewCellIndex(), "name"), false);
+        project.columnModel.update();
+        // Enough distinct values for keys to be computed in parallel
+        for (int i = 0; i < 3000; i++) {
+            addRow("Acme Inc " + i);
+            addRow("acme inc " + i);
+            addRow("Acme Inc " + i);
+            addRow("inc, Acme " + i);
+        }
+        addRow(null);
+    }
+
+    protected void addRow(String value) {
+        Row row = new Row(1);
+        row.setCell(0, value == null ? null : new Cell(value, null));
+        project.rows.add(row);
+    }
+
+    @Test
+    public void dictionaryCountsDistinctValues() {
+        Engine engine = new Engine(project);
+        ValueDictionary dictionary = ValueDictionary.getDictionary(project, 0, engine);
+        Assert.assertEquals(dictionary.size(), 9000);
+        Assert.assertEquals(dictionary.values[0], "Acme Inc 0");
+        Assert.assertEquals(dictionary.counts[0], 2);
+        Assert.assertEquals(dictionary.values[1], "acme inc 0");
+        Assert.assertEquals(dictionary.counts[1], 1);
+        
+        Assert.assertSame(ValueDictionary.getDictionary(project, 0, new Engine(project)), dictionary);
+        project.columnModel.getColumnByCellIndex(0).clearPrecomputes();
+        Assert.assertNotSame(ValueDictionary.getDictionary(project, 0, engine), dictionary);
+    }
+
+    @Test
+    public void fingerprintClusters() throws Exception {
+        BinningClusterer clusterer = new BinningClusterer();
+        clusterer.initializeFromJSON(project, new JSONObject(
+                "{\"type\":\"binning\",\"function\":\"fingerprint\",\"column\":\"name\",\"params\":{}}"));
+        clusterer.computeClusters(new Engine(project));
+
+        StringWriter sw = new StringWriter();
+        clusterer.write(new JSONWriter(sw), new Properties());
+        JSONArray clusters = new JSONArray(sw.toString());
+        Assert.assertEquals(clusters.length(), 3000);
+        for (int i = 0; i < clusters.length(); i++) {
+            JSONArray cluster = clusters.getJSONArray(i);
+            Assert.assertEquals(cluster.length(), 3);
+            int total = 0;
+            for (int j = 0; j < cluster.length(); j++) {
+                total += cluster.getJSONObject(j).getInt("c");
+            }
+            Assert.assertEquals(total, 4);
+            Assert.assertEquals(cluster.getJSONObject(0).getInt("c"), 2);
+        }
+    }
+
+    @Test
+    public void keysKeptAcrossEdits() throws Exception {
+        BinningClusterer clusterer = new BinningClusterer();
+        clusterer.initializeFromJSON(project, new JSONObject(
+                "{\"type\":\"binning\",\"function\":\"fingerprint\",\"column\":\"name\",\"params\":{}}"));
+        clusterer.computeClusters(new Engine(project));
+        Map<String, String> keys = KeyCache.getCache(project, 0).getKeys("fingerprint");
+        Assert.assertEquals(keys.size(), 9000);
+        Assert.assertEquals(keys.get("inc, Acme 5"), "5 acme inc");
+
+        // Edit the column as a mass edit would
+        project.rows.get(0).setCell(0, new Cell("Acme, Inc. 0", null));
+        project.rows.get(2).setCell(0, new Cell("Acme, Inc. 0", null));
+        project.columnModel.getColumnByCellIndex(0).clearPrecomputes();
+        Assert.assertSame(KeyCache.getCache(project, 0).getKeys("fingerprint"), keys);
+
+        clusterer.computeClusters(new Engine(project));
+        Map<String, String> newKeys = KeyCache.getCache(project, 0).getKeys("fingerprint");
+        Assert.assertEquals(newKeys.size(), 9000);
+        Assert.assertNull(newKeys.get("Acme Inc 0"));
+        Assert.assertEquals(newKeys.get("Acme, Inc. 0"), "0 acme inc");
+        Assert.assertSame(newKeys.get("inc, Acme 5"), keys.get("inc, Acme 5"));
+    }
+}
@@ -31,6 +31,8 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.tests.clustering.binning;
 
+import java.util.Random;
+
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
 import org.testng.annotations.AfterMethod;
@@ -106,6 +108,38 @@ public class KeyerTests extends RefineTest {
         }
     }
     
+    static class GeneralFingerprintKeyer extends FingerprintKeyer {
+        String general(String s) {
+            return keyGeneral(s);
+        }
+    }
+    
+    static class GeneralNGramFingerprintKeyer extends NGramFingerprintKeyer {
+        String general(String s, int size) {
+            return keyGeneral(s, size);
+        }
+    }
+    
+    @Test
+    public void testCharacterBasedKeysMatchGeneralKeys() {
+        String alphabet = "aAbBzZ09 \t\n\u000B.,;-'!_~\u0000\u0007\u001F\u007F\u00A0" +
+            "\u00C0\u00E9\u00DF\u00D8\u0130\u0131\u017F\u03A3\u03C3\u212A\u2028\uD801\uDC00";
+        GeneralFingerprintKeyer fingerprint = new GeneralFingerprintKeyer();
+        GeneralNGramFingerprintKeyer ngram = new GeneralNGramFingerprintKeyer();
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            StringBuffer sb = new StringBuffer();
+            int length = random.nextInt(i % 10 == 0 ? 300 : 20);
+            for (int j = 0; j < length; j++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String s = sb.toString();
+            Assert.assertEquals(fingerprint.key(s), fingerprint.general(s), "Fingerprint for string: " + s);
+            int size = 1 + random.nextInt(3);
+            Assert.assertEquals(ngram.key(s, size), ngram.general(s, size), "N-gram fingerprint for string: " + s);
+        }
+    }
+    
  
 
 }
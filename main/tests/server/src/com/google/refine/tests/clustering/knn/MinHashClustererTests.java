@@ -0,0 +1,145 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.tests.clustering.knn;
+
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.browsing.Engine;
+import com.google.refine.clustering.knn.MinHashClusterer;
+import com.google.refine.clustering.knn.kNNClusterer;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+
+import edu.mit.simile.vicino.distances.LevenshteinDistance;
+
+public class MinHashClustererTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @Test
+    public void clustersMatchPairwiseComparison() {
+        Random random = new Random(7);
+        List<String> list = new ArrayList<String>();
+        for (int i = 0; i < 300; i++) {
+            StringBuffer sb = new StringBuffer();
+            for (int j = 0; j < 12; j++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            String s = sb.toString();
+            list.add(s);
+            if (i % 3 == 0) {
+                // a typo
+                sb.setCharAt(random.nextInt(12), '#');
+                list.add(sb.toString());
+            }
+        }
+        String[] values = list.toArray(new String[list.size()]);
+
+        LevenshteinDistance distance = new LevenshteinDistance();
+        List<Set<Serializable>> clusters = new MinHashClusterer(distance, 2, 20, 2).getClusters(values, 1.0);
+
+        Map<Serializable, Set<Serializable>> clusterOf = new HashMap<Serializable, Set<Serializable>>();
+        for (Set<Serializable> cluster : clusters) {
+            Assert.assertTrue(cluster.size() > 1);
+            for (Serializable v : cluster) {
+                clusterOf.put(v, cluster);
+            }
+        }
+        int neighbors = 0;
+        for (int i = 0; i < values.length; i++) {
+            for (int j = i + 1; j < values.length; j++) {
+                if (distance.d(values[i], values[j]) <= 1.0) {
+                    neighbors++;
+                    Assert.assertNotNull(clusterOf.get(values[i]), values[i]);
+                    Assert.assertSame(clusterOf.get(values[i]), clusterOf.get(values[j]));
+                }
+            }
+        }
+        Assert.assertEquals(neighbors, 100);
+        Assert.assertEquals(clusters.size(), 100);
+    }
+
+    @Test
+    public void minHashBlockingFromConfig() throws Exception {
+        Project project = new Project();
+        project.columnModel.addColumn(0, new Column(project.columnModel.allocateNewCellIndex(), "name"), false);
+        project.columnModel.update();
+        String[] values = { "Acme Corporation", "Acme Corporatoin", "Acme Corporation", "Banana Republic", "Zebra" };
+        for (String value : values) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell(value, null));
+            project.rows.add(row);
+        }
+
+        kNNClusterer clusterer = new kNNClusterer();
+        clusterer.initializeFromJSON(project, new JSONObject(
+                "{\"type\":\"knn\",\"function\":\"levenshtein\",\"column\":\"name\"," +
+                "\"params\":{\"radius\":2,\"blocking\":\"minhash\"}}"));
+        clusterer.computeClusters(new Engine(project));
+
+        StringWriter sw = new StringWriter();
+        clusterer.write(new JSONWriter(sw), new Properties());
+        JSONArray clusters = new JSONArray(sw.toString());
+        Assert.assertEquals(clusters.length(), 1);
+        JSONArray cluster = clusters.getJSONArray(0);
+        Assert.assertEquals(cluster.length(), 2);
+        Assert.assertEquals(cluster.getJSONObject(0).getString("v"), "Acme Corporation");
+        Assert.assertEquals(cluster.getJSONObject(0).getInt("c"), 2);
+        Assert.assertEquals(cluster.getJSONObject(1).getString("v"), "Acme Corporatoin");
+    }
+}
@@ -0,0 +1,151 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+package com.google.refine.tests.clustering.knn;
+
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.browsing.Engine;
+import com.google.refine.clustering.knn.CandidateDistances;
+import com.google.refine.clustering.knn.NGramBlockingClusterer;
+import com.google.refine.clustering.knn.kNNClusterer;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+
+import edu.mit.simile.vicino.clustering.NGramClusterer;
+import edu.mit.simile.vicino.distances.LevenshteinDistance;
+
+public class kNNClustererTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    protected String[] createValues() {
+        Random random = new Random(11);
+        String[] words = { "acme", "corp", "inc", "smith", "global", "trading" };
+        Set<String> set = new HashSet<String>();
+        List<String> list = new ArrayList<String>();
+        while (list.size() < 400) {
+            StringBuffer sb = new StringBuffer();
+            for (int j = 0; j < 2; j++) {
+                sb.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            sb.append(random.nextInt(30));
+            if (random.nextInt(3) == 0) {
+                // a typo
+                sb.setCharAt(random.nextInt(sb.length()), (char) ('a' + random.nextInt(26)));
+            }
+            if (set.add(sb.toString())) {
+                list.add(sb.toString());
+            }
+        }
+        return list.toArray(new String[list.size()]);
+    }
+
+    @Test
+    public void ngramBlockingMatchesVicino() {
+        String[] values = createValues();
+        for (double radius : new double[] { 1.0, 2.0, 4.0 }) {
+            NGramClusterer vicino = new NGramClusterer(new LevenshteinDistance(), 4);
+            for (String value : values) {
+                vicino.populate(value);
+            }
+            List<Set<Serializable>> expected = vicino.getClustersSingleThread(radius);
+            List<Set<Serializable>> clusters = new NGramBlockingClusterer(new LevenshteinDistance(), 4).getClusters(values, radius);
+            Assert.assertTrue(expected.size() > 10);
+            Assert.assertEquals(new HashSet<Set<Serializable>>(clusters), new HashSet<Set<Serializable>>(expected));
+        }
+    }
+
+    @Test
+    public void distancesCoverLargerRadius() {
+        String[] values = createValues();
+        NGramBlockingClusterer clusterer = new NGramBlockingClusterer(new LevenshteinDistance(), 4);
+        CandidateDistances distances = clusterer.computeDistances(values, 1.0);
+        Assert.assertTrue(distances.covers(3.0));
+        Assert.assertEquals(distances.getNeighborClusters(3.0), clusterer.getClusters(values, 3.0));
+        Assert.assertEquals(distances.getNeighborClusters(1.0), clusterer.getClusters(values, 1.0));
+    }
+
+    @Test
+    public void radiusChangeReusesDistances() throws Exception {
+        Project project = new Project();
+        project.columnModel.addColumn(0, new Column(project.columnModel.allocateNewCellIndex(), "name"), false);
+        project.columnModel.update();
+        for (String value : createValues()) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell(value, null));
+            project.rows.add(row);
+        }
+
+        String first = clusterToString(project, 1);
+        String second = clusterToString(project, 3);
+        Assert.assertFalse(first.equals(second));
+        project.columnModel.getColumnByCellIndex(0).clearPrecomputes();
+        Assert.assertEquals(clusterToString(project, 3), second);
+        Assert.assertEquals(clusterToString(project, 1), first);
+    }
+
+    protected String clusterToString(Project project, double radius) throws Exception {
+        kNNClusterer clusterer = new kNNClusterer();
+        clusterer.initializeFromJSON(project, new JSONObject(
+                "{\"type\":\"knn\",\"function\":\"levenshtein\",\"column\":\"name\"," +
+                "\"params\":{\"radius\":" + radius + ",\"blocking-ngram-size\":4}}"));
+        clusterer.computeClusters(new Engine(project));
+
+        StringWriter sw = new StringWriter();
+        clusterer.write(new JSONWriter(sw), new Properties());
+        return new JSONArray(sw.toString()).toString();
+    }
+}
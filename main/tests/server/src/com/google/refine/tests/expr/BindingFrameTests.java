@@ -0,0 +1,136 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+
+package com.google.refine.tests.expr;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.expr.BindingFrame;
+import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.expr.MetaParser;
+import com.google.refine.expr.ParsingException;
+import com.google.refine.expr.WrappedCell;
+import com.google.refine.expr.WrappedRow;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.ModelException;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+
+public class BindingFrameTests extends RefineTest {
+
+    Project project;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @BeforeMethod
+    public void SetUp() throws ModelException {
+        project = new Project();
+        int index = project.columnModel.allocateNewCellIndex();
+        project.columnModel.addColumn(index, new Column(index, "A"), true);
+        for (int i = 0; i < 2; i++) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell("v" + i, null));
+            project.rows.add(row);
+        }
+        project.update();
+    }
+
+    @Test
+    public void canBindStandardVariables() {
+        Properties bindings = ExpressionUtils.createBindings(project);
+        Assert.assertTrue(bindings instanceof BindingFrame);
+        Assert.assertEquals(bindings.get("project"), project);
+        Assert.assertEquals(bindings.get("true"), true);
+        Assert.assertEquals(bindings.get("PI"), Math.PI);
+
+        Row row = project.rows.get(1);
+        ExpressionUtils.bind(bindings, row, 1, "A", row.getCell(0));
+        Assert.assertEquals(bindings.get("value"), "v1");
+        Assert.assertEquals(bindings.get("rowIndex"), 1);
+        Assert.assertEquals(bindings.getProperty("columnName"), "A");
+        Assert.assertEquals(((WrappedCell) bindings.get("cell")).cell, row.getCell(0));
+        Assert.assertEquals(((WrappedRow) bindings.get("row")).row, row);
+        Assert.assertTrue(bindings.containsKey("cells"));
+
+        ExpressionUtils.bind(bindings, row, 1, "A", null);
+        Assert.assertNull(bindings.get("value"));
+        Assert.assertNull(bindings.get("cell"));
+        Assert.assertFalse(bindings.containsKey("cell"));
+    }
+
+    @Test
+    public void canOverrideSlotsAndKeepOtherVariables() {
+        Properties bindings = ExpressionUtils.createBindings(project);
+        Row row = project.rows.get(0);
+        ExpressionUtils.bind(bindings, row, 0, "A", row.getCell(0));
+
+        Assert.assertEquals(bindings.put("value", "x"), "v0");
+        Assert.assertEquals(bindings.get("value"), "x");
+        Assert.assertEquals(bindings.remove("value"), "x");
+        Assert.assertNull(bindings.get("value"));
+
+        bindings.put("other", 42);
+        Assert.assertEquals(bindings.get("other"), 42);
+        Assert.assertFalse(bindings.containsKey("value"));
+        Assert.assertTrue(bindings.containsKey("other"));
+    }
+
+    @Test
+    public void canEvaluateWithSlots() throws ParsingException {
+        Properties bindings = ExpressionUtils.createBindings(project);
+        for (int i = 0; i < 2; i++) {
+            Row row = project.rows.get(i);
+            ExpressionUtils.bind(bindings, row, i, "A", row.getCell(0));
+            Assert.assertEquals(MetaParser.parse("value + '/' + rowIndex").evaluate(bindings), "v" + i + "/" + i);
+            Assert.assertEquals(MetaParser.parse("cells['A'].value").evaluate(bindings), "v" + i);
+            Object[] doubled = (Object[]) MetaParser.parse("forEach([1,2], value, value * 2)").evaluate(bindings);
+            Assert.assertEquals(Arrays.toString(doubled), "[2, 4]");
+            Assert.assertEquals(MetaParser.parse("value").evaluate(bindings), "v" + i);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+
+package com.google.refine.tests.expr;
+
+import java.util.Properties;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.expr.BatchEvaluable;
+import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.EvaluationBatch;
+import com.google.refine.expr.ExpressionResultCache;
+import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.expr.MetaParser;
+import com.google.refine.expr.ParsingException;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.ModelException;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+
+public class EvaluationBatchTests extends RefineTest {
+
+    Project project;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @BeforeMethod
+    public void SetUp() throws ModelException {
+        project = new Project();
+        int index = project.columnModel.allocateNewCellIndex();
+        project.columnModel.addColumn(index, new Column(index, "A"), true);
+        Object[] values = { "12", " abc ", null, 3L, "x.y", 2.5, "" };
+        for (Object value : values) {
+            Row row = new Row(1);
+            row.setCell(0, value == null ? null : new Cell((java.io.Serializable) value, null));
+            project.rows.add(row);
+        }
+        project.update();
+    }
+
+    @Test
+    public void batchMatchesRowByRow() throws ParsingException {
+        String[] expressions = {
+            "value",
+            "value.toNumber() * 2",
+            "value.trim().toUppercase() + '!'",
+            "value.length()",
+            "value.split('.')[0]",
+            "if(isBlank(value), 'blank', value)",
+            "row.index + 1",
+            "cells['A'].value",
+            "1 + 2",
+        };
+        for (String expression : expressions) {
+            Evaluable eval = MetaParser.parse(expression);
+
+            Properties bindings = ExpressionUtils.createBindings(project);
+            EvaluationBatch batch = new EvaluationBatch("A", 0, 4);
+            int r = 0;
+            while (r < project.rows.size()) {
+                for (; r < project.rows.size() && !batch.isFull(); r++) {
+                    batch.add(r, project.rows.get(r));
+                }
+                batch.evaluate(eval, bindings);
+
+                for (int i = 0; i < batch.size(); i++) {
+                    int rowIndex = batch.rowIndices[i];
+                    Row row = project.rows.get(rowIndex);
+                    Properties rowBindings = ExpressionUtils.createBindings(project);
+                    ExpressionUtils.bind(rowBindings, row, rowIndex, "A", row.getCell(0));
+                    Object expected = eval.evaluate(rowBindings);
+
+                    Assert.assertEquals(batch.errors[i], ExpressionUtils.isError(expected), expression);
+                    Assert.assertEquals(String.valueOf(batch.results[i]), String.valueOf(expected), expression);
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    @Test
+    public void onlyEvaluatesCellExpressionsInBatches() throws ParsingException {
+        Properties bindings = ExpressionUtils.createBindings(project);
+        EvaluationBatch batch = new EvaluationBatch("A", 0);
+        batch.add(0, project.rows.get(0));
+        Object[] results = new Object[1];
+
+        Assert.assertTrue(((BatchEvaluable) MetaParser.parse("value.length()")).evaluateBatch(batch, results, bindings));
+        Assert.assertEquals(results[0], 2);
+        Assert.assertFalse(((BatchEvaluable) MetaParser.parse("row.index")).evaluateBatch(batch, results, bindings));
+        Assert.assertFalse(((BatchEvaluable) MetaParser.parse("now()")).evaluateBatch(batch, results, bindings));
+    }
+
+    @Test
+    public void cachedResultsCanBeEvaluatedInBatches() throws ParsingException {
+        Properties bindings = ExpressionUtils.createBindings(project);
+        Evaluable eval = ExpressionResultCache.wrap(project, 0, "value.length()", MetaParser.parse("value.length()"));
+        EvaluationBatch batch = new EvaluationBatch("A", 0);
+        batch.add(0, project.rows.get(0));
+        batch.add(1, project.rows.get(1));
+
+        Object[] results = new Object[2];
+        for (int i = 0; i < 2; i++) {
+            Assert.assertTrue(((BatchEvaluable) eval).evaluateBatch(batch, results, bindings));
+            Assert.assertEquals(results[0], 2);
+            Assert.assertEquals(results[1], 5);
+        }
+    }
+}
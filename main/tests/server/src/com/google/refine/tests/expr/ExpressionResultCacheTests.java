@@ -0,0 +1,188 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.tests.expr;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.ExpressionResultCache;
+import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.expr.MetaParser;
+import com.google.refine.expr.ParsingException;
+import com.google.refine.grel.ast.ExpressionDependencies;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.ModelException;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+
+public class ExpressionResultCacheTests extends RefineTest {
+
+    Project project;
+    Column column;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @BeforeMethod
+    public void SetUp() throws ModelException {
+        project = new Project();
+        int index = project.columnModel.allocateNewCellIndex();
+        column = new Column(index, "A");
+        project.columnModel.addColumn(index, column, true);
+        for (int i = 0; i < 3; i++) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell("a,b," + i, null));
+            project.rows.add(row);
+        }
+        project.update();
+    }
+
+    @Test
+    public void dependsOnCellOnly() throws ParsingException {
+        Assert.assertTrue(dependsOnCellOnly("value.toUppercase()"));
+        Assert.assertTrue(dependsOnCellOnly("grel:cell.value + 1"));
+        Assert.assertTrue(dependsOnCellOnly("forEach(value.split(','), v, v.trim())"));
+        Assert.assertFalse(dependsOnCellOnly("cells['A'].value"));
+        Assert.assertFalse(dependsOnCellOnly("row.index"));
+        Assert.assertFalse(dependsOnCellOnly("with(rowIndex, v, v + 1)"));
+        Assert.assertFalse(dependsOnCellOnly("forEach(value.split(','), v, rowIndex)"));
+        Assert.assertFalse(dependsOnCellOnly("facetCount(value, 'value', 'A')"));
+        Assert.assertFalse(dependsOnCellOnly("now()"));
+        Assert.assertFalse(dependsOnCellOnly("value + now().toString()"));
+    }
+
+    @Test
+    public void isPure() throws ParsingException {
+        Assert.assertTrue(ExpressionDependencies.isPure(MetaParser.parse("cells['A'].value + rowIndex")));
+        Assert.assertTrue(ExpressionDependencies.isPure(MetaParser.parse("forEach(value.split(','), v, v.trim())")));
+        Assert.assertFalse(ExpressionDependencies.isPure(MetaParser.parse("facetCount(value, 'value', 'A') > 1")));
+        Assert.assertFalse(ExpressionDependencies.isPure(MetaParser.parse("value + now().toString()")));
+    }
+
+    @Test
+    public void reusesResultsForSameCell() throws ParsingException {
+        String expression = "value.split(',')";
+        Evaluable eval = ExpressionResultCache.wrap(project, 0, expression, MetaParser.parse(expression));
+
+        Object first = evaluate(eval, 1);
+        Assert.assertEquals(((Object[]) first).length, 3);
+        Assert.assertSame(evaluate(eval, 1), first);
+
+        Evaluable eval2 = ExpressionResultCache.wrap(project, 0, "grel:" + expression, MetaParser.parse(expression));
+        Assert.assertSame(evaluate(eval2, 1), first);
+
+        project.rows.get(1).setCell(0, new Cell("c", null));
+        Assert.assertEquals(((Object[]) evaluate(eval, 1)).length, 1);
+    }
+
+    @Test
+    public void keepsResultsStoredConcurrently() throws Exception {
+        for (int i = 3; i < 4 * 4096; i++) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell("a,b," + i, null));
+            project.rows.add(row);
+        }
+        String expression = "value.split(',')";
+        final Evaluable eval = ExpressionResultCache.wrap(project, 0, expression, MetaParser.parse(expression));
+        final int threadCount = 8;
+        final Object[] results = new Object[project.rows.size()];
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    // interleaved rows, so that all threads store into the same page
+                    for (int r = offset; r < results.length; r += threadCount) {
+                        results[r] = evaluate(eval, r);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int r = 0; r < results.length; r++) {
+            Assert.assertEquals(((Object[]) results[r])[2], Integer.toString(r));
+            Assert.assertSame(evaluate(eval, r), results[r]);
+        }
+    }
+
+    @Test
+    public void doesNotCacheContextDependentExpressions() throws ParsingException {
+        String expression = "row.index";
+        Evaluable eval = MetaParser.parse(expression);
+        Assert.assertSame(ExpressionResultCache.wrap(project, 0, expression, eval), eval);
+    }
+
+    @Test
+    public void doesNotCacheNow() throws ParsingException {
+        String expression = "value + now().toString()";
+        Evaluable eval = MetaParser.parse(expression);
+        Assert.assertSame(ExpressionResultCache.wrap(project, 0, expression, eval), eval);
+    }
+
+    protected boolean dependsOnCellOnly(String expression) throws ParsingException {
+        return ExpressionDependencies.dependsOnCellOnly(MetaParser.parse(expression));
+    }
+
+    protected Object evaluate(Evaluable eval, int rowIndex) {
+        Properties bindings = ExpressionUtils.createBindings(project);
+        Row row = project.rows.get(rowIndex);
+        ExpressionUtils.bind(bindings, row, rowIndex, column.getName(), row.getCell(0));
+        return eval.evaluate(bindings);
+    }
+}
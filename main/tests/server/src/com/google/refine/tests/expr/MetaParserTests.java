@@ -0,0 +1,95 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+
+package com.google.refine.tests.expr;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.MetaParser;
+import com.google.refine.expr.ParsingException;
+import com.google.refine.tests.RefineTest;
+
+public class MetaParserTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @BeforeMethod
+    public void SetUp() {
+        MetaParser.clearCache();
+    }
+
+    @Test
+    public void canReuseParsedExpressions() throws ParsingException {
+        long hits = MetaParser.getCacheHits();
+        long misses = MetaParser.getCacheMisses();
+
+        Evaluable eval = MetaParser.parse("value.toUppercase()");
+        Assert.assertSame(MetaParser.parse("value.toUppercase()"), eval);
+        Assert.assertSame(MetaParser.parse("grel:value.toUppercase()"), eval);
+        Assert.assertNotSame(MetaParser.parse("value.toLowercase()"), eval);
+
+        Assert.assertEquals(MetaParser.getCacheHits() - hits, 2);
+        Assert.assertEquals(MetaParser.getCacheMisses() - misses, 2);
+    }
+
+    @Test
+    public void keepsLanguagesApart() throws ParsingException {
+        Evaluable grel = MetaParser.parse("grel:value");
+        Evaluable clojure = MetaParser.parse("clojure:value");
+        Assert.assertNotSame(grel, clojure);
+        Assert.assertSame(MetaParser.parse("clojure:value"), clojure);
+    }
+
+    @Test
+    public void doesNotCacheParsingErrors() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                MetaParser.parse("value.(");
+                Assert.fail("Expected a parsing exception");
+            } catch (ParsingException e) {
+                // expected
+            }
+        }
+    }
+}
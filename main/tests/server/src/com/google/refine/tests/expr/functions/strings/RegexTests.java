@@ -0,0 +1,97 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.tests.expr.functions.strings;
+
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.grel.ControlFunctionRegistry;
+import com.google.refine.grel.Function;
+import com.google.refine.tests.RefineTest;
+import com.google.refine.util.PatternCache;
+
+
+public class RegexTests extends RefineTest {
+
+    static Properties bindings = new Properties();
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    private static Object invoke(String name, Object... args) {
+        Function function = ControlFunctionRegistry.getFunction(name);
+        if (function == null) {
+            throw new IllegalArgumentException("Unknown function " + name);
+        }
+        return function.call(bindings, args);
+    }
+
+    @Test
+    public void testPatternCache() {
+        Pattern pattern = PatternCache.getPattern("a(b+)c");
+        Assert.assertSame(PatternCache.getPattern("a(b+)c"), pattern);
+        Assert.assertNotSame(PatternCache.getPattern("a(b+)c", Pattern.CASE_INSENSITIVE), pattern);
+
+        Assert.assertTrue(PatternCache.isLiteral("abc def"));
+        Assert.assertFalse(PatternCache.isLiteral("a.c"));
+        Assert.assertFalse(PatternCache.isLiteral("a\\d"));
+    }
+
+    @Test
+    public void testMatch() {
+        Assert.assertEquals((String[]) invoke("match", "abbbc", "a(b+)c"), new String[] { "bbb" });
+        Assert.assertNull(invoke("match", "abbbd", "a(b+)c"));
+        Assert.assertEquals((String[]) invoke("match", "abc", Pattern.compile("a(.)c")), new String[] { "b" });
+
+        // literal patterns
+        Assert.assertEquals(((String[]) invoke("match", "abc", "abc")).length, 0);
+        Assert.assertNull(invoke("match", "abcd", "abc"));
+    }
+
+    @Test
+    public void testReplace() {
+        Assert.assertEquals(invoke("replace", "a.b.c", ".", "-"), "a-b-c");
+        Assert.assertEquals(invoke("replace", "a.b.c", Pattern.compile("\\."), "-"), "a-b-c");
+        Assert.assertEquals(invoke("replace", "ab", "", "-"), "-a-b-");
+    }
+}
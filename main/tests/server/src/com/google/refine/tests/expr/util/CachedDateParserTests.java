@@ -0,0 +1,106 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.tests.expr.util;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.expr.util.CachedDateParser;
+import com.google.refine.expr.util.CalendarParser;
+import com.google.refine.expr.util.CalendarParserException;
+import com.google.refine.tests.RefineTest;
+import com.google.refine.util.ParsingUtilities;
+
+public class CachedDateParserTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @Test
+    public void fixedLayoutsMatchCalendarParser() throws CalendarParserException {
+        CachedDateParser.clearCache();
+        String[] monthFirst = {
+            "2012-03-01", "1999/12/31", "2012-02-30", "2012-03-01 17:05", "2012-03-01 07:05:59",
+            "03/01/2012", "12/31/1999", "0050-01-02", "2012-13-01"
+        };
+        for (String s : monthFirst) {
+            Assert.assertEquals(CachedDateParser.parse(s, true), CalendarParser.parse(s, CalendarParser.MM_DD_YY), s);
+        }
+        
+        // Year-first dates with small values are read differently when days come first
+        String[] dayFirst = { "01/03/2012", "31/12/1999", "2012-03-01", "2012-03-01 17:05" };
+        for (String s : dayFirst) {
+            Assert.assertEquals(CachedDateParser.parse(s, false), CalendarParser.parse(s, CalendarParser.DD_MM_YY), s);
+        }
+    }
+
+    @Test
+    public void fallbacksAndFailures() {
+        Assert.assertEquals(CachedDateParser.parse("2012-03-01T10:20:30Z", true),
+                ParsingUtilities.stringToDate("2012-03-01T10:20:30Z"));
+        Assert.assertNull(CachedDateParser.parse("not a date", true));
+        Assert.assertNull(CachedDateParser.parse("not a date", true));
+    }
+
+    @Test
+    public void xsdDateTimes() {
+        GregorianCalendar utc = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
+        utc.clear();
+        utc.set(2012, Calendar.MARCH, 1, 8, 20, 30);
+        Assert.assertEquals(CachedDateParser.parse("2012-03-01T10:20:30+02:00", true), utc.getTime());
+        utc.set(Calendar.HOUR_OF_DAY, 10);
+        utc.set(Calendar.MILLISECOND, 500);
+        Assert.assertEquals(CachedDateParser.parse("2012-03-01T10:20:30.5Z", true), utc.getTime());
+        Assert.assertNull(CachedDateParser.parse("2012-13-01T10:20:30+02:00", true));
+    }
+
+    @Test
+    public void cachedResultsAreCopies() {
+        Calendar first = (Calendar) CachedDateParser.parse("2012-03-01", true);
+        first.add(Calendar.YEAR, 1);
+        Calendar second = (Calendar) CachedDateParser.parse("2012-03-01", true);
+        Assert.assertEquals(second.get(Calendar.YEAR), 2012);
+        Assert.assertNotSame(first, second);
+    }
+}
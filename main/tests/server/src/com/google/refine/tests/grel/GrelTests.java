@@ -35,6 +35,8 @@ package com.google.refine.tests.grel;
 
 import java.util.Properties;
 
+import org.json.JSONException;
+import org.json.JSONWriter;
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
 import org.testng.annotations.AfterMethod;
@@ -47,7 +49,12 @@ import com.google.refine.expr.Evaluable;
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.expr.MetaParser;
 import com.google.refine.expr.ParsingException;
+import com.google.refine.grel.ControlFunctionRegistry;
+import com.google.refine.grel.Function;
+import com.google.refine.grel.ast.LiteralExpr;
+import com.google.refine.model.Cell;
 import com.google.refine.model.Project;
+import com.google.refine.model.Row;
 import com.google.refine.tests.RefineTest;
 
 public class GrelTests extends RefineTest {
@@ -134,6 +141,13 @@ public class GrelTests extends RefineTest {
                 { "1<=2", "true" }, 
                 { "2<=2", "true" }, 
                 { "3<=2", "false" }, 
+                { "1!=2", "true" }, 
+                { "2.5>2", "true" }, 
+                { "1.0==1", "true" }, 
+                { "'a' + 1", "a1" }, 
+                { "'a' == 'a'", "true" }, 
+                { "'a' != 'b'", "true" }, 
+                { "null == null", "true" }, 
 //                { "", "" }, 
         };
         for (String[] test : tests) {
@@ -166,6 +180,64 @@ public class GrelTests extends RefineTest {
             parseEval(bindings, test);
         }
     }
+    @Test
+    public void testConstantFolding() throws ParsingException {
+        Assert.assertTrue(MetaParser.parse("grel:1 + 2 * 3") instanceof LiteralExpr);
+        Assert.assertTrue(MetaParser.parse("grel:'abc'.toUppercase()") instanceof LiteralExpr);
+        Assert.assertFalse(MetaParser.parse("grel:now()") instanceof LiteralExpr);
+        String tests[][] = {
+                { "1 + 2 * 3", "7" },
+                { "if(1 > 2, 'a', 'b')", "b" },
+                { "'abc'.toUppercase() + value", "ABCx" },
+        };
+        bindings.put("value", "x");
+        for (String[] test : tests) {
+            parseEval(bindings, test);
+        }
+    }
+
+    @Test
+    public void testSharedSubexpressions() throws ParsingException {
+        final int[] calls = new int[1];
+        Function counted = new Function() {
+            @Override
+            public Object call(Properties bindings, Object[] args) {
+                calls[0]++;
+                return args[0];
+            }
+
+            @Override
+            public void write(JSONWriter writer, Properties options) throws JSONException {
+            }
+        };
+        ControlFunctionRegistry.registerFunction("testCounted", counted, true);
+        MetaParser.clearCache();
+
+        Row row = new Row(1);
+        row.setCell(0, new Cell("a", null));
+        ExpressionUtils.bind(bindings, row, 0, "A", row.getCell(0));
+
+        Evaluable eval = MetaParser.parse("grel:testCounted(value) + testCounted(value)");
+        Assert.assertEquals(eval.evaluate(bindings), "aa");
+        Assert.assertEquals(calls[0], 1);
+
+        row.setCell(0, new Cell("b", null));
+        ExpressionUtils.bind(bindings, row, 0, "A", row.getCell(0));
+        Assert.assertEquals(eval.evaluate(bindings), "bb");
+        Assert.assertEquals(calls[0], 2);
+
+        // Rebinding a variable inside the expression must not reuse stale values
+        eval = MetaParser.parse("grel:testCounted(value) + forEach(['c'], value, testCounted(value))[0] + testCounted(value)");
+        Assert.assertEquals(eval.evaluate(bindings), "bcb");
+
+        ControlFunctionRegistry.registerFunction("testCounted", counted, false);
+        MetaParser.clearCache();
+        calls[0] = 0;
+        eval = MetaParser.parse("grel:testCounted(value) + testCounted(value)");
+        Assert.assertEquals(eval.evaluate(bindings), "bb");
+        Assert.assertEquals(calls[0], 2);
+    }
+
     private void parseEval(Properties bindings, String[] test)
             throws ParsingException {
         Evaluable eval = MetaParser.parse("grel:" + test[0]);
@@ -0,0 +1,181 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.tests.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.expr.EvalError;
+import com.google.refine.io.BinaryRowFormat;
+import com.google.refine.io.MappedRowChunkSource;
+import com.google.refine.model.Cell;
+import com.google.refine.model.LazyRowList;
+import com.google.refine.model.Recon;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+import com.google.refine.util.Pool;
+
+public class BinaryRowFormatTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        Recon recon = new Recon(0, null, null);
+        Date date = new Date(1234567890000L);
+
+        Row row1 = new Row(4);
+        row1.flagged = true;
+        row1.setCell(0, new Cell("a", null));
+        row1.setCell(1, new Cell(12L, null));
+        row1.setCell(3, new Cell(1.5, recon));
+        Row row2 = new Row(4);
+        row2.starred = true;
+        row2.setCell(0, new Cell("a", null));
+        row2.setCell(1, new Cell(true, null));
+        row2.setCell(2, new Cell(date, null));
+        row2.setCell(3, new Cell(new EvalError("oops"), null));
+
+        List<Row> rows = new ArrayList<Row>();
+        rows.add(row1);
+        rows.add(row2);
+        rows.add(new Row(0));
+
+        Pool pool = new Pool();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryRowFormat.save(rows, out, pool);
+        Assert.assertSame(pool.getRecon(Long.toString(recon.id)), recon);
+
+        List<Row> loaded = new ArrayList<Row>();
+        int maxCellCount = BinaryRowFormat.load(new ByteArrayInputStream(out.toByteArray()), pool, loaded);
+
+        Assert.assertEquals(maxCellCount, 4);
+        Assert.assertEquals(loaded.size(), 3);
+        Assert.assertTrue(loaded.get(0).flagged);
+        Assert.assertFalse(loaded.get(0).starred);
+        Assert.assertEquals(loaded.get(0).getCellValue(0), "a");
+        Assert.assertEquals(loaded.get(0).getCellValue(1), 12L);
+        Assert.assertNull(loaded.get(0).getCell(2));
+        Assert.assertEquals(loaded.get(0).getCellValue(3), 1.5);
+        Assert.assertSame(loaded.get(0).getCell(3).recon, recon);
+        Assert.assertTrue(loaded.get(1).starred);
+        Assert.assertEquals(loaded.get(1).getCellValue(0), "a");
+        Assert.assertEquals(loaded.get(1).getCellValue(1), true);
+        Assert.assertEquals(loaded.get(1).getCellValue(2), date);
+        Assert.assertEquals(((EvalError) loaded.get(1).getCellValue(3)).message, "oops");
+        Assert.assertEquals(loaded.get(2).cells.size(), 0);
+    }
+
+    @Test
+    public void chunkedRoundTrip() throws Exception {
+        List<Row> rows = new ArrayList<Row>();
+        for (int i = 0; i < BinaryRowFormat.DEFAULT_CHUNK_SIZE * 2 + 3; i++) {
+            Row row = new Row(2);
+            row.setCell(0, new Cell("row " + (i % 10), null));
+            row.setCell(1, new Cell((long) i, null));
+            rows.add(row);
+        }
+
+        Pool pool = new Pool();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryRowFormat.save(rows, out, pool);
+
+        List<Row> loaded = new ArrayList<Row>();
+        BinaryRowFormat.load(new ByteArrayInputStream(out.toByteArray()), pool, loaded);
+
+        Assert.assertEquals(loaded.size(), rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Assert.assertEquals(loaded.get(i).getCellValue(0), "row " + (i % 10));
+            Assert.assertEquals(loaded.get(i).getCellValue(1), (long) i);
+        }
+    }
+
+    @Test
+    public void mappedChunks() throws Exception {
+        Recon recon = new Recon(0, null, null);
+        List<Row> rows = new ArrayList<Row>();
+        for (int i = 0; i < BinaryRowFormat.DEFAULT_CHUNK_SIZE + 1; i++) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell((long) i, i == 0 ? recon : null));
+            rows.add(row);
+        }
+
+        Pool pool = new Pool();
+        File file = File.createTempFile("rows", ".bin");
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                BinaryRowFormat.save(rows, out, pool);
+            } finally {
+                out.close();
+            }
+
+            LazyRowList lazyRows = new LazyRowList(MappedRowChunkSource.open(file, pool));
+            Assert.assertEquals(lazyRows.size(), rows.size());
+            Assert.assertEquals(lazyRows.get(BinaryRowFormat.DEFAULT_CHUNK_SIZE).getCellValue(0),
+                    (long) BinaryRowFormat.DEFAULT_CHUNK_SIZE);
+            Assert.assertFalse(lazyRows.isChunkLoaded(0));
+
+            // the untouched chunk is copied as is, along with the recons it references
+            Pool pool2 = new Pool();
+            ByteArrayOutputStream out2 = new ByteArrayOutputStream();
+            BinaryRowFormat.save(lazyRows, out2, pool2);
+            lazyRows.dispose();
+
+            List<Row> loaded = new ArrayList<Row>();
+            BinaryRowFormat.load(new ByteArrayInputStream(out2.toByteArray()), pool2, loaded);
+            Assert.assertEquals(loaded.size(), rows.size());
+            Assert.assertSame(loaded.get(0).getCell(0).recon, recon);
+            Assert.assertEquals(loaded.get(rows.size() - 1).getCellValue(0), (long) (rows.size() - 1));
+        } finally {
+            file.delete();
+        }
+    }
+}
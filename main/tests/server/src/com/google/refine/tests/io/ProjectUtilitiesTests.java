@@ -0,0 +1,213 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.tests.io;
+
+import java.io.File;
+import java.util.Properties;
+
+import org.json.JSONObject;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.ProjectMetadata;
+import com.google.refine.history.HistoryEntry;
+import com.google.refine.io.FileProjectManager;
+import com.google.refine.io.ProjectUtilities;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.operations.OnError;
+import com.google.refine.operations.cell.TextTransformOperation;
+import com.google.refine.tests.RefineTest;
+import com.google.refine.tests.util.TestUtils;
+
+public class ProjectUtilitiesTests extends RefineTest {
+
+    static final String ENGINE_JSON = "{\"facets\":[],\"mode\":\"row-based\"}";
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    Project project;
+    File dir;
+
+    @BeforeMethod
+    public void SetUp() throws Exception {
+        FileProjectManager.initialize(TestUtils.createTempDirectory("openrefine-test-workspace-dir"));
+        project = new Project();
+        int index = project.columnModel.allocateNewCellIndex();
+        project.columnModel.addColumn(index, new Column(index, "A"), true);
+        for (int i = 0; i < 3; i++) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell("a" + i, null));
+            project.rows.add(row);
+        }
+        project.update();
+        ProjectMetadata metadata = new ProjectMetadata();
+        metadata.setName("Project utilities test");
+        ProjectManager.singleton.registerProject(project, metadata);
+        dir = ((FileProjectManager) ProjectManager.singleton).getProjectDir(project.id);
+    }
+
+    @AfterMethod
+    public void TearDown() {
+        ProjectManager.singleton.getPreferenceStore().put("project.rows.lazyLoading", "false");
+        project = null;
+        dir = null;
+    }
+
+    @Test
+    public void rowCacheFollowsContentNotModificationTime() throws Exception {
+        ProjectManager.singleton.getPreferenceStore().put("project.rows.lazyLoading", "true");
+        ProjectUtilities.save(project);
+        File file = new File(dir, "data.zip");
+        long lastModified = file.lastModified();
+
+        Project loaded = ProjectUtilities.load(dir, project.id);
+        Assert.assertEquals(loaded.rows.get(1).getCellValue(0), "a1");
+        loaded.dispose();
+
+        // a second full save within the file system's time resolution
+        project.rows.get(1).setCell(0, new Cell("b1", null));
+        project.history.getJournal().startJournal(0);
+        ProjectUtilities.save(project);
+        file.setLastModified(lastModified);
+
+        loaded = ProjectUtilities.load(dir, project.id);
+        Assert.assertEquals(loaded.rows.get(1).getCellValue(0), "b1");
+        loaded.dispose();
+    }
+
+    @Test
+    public void journalReplaysEdits() throws Exception {
+        ProjectUtilities.save(project);
+        transform("value + 'x'");
+        ProjectUtilities.save(project);
+        transform("value + 'y'");
+        ProjectUtilities.save(project);
+        Assert.assertTrue(new File(dir, "journal.txt").exists());
+
+        Project loaded = ProjectUtilities.load(dir, project.id);
+        Assert.assertEquals(loaded.rows.get(1).getCellValue(0), "a1xy");
+        Assert.assertEquals(loaded.history.getLastPastEntries(0).size(), 2);
+        loaded.dispose();
+    }
+
+    @Test
+    public void journalReplaysUndoRedo() throws Exception {
+        ProjectUtilities.save(project);
+        HistoryEntry first = transform("value + 'x'");
+        HistoryEntry second = transform("value + 'y'");
+        ProjectUtilities.save(project);
+        project.history.undoRedo(first.id);
+        ProjectUtilities.save(project);
+
+        Project loaded = ProjectUtilities.load(dir, project.id);
+        Assert.assertEquals(loaded.rows.get(1).getCellValue(0), "a1x");
+        Assert.assertEquals(loaded.history.getPrecedingEntryID(second.id), first.id);
+        loaded.dispose();
+
+        project.history.undoRedo(second.id);
+        ProjectUtilities.save(project);
+
+        loaded = ProjectUtilities.load(dir, project.id);
+        Assert.assertEquals(loaded.rows.get(1).getCellValue(0), "a1xy");
+        loaded.dispose();
+    }
+
+    @Test
+    public void journalReplaysUndoFollowedByNewEdit() throws Exception {
+        ProjectUtilities.save(project);
+        HistoryEntry undone = transform("value + 'x'");
+        ProjectUtilities.save(project);
+        project.history.undoRedo(0);
+        ProjectUtilities.save(project);
+        transform("value + 'z'");
+
+        // the journal saved so far must still replay until the next save
+        File undoneChange = new File(new File(dir, "history"), undone.id + ".change.zip");
+        Assert.assertTrue(undoneChange.exists());
+        Project loaded = ProjectUtilities.load(dir, project.id);
+        Assert.assertEquals(loaded.rows.get(1).getCellValue(0), "a1");
+        loaded.dispose();
+
+        // which is a full one, after which the undone change can go
+        ProjectUtilities.save(project);
+        Assert.assertFalse(new File(dir, "journal.txt").exists());
+        Assert.assertFalse(undoneChange.exists());
+
+        loaded = ProjectUtilities.load(dir, project.id);
+        Assert.assertEquals(loaded.rows.get(1).getCellValue(0), "a1z");
+        Assert.assertEquals(loaded.history.getLastPastEntries(0).size(), 1);
+        loaded.dispose();
+    }
+
+    @Test
+    public void failedReplayKeepsJournalAside() throws Exception {
+        ProjectUtilities.save(project);
+        transform("value + 'x'");
+        ProjectUtilities.save(project);
+        HistoryEntry lost = transform("value + 'y'");
+        ProjectUtilities.save(project);
+        Assert.assertTrue(new File(new File(dir, "history"), lost.id + ".change.zip").delete());
+
+        Project loaded = ProjectUtilities.load(dir, project.id);
+        Assert.assertEquals(loaded.rows.get(1).getCellValue(0), "a1x");
+        Assert.assertEquals(loaded.history.getLastPastEntries(0).size(), 1);
+        loaded.dispose();
+
+        Assert.assertFalse(new File(dir, "journal.txt").exists());
+        boolean kept = false;
+        for (String name : dir.list()) {
+            kept |= name.startsWith("journal-failed-");
+        }
+        Assert.assertTrue(kept);
+    }
+
+    protected HistoryEntry transform(String expression) throws Exception {
+        return new TextTransformOperation(new JSONObject(ENGINE_JSON), "A", expression, OnError.KeepOriginal, false, 0)
+            .createProcess(project, new Properties()).performImmediate();
+    }
+}
@@ -52,6 +52,7 @@ import com.google.refine.ProjectManager;
 import com.google.refine.ProjectMetadata;
 import com.google.refine.browsing.Engine;
 import com.google.refine.browsing.RowVisitor;
+import com.google.refine.browsing.util.RowFilterBitmapCache;
 import com.google.refine.expr.functions.FacetCount;
 import com.google.refine.grel.Function;
 import com.google.refine.io.FileProjectManager;
@@ -77,6 +78,9 @@ public class CacheTests extends RefineTest {
     // Equivalent to duplicate facet on Column A with true selected
     static final String ENGINE_JSON_DUPLICATES = "{\"facets\":[{\"type\":\"list\",\"name\":\"facet A\",\"columnName\":\"Column A\",\"expression\":\"facetCount(value, 'value', 'Column A') > 1\",\"omitBlank\":false,\"omitError\":false,\"selection\":[{\"v\":{\"v\":true,\"l\":\"true\"}}],\"selectBlank\":false,\"selectError\":false,\"invert\":false}],\"mode\":\"row-based\"}}";
 
+    // Facet on Column A with "a" selected
+    static final String ENGINE_JSON_VALUE_A = "{\"facets\":[{\"type\":\"list\",\"name\":\"facet A\",\"columnName\":\"Column A\",\"expression\":\"value\",\"omitBlank\":false,\"omitError\":false,\"selection\":[{\"v\":{\"v\":\"a\",\"l\":\"a\"}}],\"selectBlank\":false,\"selectError\":false,\"invert\":false}],\"mode\":\"row-based\"}}";
+
     @Override
     @BeforeTest
     public void init() {
@@ -150,6 +154,47 @@ public class CacheTests extends RefineTest {
         Assert.assertEquals(count.intValue(), 0);
     }
     
+    @Test
+    public void testRowFilterBitmapReused() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            Row row = new Row(5);
+            row.setCell(0, new Cell(i < 3 ? "a":"b", null));
+            project.rows.add(row);
+        }
+        JSONObject config = new JSONObject(ENGINE_JSON_VALUE_A);
+        RowFilterBitmapCache cache = RowFilterBitmapCache.getCache(project);
+        Engine engine1 = new Engine(project);
+        engine1.initializeFromJSON(config);
+        engine1.getAllFilteredRows().accept(project, new CountingRowVisitor(3));
+        Assert.assertEquals(cache.getMisses(), 1);
+
+        Engine engine2 = new Engine(project);
+        engine2.initializeFromJSON(config);
+        engine2.getAllFilteredRows().accept(project, new CountingRowVisitor(3));
+        Assert.assertEquals(cache.getHits(), 1);
+        Assert.assertEquals(cache.getMisses(), 1);
+
+        // the cached rows must not outlive a change to the project
+        new RowRemovalOperation(config).createProcess(project, options).performImmediate();
+        engine2.getAllFilteredRows().accept(project, new CountingRowVisitor(0));
+        Assert.assertEquals(cache.getMisses(), 2);
+    }
+
+    @Test
+    public void testImpureRowFilterNotCached() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            Row row = new Row(5);
+            row.setCell(0, new Cell(i < 3 ? "a":"b", null));
+            project.rows.add(row);
+        }
+        RowFilterBitmapCache cache = RowFilterBitmapCache.getCache(project);
+        Assert.assertNull(engine.getFilterKey());
+        engine.getAllFilteredRows().accept(project, new CountingRowVisitor(5));
+        engine.getAllFilteredRows().accept(project, new CountingRowVisitor(5));
+        Assert.assertEquals(cache.getHits(), 0);
+        Assert.assertEquals(cache.getMisses(), 0);
+    }
+
     class CountingRowVisitor implements RowVisitor {
 
         private int count = 0;
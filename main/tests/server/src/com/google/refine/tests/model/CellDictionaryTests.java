@@ -0,0 +1,92 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.tests.model;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.model.Cell;
+import com.google.refine.model.CellDictionary;
+import com.google.refine.model.Recon;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+
+public class CellDictionaryTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @Test
+    public void sharesEqualCellsInSameColumn() {
+        CellDictionary dictionary = new CellDictionary();
+        Row row1 = new Row(2);
+        row1.setCell(0, new Cell("a", null));
+        row1.setCell(1, new Cell("b", null));
+        Row row2 = new Row(2);
+        row2.setCell(0, new Cell("a", null));
+        row2.setCell(1, new Cell("a", null));
+
+        dictionary.compact(row1);
+        dictionary.compact(row2);
+
+        Assert.assertSame(row2.getCell(0), row1.getCell(0));
+        Assert.assertNotSame(row2.getCell(1), row1.getCell(0));
+        Assert.assertEquals(row2.getCell(1).value, "a");
+        Assert.assertEquals(dictionary.getSharedCount(), 1);
+    }
+
+    @Test
+    public void doesNotShareReconciledCells() {
+        CellDictionary dictionary = new CellDictionary();
+        Cell reconciled = new Cell("a", new Recon(0, null, null));
+        dictionary.intern(0, new Cell("a", null));
+        Assert.assertSame(dictionary.intern(0, reconciled), reconciled);
+    }
+
+    @Test
+    public void stopsEncodingHighCardinalityColumns() {
+        CellDictionary dictionary = new CellDictionary(2);
+        dictionary.intern(0, new Cell("a", null));
+        dictionary.intern(0, new Cell("b", null));
+        dictionary.intern(0, new Cell("c", null));
+        Cell a = new Cell("a", null);
+        Assert.assertSame(dictionary.intern(0, a), a);
+    }
+}
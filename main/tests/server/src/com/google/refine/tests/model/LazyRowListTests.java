@@ -0,0 +1,146 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.tests.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.model.Cell;
+import com.google.refine.model.LazyRowList;
+import com.google.refine.model.Row;
+import com.google.refine.model.RowChunkSource;
+import com.google.refine.tests.RefineTest;
+import com.google.refine.util.Pool;
+
+public class LazyRowListTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    static class CountingSource implements RowChunkSource {
+        int reads = 0;
+        boolean closed = false;
+
+        @Override
+        public int getRowCount() {
+            return 10;
+        }
+
+        @Override
+        public int getChunkSize() {
+            return 4;
+        }
+
+        @Override
+        public Row[] readChunk(int chunkIndex) throws IOException {
+            reads++;
+            int count = Math.min(4, 10 - chunkIndex * 4);
+            Row[] rows = new Row[count];
+            for (int i = 0; i < count; i++) {
+                rows[i] = new Row(1);
+                rows[i].setCell(0, new Cell((long) (chunkIndex * 4 + i), null));
+            }
+            return rows;
+        }
+
+        @Override
+        public void copyChunk(int chunkIndex, OutputStream out, Pool pool) {
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void decodesChunksOnDemand() {
+        CountingSource source = new CountingSource();
+        LazyRowList rows = new LazyRowList(source);
+
+        Assert.assertEquals(rows.size(), 10);
+        Assert.assertEquals(source.reads, 0);
+
+        Assert.assertEquals(rows.get(5).getCellValue(0), 5L);
+        Assert.assertSame(rows.get(6), rows.get(6));
+        Assert.assertEquals(source.reads, 1);
+        Assert.assertEquals(rows.getLoadedRowCount(), 4);
+        Assert.assertFalse(rows.isChunkLoaded(0));
+        Assert.assertTrue(rows.isChunkLoaded(1));
+    }
+
+    @Test
+    public void readOnlyViewDoesNotKeepRows() {
+        CountingSource source = new CountingSource();
+        LazyRowList rows = new LazyRowList(source);
+
+        List<Row> view = rows.readOnlyView();
+        for (int i = 0; i < view.size(); i++) {
+            Assert.assertEquals(view.get(i).getCellValue(0), (long) i);
+        }
+        Assert.assertEquals(source.reads, 3);
+        Assert.assertEquals(rows.getLoadedRowCount(), 0);
+    }
+
+    @Test
+    public void modifications() {
+        CountingSource source = new CountingSource();
+        LazyRowList rows = new LazyRowList(source);
+
+        Row row = new Row(0);
+        rows.set(9, row);
+        Assert.assertSame(rows.get(9), row);
+        Assert.assertNotNull(rows.getChunkSource());
+
+        rows.remove(0);
+        Assert.assertTrue(source.closed);
+        Assert.assertNull(rows.getChunkSource());
+        Assert.assertEquals(rows.size(), 9);
+        Assert.assertEquals(rows.get(0).getCellValue(0), 1L);
+        Assert.assertSame(rows.get(8), row);
+
+        rows.add(new Row(0));
+        Assert.assertEquals(rows.size(), 10);
+    }
+}
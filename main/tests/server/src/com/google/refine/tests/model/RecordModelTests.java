@@ -0,0 +1,114 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.tests.model;
+
+import java.util.Properties;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.expr.MetaParser;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.Record;
+import com.google.refine.model.Row;
+import com.google.refine.tests.RefineTest;
+
+public class RecordModelTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    Project project;
+
+    @BeforeMethod
+    public void SetUp() throws Exception {
+        project = new Project();
+        project.columnModel.addColumn(0, new Column(project.columnModel.allocateNewCellIndex(), "key"), false);
+        project.columnModel.addColumn(1, new Column(project.columnModel.allocateNewCellIndex(), "item"), false);
+        project.columnModel.update();
+        String[][] values = {
+            { "a", "x" }, { null, "y" }, { "b", "z" }, { null, "w" }, { null, "v" }
+        };
+        for (String[] v : values) {
+            Row row = new Row(2);
+            row.setCell(0, v[0] == null ? null : new Cell(v[0], null));
+            row.setCell(1, new Cell(v[1], null));
+            project.rows.add(row);
+        }
+        project.recordModel.update(project);
+    }
+
+    @Test
+    public void recordOfRow() {
+        Assert.assertEquals(project.recordModel.getRecordCount(), 2);
+        int[] expected = { 0, 0, 1, 1, 1 };
+        for (int r = 0; r < expected.length; r++) {
+            Record record = project.recordModel.getRecordOfRow(r);
+            Assert.assertEquals(record.recordIndex, expected[r]);
+            Assert.assertTrue(record.fromRowIndex <= r && r < record.toRowIndex);
+        }
+        Assert.assertNull(project.recordModel.getRecordOfRow(5));
+        Assert.assertNull(project.recordModel.getRecordOfRow(-1));
+    }
+
+    @Test
+    public void recordCellsAcrossRows() throws Exception {
+        Evaluable eval = MetaParser.parse("row.record.cells.item.value.join(',')");
+        Properties bindings = ExpressionUtils.createBindings(project);
+        String[] expected = { "x,y", "x,y", "z,w,v", "z,w,v", "z,w,v" };
+        for (int r = 0; r < expected.length; r++) {
+            Row row = project.rows.get(r);
+            ExpressionUtils.bind(bindings, row, r, "key", row.getCell(0));
+            Assert.assertEquals(eval.evaluate(bindings), expected[r]);
+        }
+
+        // Updated records are not served from the context of the previous ones
+        project.rows.get(1).setCell(1, new Cell("u", null));
+        project.recordModel.update(project);
+        Row row = project.rows.get(0);
+        ExpressionUtils.bind(bindings, row, 0, "key", row.getCell(0));
+        Assert.assertEquals(eval.evaluate(bindings), "x,u");
+    }
+}
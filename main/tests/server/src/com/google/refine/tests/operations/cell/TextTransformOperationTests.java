@@ -0,0 +1,114 @@
+/*
+
+Copyright 2010, Google Inc.
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+notice, this list of conditions and the following disclaimer.
+    * Redistributions in binary form must reproduce the above
+copyright notice, this list of conditions and the following disclaimer
+in the documentation and/or other materials provided with the
+distribution.
+    * Neither the name of Google Inc. nor the names of its
+contributors may be used to endorse or promote products derived from
+this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,           
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY           
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*/
+
+
+package com.google.refine.tests.operations.cell;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.json.JSONObject;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.ProjectMetadata;
+import com.google.refine.browsing.util.PartitionedFilteredRows;
+import com.google.refine.history.HistoryEntry;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.ModelException;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.model.changes.CellChange;
+import com.google.refine.model.changes.MassCellChange;
+import com.google.refine.operations.OnError;
+import com.google.refine.operations.cell.TextTransformOperation;
+import com.google.refine.tests.ProjectManagerStub;
+import com.google.refine.tests.RefineTest;
+
+public class TextTransformOperationTests extends RefineTest {
+
+    Project project;
+    int rowCount;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @BeforeMethod
+    public void SetUp() throws ModelException {
+        ProjectManager.singleton = new ProjectManagerStub();
+        project = new Project();
+        project.columnModel.addColumn(0, new Column(project.columnModel.allocateNewCellIndex(), "A"), true);
+        rowCount = PartitionedFilteredRows.PARALLEL_THRESHOLD * 2 + 123;
+        for (int i = 0; i < rowCount; i++) {
+            Row row = new Row(1);
+            row.setCell(0, i % 5 == 0 ? null : new Cell("v" + (i % 3), null));
+            project.rows.add(row);
+        }
+        project.update();
+        ProjectManager.singleton.registerProject(project, new ProjectMetadata());
+    }
+
+    @Test
+    public void parallelTransformMatchesSequentialChanges() throws Exception {
+        JSONObject engineConfig = new JSONObject("{\"facets\":[],\"mode\":\"row-based\"}");
+        TextTransformOperation op = new TextTransformOperation(
+                engineConfig, "A", "if(or(isBlank(value), rowIndex % 7 == 0), value, value + '-' + rowIndex)", OnError.KeepOriginal, false, 0);
+        List<CellChange> expected = new ArrayList<CellChange>();
+        for (int i = 0; i < rowCount; i++) {
+            Cell cell = project.rows.get(i).getCell(0);
+            if (cell != null && i % 7 != 0) {
+                expected.add(new CellChange(i, 0, cell, new Cell(cell.value + "-" + i, null)));
+            }
+        }
+
+        HistoryEntry entry = op.createProcess(project, new Properties()).performImmediate();
+
+        Assert.assertEquals(save(entry.getChange()), save(new MassCellChange(expected, "A", true)));
+    }
+
+    private String save(Object change) throws Exception {
+        StringWriter writer = new StringWriter();
+        ((MassCellChange) change).save(writer, new Properties());
+        return writer.toString();
+    }
+}
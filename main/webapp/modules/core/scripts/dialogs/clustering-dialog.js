@@ -253,6 +253,8 @@ ClusteringDialog.prototype._renderTable = function(clusters) {
 ClusteringDialog.prototype._cluster = function() {
     var self = this;
     
+    this._cancelClustering();
+    
     var container = this._elmts.tableContainer.html(
         '<div style="margin: 1em; font-size: 130%; color: #888;">'+$.i18n._('core-dialogs')["clustering"]+'<img src="images/small-spinner.gif"></div>'
     );
@@ -268,15 +270,76 @@ ClusteringDialog.prototype._cluster = function() {
                 'function' : this._function,
                 'column' : this._columnName,
                 'params' : this._params
-            }) 
+            }),
+            async: true
         },
         function(data) {
-            self._updateData(data);
+            if (data.code == "error") {
+                container.text(data.message);
+            } else {
+                self._processID = data.process;
+                self._partialCount = 0;
+                self._pollClusters(data.process);
+            }
         },
         "json"
     );
 };
 
+ClusteringDialog.prototype._pollClusters = function(processID) {
+    var self = this;
+    
+    $.post(
+        "command/core/compute-clusters?" + $.param({ project: theProject.id }),
+        { process: processID },
+        function(data) {
+            if (self._processID !== processID) {
+                // Clustered again, or closed, in the meantime
+                return;
+            }
+            if (data.code == "error") {
+                self._processID = null;
+                self._elmts.tableContainer.text(data.message);
+            } else if (data.status == "done") {
+                self._processID = null;
+                if (data.message) {
+                    self._elmts.tableContainer.text(data.message);
+                    return;
+                }
+                self._updateData(data.clusters);
+                if (data.outOfTime) {
+                    self._elmts.resultSummary.append(" " + $.i18n._('core-dialogs')["out-of-time"]);
+                }
+            } else {
+                // Show the clusters found so far, largest first, as their number grows
+                if (data.clusters.length > self._partialCount) {
+                    self._partialCount = data.clusters.length;
+                    self._updateData(data.clusters);
+                }
+                if (self._partialCount > 0) {
+                    self._elmts.resultSummary.append(" (" + data.progress + "% " + $.i18n._('core-project')["complete"] + ")");
+                }
+                window.setTimeout(function() {
+                    self._pollClusters(processID);
+                }, 500);
+            }
+        },
+        "json"
+    );
+};
+
+ClusteringDialog.prototype._cancelClustering = function() {
+    if (this._processID) {
+        $.post(
+            "command/core/compute-clusters?" + $.param({ project: theProject.id }),
+            { process: this._processID, cancel: true },
+            function(data) {},
+            "json"
+        );
+        this._processID = null;
+    }
+};
+
 ClusteringDialog.prototype._updateData = function(data) {
     var clusters = [];
     $.each(data, function() {
@@ -333,6 +396,9 @@ ClusteringDialog.prototype._onApplyReCluster = function() {
 };
 
 ClusteringDialog.prototype._apply = function(onDone) {
+    // Clustering still in progress would hold up the edits
+    this._cancelClustering();
+    
     var clusters = this._getRestrictedClusters();
     var edits = [];
     for (var i = 0; i < clusters.length; i++) {
@@ -373,6 +439,7 @@ ClusteringDialog.prototype._apply = function(onDone) {
 };
 
 ClusteringDialog.prototype._dismiss = function() {
+    this._cancelClustering();
     DialogSystem.dismissUntil(this._level - 1);
 };
 